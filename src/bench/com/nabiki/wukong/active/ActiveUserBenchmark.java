@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.active;
+
+import com.nabiki.ctp4j.jni.flag.TThostFtdcCombOffsetFlagType;
+import com.nabiki.ctp4j.jni.struct.CThostFtdcInputOrderActionField;
+import com.nabiki.wukong.bench.BenchConfig;
+import com.nabiki.wukong.bench.BenchOrderProvider;
+import com.nabiki.wukong.bench.Depths;
+import com.nabiki.wukong.bench.Users;
+import com.nabiki.wukong.cfg.Config;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Order entry from {@link ActiveUser} down to the order provider's queue, over a
+ * stubbed trader API.
+ *
+ * <p>Inserts freeze money or positions, so users grow with every operation.
+ * Insert benchmarks run a fixed batch of orders on fresh users each iteration,
+ * round robin over the users, and the result is the time of the whole batch.
+ * Cancels don't change users and are sampled as usual.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+public class ActiveUserBenchmark {
+    public static final int BATCH = 1000;
+
+    @Param({"1", "10", "100"})
+    public int userCount;
+
+    @Param({"1", "100", "1000"})
+    public int positionLots;
+
+    @Param({"0", "100"})
+    public int frozenCount;
+
+    private Config config;
+    private BenchOrderProvider provider;
+    private ActiveUser[] users;
+    private CThostFtdcInputOrderActionField[] actions;
+    private String instrID;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        this.instrID = Depths.getInstrID(0);
+        BenchConfig.setInstrument(this.instrID);
+        this.config = BenchConfig.get();
+        this.provider = new BenchOrderProvider();
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+        this.users = new ActiveUser[this.userCount];
+        this.actions = new CThostFtdcInputOrderActionField[this.userCount];
+        for (int i = 0; i < this.userCount; ++i) {
+            // Details hold enough lots that a batch never over-closes.
+            var user = Users.create(this.instrID, this.positionLots,
+                    BATCH / this.positionLots + 1, this.frozenCount);
+            this.users[i] = new ActiveUser(user, this.provider, this.config);
+            // An open order to cancel, mapped as if it was sent.
+            var order = Users.order(this.instrID,
+                    TThostFtdcCombOffsetFlagType.OFFSET_OPEN, 1);
+            var active = new ActiveRequest(order, user, this.provider,
+                    this.config);
+            active.execOrder();
+            this.provider.getMapper().register(order, active);
+            var action = new CThostFtdcInputOrderActionField();
+            action.InstrumentID = this.instrID;
+            action.UserID = "bench";
+            action.OrderSysID = active.getOrderUUID().toString();
+            this.actions[i] = action;
+        }
+        this.next = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.provider.release();
+    }
+
+    private int nextUser() {
+        var i = this.next;
+        if (++this.next == this.userCount)
+            this.next = 0;
+        return i;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5, batchSize = BATCH)
+    @Measurement(iterations = 20, batchSize = BATCH)
+    public UUID insertOpen() {
+        return this.users[nextUser()].insertOrder(Users.order(this.instrID,
+                TThostFtdcCombOffsetFlagType.OFFSET_OPEN, 1));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5, batchSize = BATCH)
+    @Measurement(iterations = 20, batchSize = BATCH)
+    public UUID insertClose() {
+        return this.users[nextUser()].insertOrder(Users.order(this.instrID,
+                TThostFtdcCombOffsetFlagType.OFFSET_CLOSE, 1));
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public UUID cancel() {
+        var i = nextUser();
+        // Each action is a new request, like one decoded from a client.
+        var action = new CThostFtdcInputOrderActionField();
+        action.InstrumentID = this.actions[i].InstrumentID;
+        action.UserID = this.actions[i].UserID;
+        action.OrderSysID = this.actions[i].OrderSysID;
+        return this.users[i].orderAction(action);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.bench;
+
+import com.nabiki.ctp4j.jni.struct.CThostFtdcInstrumentCommissionRateField;
+import com.nabiki.ctp4j.jni.struct.CThostFtdcInstrumentField;
+import com.nabiki.ctp4j.jni.struct.CThostFtdcInstrumentMarginRateField;
+import com.nabiki.wukong.cfg.Config;
+import com.nabiki.wukong.cfg.ConfigLoader;
+import com.nabiki.wukong.cfg.plain.TradingHourConfig;
+import com.nabiki.wukong.tools.OP;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.LinkedList;
+
+/**
+ * Load a config under a temporary root for benchmarks. Products of
+ * {@link Depths} trade all day, so benchmarks don't depend on the wall clock.
+ */
+public class BenchConfig {
+    private static Config config;
+
+    /**
+     * Get the config, loading it on first call.
+     *
+     * @return config
+     */
+    public static synchronized Config get() {
+        if (config != null)
+            return config;
+        try {
+            var root = Files.createTempDirectory("wukong-bench");
+            writeTradingHour(root);
+            ConfigLoader.rootPath = root.toAbsolutePath().toString();
+            config = ConfigLoader.load();
+            ConfigLoader.setTradingDay("20200102");
+            return config;
+        } catch (IOException e) {
+            throw new IllegalStateException("failed loading config", e);
+        }
+    }
+
+    private static void writeTradingHour(Path root) throws IOException {
+        var dir = Path.of(root.toString(), ".cfg", ".hour");
+        Files.createDirectories(dir);
+        var c = new TradingHourConfig();
+        c.name = "bench";
+        c.productID = Arrays.asList(Depths.getProducts());
+        var h = c.new SingleTradingHour();
+        h.from = LocalTime.MIDNIGHT;
+        h.to = LocalTime.of(23, 59, 59);
+        c.tradingHour = new LinkedList<>();
+        c.tradingHour.add(h);
+        OP.writeText(OP.toJson(c), Path.of(dir.toString(), "bench.json").toFile(),
+                StandardCharsets.UTF_8, false);
+    }
+
+    /**
+     * Set instrument, margin and commission of the specified instrument. Margin
+     * is 10% of the contract value and commission is 1 per lot.
+     *
+     * @param instrID instrument ID
+     */
+    public static void setInstrument(String instrID) {
+        get();
+        var instr = new CThostFtdcInstrumentField();
+        instr.InstrumentID = instrID;
+        instr.ExchangeID = "SHFE";
+        instr.VolumeMultiple = 10;
+        instr.PriceTick = 1.0D;
+        ConfigLoader.setInstrConfig(instr);
+        var margin = new CThostFtdcInstrumentMarginRateField();
+        margin.InstrumentID = instrID;
+        margin.LongMarginRatioByMoney = margin.ShortMarginRatioByMoney = 0.1D;
+        ConfigLoader.setInstrConfig(margin);
+        var comm = new CThostFtdcInstrumentCommissionRateField();
+        comm.InstrumentID = instrID;
+        comm.OpenRatioByVolume = comm.CloseRatioByVolume
+                = comm.CloseTodayRatioByVolume = 1.0D;
+        ConfigLoader.setInstrConfig(comm);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.bench;
+
+import com.nabiki.ctp4j.jni.struct.CThostFtdcDepthMarketDataField;
+
+import java.util.Random;
+
+/**
+ * Synthetic depth market data for benchmarks. Instruments are named after a
+ * few real products so product IDs and trading hours resolve the usual way, and
+ * prices walk randomly from a fixed seed so runs are repeatable.
+ */
+public class Depths {
+    private static final String[] products = new String[] {
+            "c", "cu", "rb", "ag", "au", "TA", "SR", "IF", "m", "y"
+    };
+
+    private final CThostFtdcDepthMarketDataField[] depths;
+    private final Random random = new Random(20200101L);
+    private int next = 0;
+
+    /**
+     * Create depths of the specified number of instruments.
+     *
+     * @param instrCount number of instruments
+     */
+    public Depths(int instrCount) {
+        if (instrCount <= 0)
+            throw new IllegalArgumentException("instrument count must be positive");
+        this.depths = new CThostFtdcDepthMarketDataField[instrCount];
+        for (int i = 0; i < instrCount; ++i)
+            this.depths[i] = create(getInstrID(i), 2000.0D + i);
+    }
+
+    /**
+     * Get products of the generated instruments.
+     *
+     * @return product IDs
+     */
+    public static String[] getProducts() {
+        return products.clone();
+    }
+
+    /**
+     * Get instrument ID of the specified index.
+     *
+     * @param index index of instrument
+     * @return instrument ID
+     */
+    public static String getInstrID(int index) {
+        var p = products[index % products.length];
+        return p + (2001 + index / products.length);
+    }
+
+    /**
+     * Create a depth of the specified instrument with all fields a tick usually
+     * carries.
+     *
+     * @param instrID instrument ID
+     * @param price last price
+     * @return depth market data
+     */
+    public static CThostFtdcDepthMarketDataField create(String instrID, double price) {
+        var md = new CThostFtdcDepthMarketDataField();
+        md.InstrumentID = instrID;
+        md.ExchangeID = "SHFE";
+        md.TradingDay = "20200102";
+        md.ActionDay = "20200102";
+        md.UpdateTime = "09:30:00";
+        md.UpdateMillisec = 500;
+        md.LastPrice = price;
+        md.PreSettlementPrice = price;
+        md.PreClosePrice = price;
+        md.OpenPrice = md.HighestPrice = md.LowestPrice = price;
+        md.UpperLimitPrice = price * 1.05D;
+        md.LowerLimitPrice = price * 0.95D;
+        md.BidPrice1 = price - 1.0D;
+        md.AskPrice1 = price + 1.0D;
+        md.BidVolume1 = 10;
+        md.AskVolume1 = 10;
+        md.Volume = 1000;
+        md.OpenInterest = 100000.0D;
+        md.Turnover = price * 1000 * 10;
+        return md;
+    }
+
+    /**
+     * Get number of instruments.
+     *
+     * @return number of instruments
+     */
+    public int size() {
+        return this.depths.length;
+    }
+
+    /**
+     * Advance the next instrument in round robin and return its depth. The same
+     * object is returned for an instrument every round, with price and volume
+     * moved on.
+     *
+     * @return next depth
+     */
+    public CThostFtdcDepthMarketDataField next() {
+        var md = this.depths[this.next];
+        if (++this.next == this.depths.length)
+            this.next = 0;
+        md.LastPrice += this.random.nextInt(3) - 1;
+        md.HighestPrice = Math.max(md.HighestPrice, md.LastPrice);
+        md.LowestPrice = Math.min(md.LowestPrice, md.LastPrice);
+        md.BidPrice1 = md.LastPrice - 1.0D;
+        md.AskPrice1 = md.LastPrice + 1.0D;
+        md.Volume += 1 + this.random.nextInt(4);
+        return md;
+    }
+}
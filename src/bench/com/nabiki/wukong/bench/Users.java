@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.bench;
+
+import com.nabiki.ctp4j.jni.flag.TThostFtdcCombOffsetFlagType;
+import com.nabiki.ctp4j.jni.flag.TThostFtdcDirectionType;
+import com.nabiki.ctp4j.jni.struct.CThostFtdcInputOrderField;
+import com.nabiki.ctp4j.jni.struct.CThostFtdcInvestorPositionDetailField;
+import com.nabiki.ctp4j.jni.struct.CThostFtdcTradingAccountField;
+import com.nabiki.wukong.user.core.*;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Build users and orders for order path benchmarks.
+ */
+public class Users {
+    public static final double PRICE = 2000.0D;
+
+    /**
+     * Create a user with yesterday's long position details of the specified
+     * instrument and live frozen accounts of open orders. Balance is large enough
+     * that orders are never rejected for money.
+     *
+     * @param instrID instrument ID
+     * @param detailCount number of position details
+     * @param detailVolume volume of each position detail
+     * @param frozenCount number of frozen accounts
+     * @return user
+     */
+    public static User create(String instrID, int detailCount, int detailVolume,
+                              int frozenCount) {
+        var user = new User();
+        var total = new CThostFtdcTradingAccountField();
+        total.PreBalance = 1.0E10D;
+        total.Deposit = total.Withdraw = total.Commission = 0.0D;
+        var account = new UserAccount(total, user);
+        user.setAccount(account);
+        var details = new LinkedList<UserPositionDetail>();
+        for (int i = 0; i < detailCount; ++i)
+            details.add(new UserPositionDetail(detail(instrID, detailVolume)));
+        var pd = new HashMap<String, List<UserPositionDetail>>();
+        pd.put(instrID, details);
+        user.setPosition(new UserPosition(pd, user));
+        for (int i = 0; i < frozenCount; ++i) {
+            var share = new CThostFtdcTradingAccountField();
+            share.FrozenCash = PRICE;
+            share.FrozenCommission = 1.0D;
+            new FrozenAccount(account, share, 1).setFrozen();
+        }
+        return user;
+    }
+
+    private static CThostFtdcInvestorPositionDetailField detail(String instrID,
+                                                                int volume) {
+        var d = new CThostFtdcInvestorPositionDetailField();
+        d.InstrumentID = instrID;
+        d.Direction = TThostFtdcDirectionType.DIRECTION_BUY;
+        d.Volume = volume;
+        d.CloseVolume = 0;
+        d.OpenPrice = d.LastSettlementPrice = PRICE;
+        d.Margin = d.ExchMargin = PRICE * 10 * 0.1D * volume;
+        d.OpenDate = "20200101";
+        d.TradingDay = "20200101";
+        return d;
+    }
+
+    /**
+     * Create a limit order.
+     *
+     * @param instrID instrument ID
+     * @param offset {@link TThostFtdcCombOffsetFlagType}
+     * @param volume volume
+     * @return input order
+     */
+    public static CThostFtdcInputOrderField order(String instrID, char offset,
+                                                  int volume) {
+        var o = new CThostFtdcInputOrderField();
+        o.InstrumentID = instrID;
+        o.UserID = "bench";
+        o.LimitPrice = PRICE;
+        o.VolumeTotalOriginal = volume;
+        o.CombOffsetFlag = offset;
+        o.Direction = offset == TThostFtdcCombOffsetFlagType.OFFSET_OPEN
+                ? TThostFtdcDirectionType.DIRECTION_BUY
+                : TThostFtdcDirectionType.DIRECTION_SELL;
+        return o;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.iop;
+
+import com.nabiki.wukong.bench.Depths;
+import com.nabiki.wukong.iop.frame.Body;
+import com.nabiki.wukong.iop.frame.MessageType;
+import com.nabiki.wukong.md.MarketDataRouter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of delivering a depth to client sessions, including JSON encoding and
+ * the outbound queue. Queues drain on the calling thread into sessions that
+ * discard messages, so network is out of the numbers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClientMarketDataReceiverBenchmark {
+    @Param({"1", "10", "100"})
+    public int sessionCount;
+
+    private static final int INSTR_COUNT = 64;
+
+    private ClientMarketDataReceiver[] receivers;
+    private Depths depths;
+
+    static class NullSession implements IOPSession {
+        @Override
+        public void sendResponse(Body body) {
+        }
+
+        @Override
+        public boolean isClosed() {
+            return false;
+        }
+
+        @Override
+        public void fix() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Setup
+    public void setup() {
+        var router = new MarketDataRouter();
+        this.depths = new Depths(INSTR_COUNT);
+        this.receivers = new ClientMarketDataReceiver[this.sessionCount];
+        for (int i = 0; i < this.sessionCount; ++i) {
+            var session = new NullSession();
+            this.receivers[i] = new ClientMarketDataReceiver(session, router,
+                    new OutboundQueue(session, Runnable::run,
+                            OutboundQueue.DEFAULT_CAPACITY,
+                            OutboundQueue.Policy.CONFLATE));
+            for (int j = 0; j < INSTR_COUNT; ++j)
+                this.receivers[i].subscribe(Depths.getInstrID(j));
+        }
+    }
+
+    @Benchmark
+    public Body encode() {
+        // Consecutive depths are different objects, so each is encoded.
+        return FlowEncoder.encode(this.depths.next(), MessageType.FLOW_DEPTH);
+    }
+
+    @Benchmark
+    public void depthReceived(Blackhole bh) {
+        var md = this.depths.next();
+        for (var r : this.receivers)
+            r.depthReceived(md);
+        bh.consume(md);
+    }
+}
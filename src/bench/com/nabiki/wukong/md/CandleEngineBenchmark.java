@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.md;
+
+import com.nabiki.wukong.bench.BenchConfig;
+import com.nabiki.wukong.bench.Depths;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a tick through the candle engine, which updates candles of all
+ * durations of the instrument. Ticks go round robin over the instruments, so a
+ * larger instrument count shows the cost of cache misses on candle lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CandleEngineBenchmark {
+    @Param({"10", "100", "1000"})
+    public int instrCount;
+
+    private CandleEngine engine;
+
+    @State(Scope.Thread)
+    public static class Feed {
+        Depths depths;
+
+        @Setup
+        public void setup(CandleEngineBenchmark bench) {
+            this.depths = new Depths(bench.instrCount);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        this.engine = new CandleEngine(BenchConfig.get());
+        for (int i = 0; i < this.instrCount; ++i)
+            this.engine.registerInstr(Depths.getInstrID(i));
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.engine.stop();
+    }
+
+    @Benchmark
+    public void update(Feed feed) {
+        this.engine.update(feed.depths.next());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void updateConcurrently(Feed feed) {
+        this.engine.update(feed.depths.next());
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.md;
+
+import com.nabiki.ctp4j.jni.struct.CThostFtdcDepthMarketDataField;
+import com.nabiki.wukong.bench.Depths;
+import com.nabiki.wukong.ctp.MarketDataReceiver;
+import com.nabiki.wukong.ctp4j.jni.struct.CThostFtdcCandleField;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency from routing a depth to the last subscriber receiving it. Each
+ * operation routes one depth and spins until it arrives, so the sampled time is
+ * the hand-off to the router thread plus the copy and the fan-out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MarketDataRouterBenchmark {
+    @Param({"1", "16", "128"})
+    public int receiverCount;
+
+    private static final int INSTR_COUNT = 64;
+
+    private MarketDataRouter router;
+    private Thread thread;
+    private Depths depths;
+    private Counter counter;
+    private long routed = 0;
+
+    static class Counter implements MarketDataReceiver {
+        volatile long received = 0;
+
+        @Override
+        public void depthReceived(CThostFtdcDepthMarketDataField depth) {
+            // Only the router thread writes.
+            this.received = this.received + 1;
+        }
+
+        @Override
+        public void candleReceived(CThostFtdcCandleField candle) {
+        }
+    }
+
+    static class Sink implements MarketDataReceiver {
+        @Override
+        public void depthReceived(CThostFtdcDepthMarketDataField depth) {
+        }
+
+        @Override
+        public void candleReceived(CThostFtdcCandleField candle) {
+        }
+    }
+
+    @Setup
+    public void setup() {
+        this.router = new MarketDataRouter();
+        this.depths = new Depths(INSTR_COUNT);
+        this.counter = new Counter();
+        // Counter subscribes last, so it is the last to receive.
+        for (int i = 0; i < this.receiverCount - 1; ++i) {
+            var sink = new Sink();
+            for (int j = 0; j < INSTR_COUNT; ++j)
+                this.router.subscribe(Depths.getInstrID(j), sink);
+        }
+        for (int j = 0; j < INSTR_COUNT; ++j)
+            this.router.subscribe(Depths.getInstrID(j), this.counter);
+        this.thread = new Thread(this.router, "bench-router");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.thread.interrupt();
+    }
+
+    @Benchmark
+    public long routeToReceiver() {
+        var target = ++this.routed;
+        this.router.route(this.depths.next());
+        while (this.counter.received < target)
+            Thread.onSpinWait();
+        return target;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.user.core;
+
+import com.nabiki.ctp4j.jni.flag.TThostFtdcCombOffsetFlagType;
+import com.nabiki.ctp4j.jni.struct.CThostFtdcInputOrderField;
+import com.nabiki.ctp4j.jni.struct.CThostFtdcTradingAccountField;
+import com.nabiki.wukong.bench.BenchConfig;
+import com.nabiki.wukong.bench.Depths;
+import com.nabiki.wukong.bench.Users;
+import com.nabiki.wukong.risk.RiskEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pre-trade checks of a single user as a function of its open position details
+ * and frozen open orders. The checks only compute frozen money and positions,
+ * so the user doesn't change between operations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserRiskBenchmark {
+    @Param({"1", "100", "1000"})
+    public int positionLots;
+
+    @Param({"0", "100", "1000"})
+    public int frozenCount;
+
+    private User user;
+    private RiskEngine engine;
+    private int idx;
+    private CThostFtdcInputOrderField open, closeOne, closeAll;
+
+    @Setup
+    public void setup() {
+        var instrID = Depths.getInstrID(0);
+        BenchConfig.setInstrument(instrID);
+        this.engine = BenchConfig.get().getRiskEngine();
+        this.idx = this.engine.getIndex(instrID);
+        // One lot per detail, so closing all lots splits into every detail.
+        this.user = Users.create(instrID, this.positionLots, 1, this.frozenCount);
+        this.open = Users.order(instrID, TThostFtdcCombOffsetFlagType.OFFSET_OPEN,
+                1);
+        this.closeOne = Users.order(instrID,
+                TThostFtdcCombOffsetFlagType.OFFSET_CLOSE, 1);
+        this.closeAll = Users.order(instrID,
+                TThostFtdcCombOffsetFlagType.OFFSET_CLOSE, this.positionLots);
+    }
+
+    @Benchmark
+    public CThostFtdcTradingAccountField getTradingAccount() {
+        return this.user.getTradingAccount();
+    }
+
+    @Benchmark
+    public FrozenAccount getOpenFrozen() {
+        return this.user.getAccount().getOpenFrozen(this.open, this.engine,
+                this.idx);
+    }
+
+    @Benchmark
+    public List<FrozenPositionDetail> peakCloseFrozen() {
+        return this.user.getPosition().peakCloseFrozen(this.closeOne,
+                this.engine, this.idx, "20200102");
+    }
+
+    @Benchmark
+    public List<FrozenPositionDetail> peakCloseFrozenSplit() {
+        return this.user.getPosition().peakCloseFrozen(this.closeAll,
+                this.engine, this.idx, "20200102");
+    }
+}
@@ -34,8 +34,10 @@ import com.nabiki.ctp4j.jni.flag.TThostFtdcErrorMessage;
 import com.nabiki.ctp4j.jni.flag.TThostFtdcOrderStatusType;
 import com.nabiki.ctp4j.jni.struct.*;
 import com.nabiki.wukong.cfg.Config;
-import com.nabiki.wukong.cfg.plain.InstrumentInfo;
 import com.nabiki.wukong.ctp.OrderProvider;
+import com.nabiki.wukong.metric.Hop;
+import com.nabiki.wukong.metric.OrderTracer;
+import com.nabiki.wukong.risk.RiskEngine;
 import com.nabiki.wukong.tools.InTeam;
 import com.nabiki.wukong.tools.OP;
 import com.nabiki.wukong.user.core.*;
@@ -119,12 +121,16 @@ public class ActiveRequest {
             this.execRsp.ErrorMsg = TThostFtdcErrorMessage.NOT_INITED;
             return;
         }
-        var instrInfo = this.config.getInstrInfo(this.order.InstrumentID);
-        Objects.requireNonNull(instrInfo, "instr info null");
+        // Check with one engine so all legs see the same rates.
+        var engine = this.config.getRiskEngine();
+        var idx = engine.getIndex(this.order.InstrumentID);
+        if (idx < 0)
+            throw new IllegalArgumentException(
+                    "unknown instrument " + this.order.InstrumentID);
         if (this.order.CombOffsetFlag == TThostFtdcCombOffsetFlagType.OFFSET_OPEN)
-            insertOpen(this.order, instrInfo);
+            insertOpen(this.order, engine, idx);
         else
-            insertClose(this.order, instrInfo);
+            insertClose(this.order, engine, idx);
     }
 
     void execAction() {
@@ -165,17 +171,14 @@ public class ActiveRequest {
         }
     }
 
-    private void insertOpen(CThostFtdcInputOrderField order,
-                            InstrumentInfo instrInfo) {
-        Objects.requireNonNull(instrInfo.instrument, "instrument null");
-        Objects.requireNonNull(instrInfo.margin, "margin null");
-        Objects.requireNonNull(instrInfo.commission, "commission null");
-        this.frozenAccount = this.userAccount.getOpenFrozen(this.order,
-                instrInfo.instrument, instrInfo.margin, instrInfo.commission);
+    private void insertOpen(CThostFtdcInputOrderField order, RiskEngine engine,
+                            int idx) {
+        this.frozenAccount = this.userAccount.getOpenFrozen(order, engine, idx);
         if (this.frozenAccount == null) {
             this.execRsp.ErrorID = TThostFtdcErrorCode.INSUFFICIENT_MONEY;
             this.execRsp.ErrorMsg = TThostFtdcErrorMessage.INSUFFICIENT_MONEY;
         } else {
+            OrderTracer.stamp(this.uuid, Hop.RISK_CHECKED);
             // Set valid order ref.
             order.OrderRef = this.orderProvider.getOrderRef();
             this.execRsp.ErrorID
@@ -186,17 +189,16 @@ public class ActiveRequest {
         }
     }
 
-    private void insertClose(CThostFtdcInputOrderField order,
-                             InstrumentInfo instrInfo) {
-        Objects.requireNonNull(instrInfo.instrument, "instrument null");
-        Objects.requireNonNull(instrInfo.commission, "commission null");
-        var pds = this.userPos.peakCloseFrozen(order, instrInfo.instrument,
-                instrInfo.commission, this.config.getTradingDay());
+    private void insertClose(CThostFtdcInputOrderField order, RiskEngine engine,
+                             int idx) {
+        var pds = this.userPos.peakCloseFrozen(order, engine, idx,
+                this.config.getTradingDay());
         if (pds == null || pds.size() == 0) {
             this.execRsp.ErrorID = TThostFtdcErrorCode.OVER_CLOSE_POSITION;
             this.execRsp.ErrorMsg = TThostFtdcErrorMessage.OVER_CLOSE_POSITION;
             return;
         }
+        OrderTracer.stamp(this.uuid, Hop.RISK_CHECKED);
         this.frozenPD = new HashMap<>();
         // Send close request.
         for (var p : pds) {
@@ -231,8 +233,8 @@ public class ActiveRequest {
         var cls = OP.deepCopy(getOriginOrder());
         Objects.requireNonNull(cls, "failed deep copy");
         cls.VolumeTotalOriginal = (int) pd.getFrozenShareCount();
-        if (pd.getFrozenSharePD().TradingDay
-                .compareTo(this.config.getTradingDay()) != 0) {
+        if (!pd.getFrozenSharePD().TradingDay
+                .equals(this.config.getTradingDay())) {
             // Yesterday.
             cls.CombOffsetFlag = TThostFtdcCombOffsetFlagType.OFFSET_CLOSE_YESTERDAY;
         } else {
@@ -256,9 +258,8 @@ public class ActiveRequest {
             if (rtn.CombOffsetFlag == TThostFtdcCombOffsetFlagType.OFFSET_OPEN) {
                 // Cancel cash.
                 if (this.frozenAccount == null) {
-                    this.config.getLogger().severe(
-                            OP.formatLog("no frozen cash",
-                                    rtn.OrderRef, null, null));
+                    this.config.getAsyncLog().severe(
+                            "no frozen cash", rtn.OrderRef, null);
                     this.userAccount.getParent().setPanic(
                             TThostFtdcErrorCode.INCONSISTENT_INFORMATION,
                             "frozen cash null");
@@ -267,9 +268,8 @@ public class ActiveRequest {
                 this.frozenAccount.cancel();
             } else {
                 if (this.frozenPD == null || this.frozenPD.size() == 0) {
-                    this.config.getLogger().severe(
-                            OP.formatLog("no frozen position",
-                                    rtn.OrderRef, null, null));
+                    this.config.getAsyncLog().severe(
+                            "no frozen position", rtn.OrderRef, null);
                     this.userAccount.getParent().setPanic(
                             TThostFtdcErrorCode.INCONSISTENT_INFORMATION,
                             "frozen position null");
@@ -278,9 +278,8 @@ public class ActiveRequest {
                 // Cancel position.
                 var p = this.frozenPD.get(rtn.OrderRef);
                 if (p == null) {
-                    this.config.getLogger().severe(
-                            OP.formatLog("frozen position not found",
-                                    rtn.OrderRef, null, null));
+                    this.config.getAsyncLog().severe(
+                            "frozen position not found", rtn.OrderRef, null);
                     this.userAccount.getParent().setPanic(
                             TThostFtdcErrorCode.INCONSISTENT_INFORMATION,
                             "frozen position not found for order ref");
@@ -305,17 +304,14 @@ public class ActiveRequest {
     public void updateTrade(CThostFtdcTradeField trade) {
         if (trade == null)
             throw new NullPointerException("return trade null");
-        var instrInfo = this.config.getInstrInfo(trade.InstrumentID);
+        var engine = this.config.getRiskEngine();
+        var instrInfo = engine.getInfo(engine.getIndex(trade.InstrumentID));
         Objects.requireNonNull(instrInfo, "instr info null");
-        Objects.requireNonNull(instrInfo.instrument, "instrument null");
-        Objects.requireNonNull(instrInfo.margin, "margin null");
-        Objects.requireNonNull(instrInfo.commission, "commission null");
         if (trade.OffsetFlag == TThostFtdcCombOffsetFlagType.OFFSET_OPEN) {
             // Open.
             if (this.frozenAccount == null) {
-                this.config.getLogger().severe(
-                        OP.formatLog("no frozen cash",
-                                trade.OrderRef, null, null));
+                this.config.getAsyncLog().severe(
+                        "no frozen cash", trade.OrderRef, null);
                 this.userAccount.getParent().setPanic(
                         TThostFtdcErrorCode.INCONSISTENT_INFORMATION,
                         "frozen cash null");
@@ -333,9 +329,8 @@ public class ActiveRequest {
         } else {
             // Close.
             if (this.frozenPD == null || this.frozenPD.size() == 0) {
-                this.config.getLogger().severe(
-                        OP.formatLog("no frozen position",
-                                trade.OrderRef, null, null));
+                this.config.getAsyncLog().severe(
+                        "no frozen position", trade.OrderRef, null);
                 this.userAccount.getParent().setPanic(
                         TThostFtdcErrorCode.INCONSISTENT_INFORMATION,
                         "frozen position null");
@@ -345,18 +340,16 @@ public class ActiveRequest {
             // The frozen position handles the update of user position.
             var p = this.frozenPD.get(trade.OrderRef);
             if (p == null) {
-                this.config.getLogger().severe(
-                        OP.formatLog("frozen position not found",
-                                trade.OrderRef, null, null));
+                this.config.getAsyncLog().severe(
+                        "frozen position not found", trade.OrderRef, null);
                 this.userAccount.getParent().setPanic(
                         TThostFtdcErrorCode.INCONSISTENT_INFORMATION,
                         "frozen position not found for order ref");
                 return;
             }
             if (p.getFrozenShareCount() < trade.Volume) {
-                this.config.getLogger().severe(
-                        OP.formatLog("not enough frozen position",
-                                trade.OrderRef, null, null));
+                this.config.getAsyncLog().severe(
+                        "not enough frozen position", trade.OrderRef, null);
                 this.userAccount.getParent().setPanic(
                         TThostFtdcErrorCode.OVER_CLOSE_POSITION,
                         "not enough frozen position for trade");
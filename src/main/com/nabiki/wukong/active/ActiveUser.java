@@ -31,17 +31,16 @@ package com.nabiki.wukong.active;
 import com.nabiki.ctp4j.jni.struct.*;
 import com.nabiki.wukong.cfg.Config;
 import com.nabiki.wukong.ctp.OrderProvider;
+import com.nabiki.wukong.metric.OrderTracer;
+import com.nabiki.wukong.risk.plain.RiskEstimate;
+import com.nabiki.wukong.tools.CachedClock;
 import com.nabiki.wukong.tools.InTeam;
 import com.nabiki.wukong.tools.OP;
 import com.nabiki.wukong.tools.OutTeam;
 import com.nabiki.wukong.user.core.FrozenAccount;
 import com.nabiki.wukong.user.core.FrozenPositionDetail;
 import com.nabiki.wukong.user.core.User;
-import com.nabiki.wukong.user.plain.InstrumentInfoSet;
-import com.nabiki.wukong.user.plain.SettlementPrices;
 
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 
 public class ActiveUser {
@@ -57,32 +56,33 @@ public class ActiveUser {
     }
 
     @InTeam
-    public void settle() {
-        // Prepare settlement prices.
-        var prices = new SettlementPrices();
-        for (var instr : this.user.getPosition().getAllInstrID()) {
-            var depth = this.config.getDepthMarketData(instr);
-            if (depth == null)
-                throw new NullPointerException("depth market data null");
-            if (!OP.validPrice(depth.SettlementPrice))
-                throw new IllegalArgumentException(
-                        "no settlement price for " + instr);
-            prices.set(instr, depth.SettlementPrice);
-        }
-        // Prepare instrument info set.
-        var infoSet = new InstrumentInfoSet();
-        for (var instr : this.user.getPosition().getAllInstrID()) {
-            var instrInfo = this.config.getInstrInfo(instr);
-            Objects.requireNonNull(instrInfo, "instr info null");
-            Objects.requireNonNull(instrInfo.instrument, "instrument null");
-            Objects.requireNonNull(instrInfo.margin, "margin null");
-            Objects.requireNonNull(instrInfo.commission, "commission null");
-            // Set info.
-            infoSet.setInstrument(instr, instrInfo.instrument);
-            infoSet.setMargin(instr, instrInfo.margin);
-            infoSet.setCommission(instr, instrInfo.commission);
-        }
-        this.user.settle(prices, infoSet, this.config.getTradingDay());
+    public User getUser() {
+        return this.user;
+    }
+
+    /**
+     * Settle the user through the specified engine, which writes the settled
+     * account and positions to journal.
+     *
+     * @param engine settlement engine
+     * @return {@code true} if the user is settled, {@code false} otherwise
+     */
+    @InTeam
+    public boolean settle(SettlementEngine engine) {
+        return engine.settle(this.user);
+    }
+
+    /**
+     * Estimate margin and commission of the specified orders against the user's
+     * current available money, without sending or freezing anything.
+     *
+     * @param orders orders to evaluate
+     * @return estimate of the orders
+     */
+    @OutTeam
+    public RiskEstimate whatIf(List<CThostFtdcInputOrderField> orders) {
+        return this.config.getRiskEngine().whatIf(
+                this.user.getTradingAccount(), orders);
     }
 
     @OutTeam
@@ -98,12 +98,14 @@ public class ActiveUser {
     public UUID insertOrder(CThostFtdcInputOrderField order) {
         var active = new ActiveRequest(order, this.user, this.orderProvider, this.config);
         this.requests.put(active.getOrderUUID(), active);
+        OrderTracer.accept(active.getOrderUUID());
         try {
             active.execOrder();
         } catch (Throwable th) {
-            this.config.getLogger().severe(
-                    OP.formatLog("failed order insertion", order.UserID,
-                            th.getMessage(), null));
+            this.config.getAsyncLog().severe(
+                    "failed order insertion", order.UserID, th.getMessage());
+        } finally {
+            OrderTracer.allQueued(active.getOrderUUID());
         }
         return active.getOrderUUID();
     }
@@ -116,9 +118,8 @@ public class ActiveUser {
         try {
             active.execAction();
         } catch (Throwable th) {
-            this.config.getLogger().severe(
-                    OP.formatLog("failed order action", action.UserID,
-                            th.getMessage(), null));
+            this.config.getAsyncLog().severe(
+                    "failed order action", action.UserID, th.getMessage());
         }
         return active.getOrderUUID();
     }
@@ -212,14 +213,12 @@ public class ActiveUser {
         // Add to result set.
         if (lp != null) {
             lp.TradingDay = this.config.getTradingDay();
-            lp.PositionDate = LocalDate.now().format(
-                    DateTimeFormatter.ofPattern("yyyyMMdd"));
+            lp.PositionDate = CachedClock.getDay();
             ret.add(lp);
         }
         if (sp != null) {
             sp.TradingDay = this.config.getTradingDay();
-            sp.PositionDate = LocalDate.now().format(
-                    DateTimeFormatter.ofPattern("yyyyMMdd"));
+            sp.PositionDate = CachedClock.getDay();
             ret.add(sp);
         }
         return ret;
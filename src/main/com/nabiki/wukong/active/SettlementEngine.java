@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.active;
+
+import com.nabiki.ctp4j.jni.struct.CThostFtdcInvestorPositionDetailField;
+import com.nabiki.wukong.cfg.Config;
+import com.nabiki.wukong.journal.MessageWriter;
+import com.nabiki.wukong.metric.Metrics;
+import com.nabiki.wukong.metric.OrderTracer;
+import com.nabiki.wukong.tools.InTeam;
+import com.nabiki.wukong.tools.OP;
+import com.nabiki.wukong.user.core.User;
+import com.nabiki.wukong.user.plain.InstrumentInfoSet;
+import com.nabiki.wukong.user.plain.SettlementPrices;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@code SettlementEngine} settles a batch of users in parallel at the end of a
+ * trading day. The settlement prices and instrument information are looked up
+ * only once for all instruments held by the users, then shared by all settlement
+ * tasks as read-only snapshot.
+ *
+ * <p>Each user is settled and written to journal in its own task, so a failure
+ * on one user doesn't stop the others. An instrument without settlement price or
+ * instrument info only fails the users holding it. Progress can be queried from
+ * other threads while settlement is running.
+ * </p>
+ *
+ * <p>After all users of the day are settled, the caller ends the day with
+ * {@link #endDay()} once.
+ * </p>
+ */
+public class SettlementEngine {
+    private final Config config;
+    private final MessageWriter msgWriter;
+    private final int parallelism;
+
+    private final AtomicInteger total = new AtomicInteger(0),
+            settled = new AtomicInteger(0),
+            failed = new AtomicInteger(0);
+    private volatile long beginNanos = 0, endNanos = 0;
+
+    public SettlementEngine(MessageWriter writer, Config cfg) {
+        this(writer, cfg, Runtime.getRuntime().availableProcessors());
+    }
+
+    public SettlementEngine(MessageWriter writer, Config cfg, int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism less than 1");
+        this.config = cfg;
+        this.msgWriter = writer;
+        this.parallelism = parallelism;
+        Metrics.gauge("settlement.millis",
+                () -> TimeUnit.NANOSECONDS.toMillis(getElapsedNanos()));
+        Metrics.gauge("settlement.settled", this.settled::get);
+        Metrics.gauge("settlement.failed", this.failed::get);
+    }
+
+    /**
+     * Settle the specified users and write the settled account and positions to
+     * journal. The method blocks until all users are settled or failed.
+     *
+     * @param users users to settle
+     * @return collection of users that failed settlement
+     */
+    @InTeam
+    public Collection<User> settle(Collection<User> users) {
+        Objects.requireNonNull(users, "users null");
+        this.total.set(users.size());
+        this.settled.set(0);
+        this.failed.set(0);
+        this.endNanos = 0;
+        this.beginNanos = System.nanoTime();
+        // Build shared snapshot for all users.
+        var instruments = new HashSet<String>();
+        for (var u : users)
+            instruments.addAll(u.getPosition().getAllInstrID());
+        var missing = new HashSet<String>();
+        var prices = prepPrices(instruments, this.config, missing);
+        var infoSet = prepInfoSet(instruments, this.config, missing);
+        var tradingDay = this.config.getTradingDay();
+        Objects.requireNonNull(tradingDay, "trading day null");
+        // Fan out settlement tasks.
+        var failedUsers = Collections.synchronizedList(new LinkedList<User>());
+        var tasks = new LinkedList<Callable<Void>>();
+        for (var u : users)
+            tasks.add(() -> {
+                if (settleOne(u, prices, infoSet, tradingDay, missing))
+                    this.settled.incrementAndGet();
+                else {
+                    this.failed.incrementAndGet();
+                    failedUsers.add(u);
+                }
+                return null;
+            });
+        var pool = new ForkJoinPool(this.parallelism);
+        try {
+            for (var f : pool.invokeAll(tasks))
+                f.get();
+        } catch (InterruptedException | ExecutionException e) {
+            this.config.getLogger().severe(
+                    OP.formatLog("settlement interrupted", null,
+                            e.getMessage(), null));
+        } finally {
+            pool.shutdown();
+        }
+        this.endNanos = System.nanoTime();
+        this.config.getLogger().info(String.format(
+                "settlement %s done, %d settled, %d failed, %d ms",
+                tradingDay, this.settled.get(), this.failed.get(),
+                TimeUnit.NANOSECONDS.toMillis(getElapsedNanos())));
+        return failedUsers;
+    }
+
+    /**
+     * Settle the specified user alone and write the settled account and
+     * positions to journal. Progress of the latest batch is not changed.
+     *
+     * @param user user to settle
+     * @return {@code true} if the user is settled, {@code false} otherwise
+     */
+    @InTeam
+    public boolean settle(User user) {
+        Objects.requireNonNull(user, "user null");
+        var instruments = new HashSet<>(user.getPosition().getAllInstrID());
+        var missing = new HashSet<String>();
+        var prices = prepPrices(instruments, this.config, missing);
+        var infoSet = prepInfoSet(instruments, this.config, missing);
+        var tradingDay = this.config.getTradingDay();
+        Objects.requireNonNull(tradingDay, "trading day null");
+        return settleOne(user, prices, infoSet, tradingDay, missing);
+    }
+
+    /**
+     * End the trading day after all users are settled. Orders not done by
+     * settlement never end, so their traces are dropped. Call it once after the
+     * last batch, because it drops traces of all users.
+     */
+    @InTeam
+    public void endDay() {
+        OrderTracer.clearAlive();
+    }
+
+    /**
+     * Settle the users of the specified active users.
+     *
+     * @param users active users to settle
+     * @return collection of active users that failed settlement
+     */
+    @InTeam
+    public Collection<ActiveUser> settleActive(Collection<ActiveUser> users) {
+        Objects.requireNonNull(users, "users null");
+        var map = new HashMap<User, ActiveUser>();
+        for (var u : users)
+            map.put(u.getUser(), u);
+        var failedUsers = new LinkedList<ActiveUser>();
+        for (var u : settle(map.keySet()))
+            failedUsers.add(map.get(u));
+        return failedUsers;
+    }
+
+    private boolean settleOne(User user, SettlementPrices prices,
+                              InstrumentInfoSet infoSet, String tradingDay,
+                              Set<String> missing) {
+        try {
+            for (var instr : user.getPosition().getAllInstrID())
+                if (missing.contains(instr))
+                    throw new IllegalStateException(
+                            "no settlement price or info for " + instr);
+            user.settle(prices, infoSet, tradingDay);
+            // Write settled account and positions.
+            var positions = new LinkedList<CThostFtdcInvestorPositionDetailField>();
+            for (var lst : user.getPosition().getAllPD().values())
+                for (var p : lst)
+                    positions.add(p.getDeepCopyTotal());
+            this.msgWriter.writeSettle(user.getAccount().getDeepCopyTotal(),
+                    positions);
+            return true;
+        } catch (Throwable th) {
+            this.config.getLogger().severe(
+                    OP.formatLog("failed settlement",
+                            user.getAccount().getDeepCopyTotal().AccountID,
+                            th.getMessage(), null));
+            return false;
+        }
+    }
+
+    /**
+     * Get number of users to settle in the latest settlement.
+     *
+     * @return number of users
+     */
+    @InTeam
+    public int getTotalCount() {
+        return this.total.get();
+    }
+
+    /**
+     * Get number of users that have been settled successfully.
+     *
+     * @return number of settled users
+     */
+    @InTeam
+    public int getSettledCount() {
+        return this.settled.get();
+    }
+
+    /**
+     * Get number of users that failed settlement.
+     *
+     * @return number of failed users
+     */
+    @InTeam
+    public int getFailedCount() {
+        return this.failed.get();
+    }
+
+    /**
+     * Get elapsed time of the latest settlement in nanoseconds. If settlement is
+     * still running, return the time since it began.
+     *
+     * @return elapsed nanoseconds, or 0 if no settlement has run
+     */
+    @InTeam
+    public long getElapsedNanos() {
+        if (this.beginNanos == 0)
+            return 0;
+        else if (this.endNanos == 0)
+            return System.nanoTime() - this.beginNanos;
+        else
+            return this.endNanos - this.beginNanos;
+    }
+
+    /*
+     Look up settlement prices of the instruments. Instruments without valid
+     settlement price are added to the missing set.
+     */
+    static SettlementPrices prepPrices(Collection<String> instruments,
+                                       Config config, Set<String> missing) {
+        var prices = new SettlementPrices();
+        for (var instr : instruments) {
+            var depth = config.getDepthMarketData(instr);
+            if (depth == null || !OP.validPrice(depth.SettlementPrice)) {
+                config.getLogger().warning(OP.formatLog(
+                        "no settlement price", instr, null, null));
+                missing.add(instr);
+                continue;
+            }
+            prices.set(instr, depth.SettlementPrice);
+        }
+        return prices;
+    }
+
+    /*
+     Look up instrument info of the instruments. Instruments without complete
+     info are added to the missing set.
+     */
+    static InstrumentInfoSet prepInfoSet(Collection<String> instruments,
+                                         Config config, Set<String> missing) {
+        var infoSet = new InstrumentInfoSet();
+        for (var instr : instruments) {
+            var instrInfo = config.getInstrInfo(instr);
+            if (instrInfo == null || instrInfo.instrument == null
+                    || instrInfo.margin == null
+                    || instrInfo.commission == null) {
+                config.getLogger().warning(OP.formatLog(
+                        "no instrument info", instr, null, null));
+                missing.add(instr);
+                continue;
+            }
+            // Set info.
+            infoSet.setInstrument(instr, instrInfo.instrument);
+            infoSet.setMargin(instr, instrInfo.margin);
+            infoSet.setCommission(instr, instrInfo.commission);
+        }
+        return infoSet;
+    }
+}
@@ -32,31 +32,43 @@ import com.nabiki.ctp4j.jni.struct.CThostFtdcDepthMarketDataField;
 import com.nabiki.wukong.cfg.plain.InstrumentInfo;
 import com.nabiki.wukong.cfg.plain.JdbcLoginConfig;
 import com.nabiki.wukong.cfg.plain.LoginConfig;
+import com.nabiki.wukong.risk.RiskEngine;
+import com.nabiki.wukong.tools.AsyncLog;
 import com.nabiki.wukong.tools.EasyFile;
-import com.nabiki.wukong.tools.OP;
+import com.nabiki.wukong.tools.InTeam;
+import com.nabiki.wukong.tools.InstrumentRegistry;
 import com.nabiki.wukong.tools.OutTeam;
 
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.Logger;
 
 public class Config {
-    // Config's name -> LoginConfig
-    final Map<String, LoginConfig> login = new HashMap<>();
+    // Config defined by files, replaced as a whole on reload.
+    volatile ConfigGeneration generation = new ConfigGeneration(0);
 
-    // ProductID -> TradingHourKeeper
-    final Map<String, TradingHourKeeper> tradingHour = new HashMap<>();
+    // Instrument ID -> InstrumentInfo, an info is replaced, not modified, on update.
+    final Map<String, InstrumentInfo> instrInfo = new ConcurrentHashMap<>();
 
-    // Instrument ID -> InstrumentInfo
-    final Map<String, InstrumentInfo> instrInfo = new HashMap<>();
+    // Instrument handle -> Depth market data, replaced by a larger array when
+    // more instruments are registered.
+    volatile AtomicReferenceArray<CThostFtdcDepthMarketDataField> depths
+            = new AtomicReferenceArray<>(256);
+    private final Object depthLock = new Object();
 
-    // Instrument ID -> Depth market data
-    final Map<String, CThostFtdcDepthMarketDataField> depths = new HashMap<>();
+    // Set when instrument info changes so the risk engine is rebuilt on next get.
+    final AtomicBoolean instrChanged = new AtomicBoolean(true);
+    volatile RiskEngine riskEngine;
+    private final Object riskLock = new Object();
 
     static Logger logger;
-    String tradingDay;
-    EasyFile rootDirectory;
-    JdbcLoginConfig jdbcLoginConfig;
+    static AsyncLog asyncLog;
+    volatile String tradingDay;
 
     Config() {
     }
@@ -68,9 +80,7 @@ public class Config {
      */
     @OutTeam
     public Map<String, LoginConfig> getLoginConfigs() {
-        synchronized (this.login) {
-            return this.login;
-        }
+        return Collections.unmodifiableMap(this.generation.login);
     }
 
     /**
@@ -85,12 +95,12 @@ public class Config {
      */
     @OutTeam
     public TradingHourKeeper getTradingHour(String proID, String instrID) {
-        synchronized (this.tradingHour) {
-            if (proID != null)
-                return this.tradingHour.get(proID);
-            else
-                return this.tradingHour.get(OP.getProductID(instrID));
-        }
+        var hours = this.generation.tradingHour;
+        if (proID != null)
+            return hours.get(proID);
+        else
+            return hours.get(InstrumentRegistry.getProductID(
+                    InstrumentRegistry.getHandle(instrID)));
     }
 
     /**
@@ -100,7 +110,29 @@ public class Config {
      */
     @OutTeam
     public Map<String, TradingHourKeeper> getAllTradingHour() {
-        return this.tradingHour;
+        return Collections.unmodifiableMap(this.generation.tradingHour);
+    }
+
+    /**
+     * Get trading calendar. If no holiday is configured, the calendar only
+     * excludes weekends.
+     *
+     * @return trading calendar
+     */
+    @OutTeam
+    public TradingCalendar getTradingCalendar() {
+        return this.generation.calendar;
+    }
+
+    /**
+     * Get version of the file-defined config. The version increases by one on
+     * each reload.
+     *
+     * @return config version
+     */
+    @OutTeam
+    public long getVersion() {
+        return this.generation.version;
     }
 
     /**
@@ -110,7 +142,7 @@ public class Config {
      */
     @OutTeam
     public EasyFile getRootDirectory() {
-        return this.rootDirectory;
+        return this.generation.rootDirectory;
     }
 
     /**
@@ -122,8 +154,44 @@ public class Config {
      */
     @OutTeam
     public InstrumentInfo getInstrInfo(String instrID) {
-        synchronized (this.instrInfo) {
-            return this.instrInfo.get(instrID);
+        return this.instrInfo.get(instrID);
+    }
+
+    /**
+     * Get a snapshot of all instruments' information.
+     *
+     * @return set of instrument information
+     */
+    @OutTeam
+    public Set<InstrumentInfo> getAllInstrInfo() {
+        return new HashSet<>(this.instrInfo.values());
+    }
+
+    /**
+     * Get risk engine built from the current instrument information. The engine is
+     * rebuilt on the first call after instrument information changes, so don't
+     * keep the returned engine for long.
+     *
+     * @return {@link RiskEngine}
+     */
+    @OutTeam
+    public RiskEngine getRiskEngine() {
+        var engine = this.riskEngine;
+        if (engine != null && !this.instrChanged.get())
+            return engine;
+        synchronized (this.riskLock) {
+            if (this.riskEngine == null || this.instrChanged.get()) {
+                // Clear the flag before reading info, so a change during the
+                // build triggers another build.
+                this.instrChanged.set(false);
+                try {
+                    this.riskEngine = new RiskEngine(getAllInstrInfo());
+                } catch (RuntimeException e) {
+                    this.instrChanged.set(true);
+                    throw e;
+                }
+            }
+            return this.riskEngine;
         }
     }
 
@@ -148,6 +216,17 @@ public class Config {
         return Config.logger;
     }
 
+    /**
+     * Get the shared asynchronous log on {@link #getLogger()}, for logging on
+     * hot paths.
+     *
+     * @return {@link AsyncLog}
+     */
+    @InTeam
+    public AsyncLog getAsyncLog() {
+        return Config.asyncLog;
+    }
+
     /**
      * Get the latest depth market data.
      *
@@ -155,8 +234,34 @@ public class Config {
      * @return {@link CThostFtdcDepthMarketDataField} or {@code null} if not found
      */
     public CThostFtdcDepthMarketDataField getDepthMarketData(String instr) {
-        synchronized (this.depths) {
-            return this.depths.get(instr);
+        return getDepthMarketData(InstrumentRegistry.findHandle(instr));
+    }
+
+    /**
+     * Get the latest depth market data of the specified instrument handle.
+     *
+     * @param handle instrument handle from {@link InstrumentRegistry}
+     * @return {@link CThostFtdcDepthMarketDataField} or {@code null} if not found
+     */
+    public CThostFtdcDepthMarketDataField getDepthMarketData(int handle) {
+        var d = this.depths;
+        if (handle < 0 || handle >= d.length())
+            return null;
+        else
+            return d.get(handle);
+    }
+
+    void setDepthMarketData(int handle, CThostFtdcDepthMarketDataField md) {
+        synchronized (this.depthLock) {
+            var d = this.depths;
+            if (handle >= d.length()) {
+                var n = new AtomicReferenceArray<CThostFtdcDepthMarketDataField>(
+                        Math.max(handle + 1, d.length() << 1));
+                for (int i = 0; i < d.length(); ++i)
+                    n.set(i, d.get(i));
+                this.depths = d = n;
+            }
+            d.set(handle, md);
         }
     }
 
@@ -166,6 +271,6 @@ public class Config {
      * @return {@link JdbcLoginConfig} if presented, {@code null} otherwise
      */
     public JdbcLoginConfig getJdbcLoginConfig() {
-        return this.jdbcLoginConfig;
+        return this.generation.jdbcLoginConfig;
     }
 }
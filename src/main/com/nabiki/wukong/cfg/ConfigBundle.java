@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.cfg;
+
+import com.nabiki.wukong.tools.OP;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Compiled copy of all config sources in a single file. Each source file is
+ * kept with its size and modification time, and the parsed content in compact
+ * JSON. A source is read from disk only if its stamp changes, and parsed
+ * objects are kept in memory, so a reload only parses the changed files.
+ *
+ * <pre>
+ * #wukong-bundle 1
+ * S {size} {mtime} {class} {path}
+ * {...}
+ * #crc32 1a2b3c4d 3
+ * </pre>
+ *
+ * <p>A corrupted bundle is discarded and rebuilt from the sources.</p>
+ */
+class ConfigBundle {
+    static final String FILE_NAME = "config.bundle";
+
+    private static final String HEADER = "#wukong-bundle 1";
+    private static final String CRC_PREFIX = "#crc32 ";
+    private static final String SOURCE_PREFIX = "S ";
+
+    private final Path file;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Set<String> seen = new HashSet<>();
+    private boolean dirty = false;
+
+    ConfigBundle(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Read the bundle file if it exists.
+     *
+     * @throws IOException the bundle is corrupted, the entries are discarded
+     */
+    synchronized void open() throws IOException {
+        this.entries.clear();
+        if (!Files.exists(this.file))
+            return;
+        var crc = new CRC32();
+        int count = 0;
+        try (var r = new BufferedReader(new InputStreamReader(
+                new FileInputStream(this.file.toFile()), StandardCharsets.UTF_8))) {
+            String line;
+            Entry last = null;
+            while ((line = r.readLine()) != null) {
+                if (line.startsWith(CRC_PREFIX)) {
+                    verify(line, crc.getValue(), count);
+                    return;
+                }
+                update(crc, line);
+                ++count;
+                if (count == 1) {
+                    if (line.compareTo(HEADER) != 0)
+                        throw new IOException("unsupported bundle: " + this.file);
+                } else if (line.startsWith(SOURCE_PREFIX)) {
+                    var s = line.substring(SOURCE_PREFIX.length()).split(" ", 4);
+                    if (s.length != 4)
+                        throw new IOException("broken bundle entry: " + line);
+                    last = new Entry(Long.parseLong(s[0]), Long.parseLong(s[1]),
+                            s[2], null);
+                    this.entries.put(s[3], last);
+                } else if (last != null && last.text == null) {
+                    last.text = line;
+                } else
+                    throw new IOException("broken bundle line: " + count);
+            }
+            throw new IOException("checksum missing: " + this.file);
+        } catch (IOException | NumberFormatException e) {
+            this.entries.clear();
+            this.dirty = true;
+            throw e instanceof IOException ? (IOException) e
+                    : new IOException("broken bundle: " + this.file, e);
+        }
+    }
+
+    /**
+     * Start a new round of reading sources. Sources not read in the round are
+     * removed when the bundle is saved.
+     */
+    synchronized void begin() {
+        this.seen.clear();
+    }
+
+    /**
+     * Get the parsed content of the specified source file. If the source file
+     * doesn't change since it was bundled, the bundled content is used.
+     *
+     * @param source source file
+     * @param clz {@link Class} of the content
+     * @param <T> generic type of the content
+     * @return parsed content
+     * @throws IOException fail reading or parsing the source
+     */
+    synchronized <T> T read(File source, Class<T> clz) throws IOException {
+        var key = source.getAbsolutePath();
+        this.seen.add(key);
+        long size = source.length(), mtime = source.lastModified();
+        var e = this.entries.get(key);
+        if (e != null && e.size == size && e.mtime == mtime
+                && e.type.compareTo(clz.getName()) == 0 && e.text != null) {
+            if (e.parsed == null)
+                e.parsed = OP.fromJson(e.text, clz);
+            return clz.cast(e.parsed);
+        }
+        var obj = OP.fromJson(OP.readText(source, StandardCharsets.UTF_8), clz);
+        e = new Entry(size, mtime, clz.getName(), OP.toCompactJson(obj));
+        e.parsed = obj;
+        this.entries.put(key, e);
+        this.dirty = true;
+        return obj;
+    }
+
+    /**
+     * Write the bundle file if any source changes in this round. The content is
+     * written to a temporary file then moved to the bundle path.
+     *
+     * @throws IOException fail writing bundle
+     */
+    synchronized void save() throws IOException {
+        if (this.entries.keySet().retainAll(this.seen))
+            this.dirty = true;
+        if (!this.dirty)
+            return;
+        var tmp = Path.of(this.file.toAbsolutePath().toString() + ".tmp");
+        var crc = new CRC32();
+        int count = 0;
+        try (var w = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(tmp.toFile(), false),
+                StandardCharsets.UTF_8))) {
+            writeLine(w, crc, HEADER);
+            ++count;
+            for (var m : this.entries.entrySet()) {
+                var e = m.getValue();
+                writeLine(w, crc, SOURCE_PREFIX + e.size + " " + e.mtime + " "
+                        + e.type + " " + m.getKey());
+                writeLine(w, crc, e.text);
+                count += 2;
+            }
+            w.write(CRC_PREFIX + Long.toHexString(crc.getValue()) + " " + count);
+            w.write('\n');
+        }
+        Files.move(tmp, this.file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        this.dirty = false;
+    }
+
+    Path getFile() {
+        return this.file;
+    }
+
+    /**
+     * Get number of bundled sources.
+     *
+     * @return number of sources
+     */
+    synchronized int size() {
+        return this.entries.size();
+    }
+
+    private void verify(String line, long crc, int count) throws IOException {
+        var s = line.substring(CRC_PREFIX.length()).split(" ");
+        try {
+            if (s.length != 2 || Long.parseLong(s[0], 16) != crc
+                    || Integer.parseInt(s[1]) != count)
+                throw new IOException("checksum mismatch: " + this.file);
+        } catch (NumberFormatException e) {
+            throw new IOException("broken checksum: " + this.file, e);
+        }
+    }
+
+    private static void writeLine(Writer w, CRC32 crc, String line)
+            throws IOException {
+        w.write(line);
+        w.write('\n');
+        update(crc, line);
+    }
+
+    private static void update(CRC32 crc, String line) {
+        crc.update(line.getBytes(StandardCharsets.UTF_8));
+        crc.update('\n');
+    }
+
+    private static class Entry {
+        final long size, mtime;
+        final String type;
+        String text;
+        Object parsed;
+
+        Entry(long size, long mtime, String type, String text) {
+            this.size = size;
+            this.mtime = mtime;
+            this.type = type;
+            this.text = text;
+        }
+    }
+}
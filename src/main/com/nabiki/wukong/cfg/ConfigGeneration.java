@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.cfg;
+
+import com.nabiki.wukong.cfg.plain.JdbcLoginConfig;
+import com.nabiki.wukong.cfg.plain.LoginConfig;
+import com.nabiki.wukong.tools.EasyFile;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * One generation of the file-defined config. A generation is filled by the
+ * loader, then published to {@link Config} by a single volatile write and never
+ * changed after that. Readers get a consistent view of the generation they read
+ * without any lock, and a reload never blocks them.
+ */
+class ConfigGeneration {
+    final long version;
+
+    // Config's name -> LoginConfig
+    final Map<String, LoginConfig> login = new HashMap<>();
+
+    // ProductID -> TradingHourKeeper
+    final Map<String, TradingHourKeeper> tradingHour = new HashMap<>();
+
+    TradingCalendar calendar = new TradingCalendar(new HashSet<>());
+    EasyFile rootDirectory;
+    JdbcLoginConfig jdbcLoginConfig;
+
+    ConfigGeneration(long version) {
+        this.version = version;
+    }
+
+    /**
+     * Sample the same durations on the trading hours of this generation as the
+     * previous generation did, so users of the sampled durations don't see a
+     * missing sample after reload.
+     *
+     * @param prev previous generation
+     */
+    void carrySamples(ConfigGeneration prev) {
+        for (var e : this.tradingHour.entrySet()) {
+            var old = prev.tradingHour.get(e.getKey());
+            if (old == null)
+                continue;
+            for (var du : old.getSampledDurations())
+                e.getValue().sample(du);
+        }
+    }
+}
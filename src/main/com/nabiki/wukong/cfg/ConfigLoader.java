@@ -32,17 +32,24 @@ import com.nabiki.ctp4j.jni.struct.CThostFtdcDepthMarketDataField;
 import com.nabiki.ctp4j.jni.struct.CThostFtdcInstrumentCommissionRateField;
 import com.nabiki.ctp4j.jni.struct.CThostFtdcInstrumentField;
 import com.nabiki.ctp4j.jni.struct.CThostFtdcInstrumentMarginRateField;
+import com.nabiki.wukong.cfg.plain.CalendarConfig;
 import com.nabiki.wukong.cfg.plain.InstrumentInfo;
 import com.nabiki.wukong.cfg.plain.JdbcLoginConfig;
 import com.nabiki.wukong.cfg.plain.LoginConfig;
 import com.nabiki.wukong.cfg.plain.TradingHourConfig;
+import com.nabiki.wukong.tools.AsyncLog;
 import com.nabiki.wukong.tools.EasyFile;
 import com.nabiki.wukong.tools.InTeam;
+import com.nabiki.wukong.tools.InstrumentRegistry;
 import com.nabiki.wukong.tools.OP;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.FileHandler;
@@ -54,10 +61,13 @@ public class ConfigLoader {
 
     static AtomicBoolean configLoaded = new AtomicBoolean(false);
     final static Config config = new Config();
+    static ConfigBundle bundle;
 
     /**
-     * Get single {@link Config} instance. If the instance exists, the method first
-     * clears the internal data then initializes again.
+     * Get single {@link Config} instance. If the instance exists, the method builds
+     * a new generation of the file-defined config and replaces the old one with a
+     * single volatile write, so readers are never blocked by the reload. Runtime
+     * data, like instrument info and depth market data, are kept.
      *
      * @return instance of {@link Config}
      * @throws IOException fail to read or process configuration files, or content
@@ -66,26 +76,87 @@ public class ConfigLoader {
     @InTeam
     public static Config load() throws IOException {
         synchronized (config) {
-            // Clear old config.
-            if (configLoaded.get())
-                clearConfig();
+            var prev = config.generation;
+            var gen = new ConfigGeneration(prev.version + 1);
             // First create dirs, then logger.
-            setDirectories();
-            setConfigLogger();
+            setDirectories(gen, prev);
+            setConfigLogger(gen);
             // Config below uses logger to keep error info.
-            setLoginConfig();
-            setJdbcLoginConfig();
-            setTradingHourConfig();
-            setInstrConfig();
+            openBundle(gen);
+            setLoginConfig(gen);
+            setJdbcLoginConfig(gen);
+            setTradingHourConfig(gen);
+            setCalendarConfig(gen);
+            setInstrConfig(gen);
+            saveBundle();
+            // Keep sampled durations then publish.
+            gen.carrySamples(prev);
+            config.generation = gen;
             // Set mark.
             configLoaded.set(true);
         }
         return config;
     }
 
+    /**
+     * Watch config directories and reload config when files change. Flow
+     * directories are not watched because they are written by the application.
+     *
+     * @return running watcher, close it to stop watching
+     * @throws IOException fail watching directories
+     */
+    @InTeam
+    public static ConfigWatcher watch() throws IOException {
+        var dirs = new LinkedList<Path>();
+        for (var key : new String[] {"dir.cfg.login", "dir.cfg.hour",
+                "dir.cfg.jdbc", "dir.cfg.calendar"})
+            for (var d : config.getRootDirectory().recursiveGet(key))
+                dirs.add(d.path());
+        var watcher = new ConfigWatcher(config, dirs, () -> {
+            try {
+                load();
+            } catch (IOException e) {
+                config.getLogger().warning(
+                        OP.formatLog("failed config reload", null,
+                                e.getMessage(), null));
+            }
+        });
+        watcher.start();
+        return watcher;
+    }
+
+    private static void openBundle(ConfigGeneration gen) {
+        var dir = gen.rootDirectory.recursiveGet("dir.cfg").iterator()
+                .next().path();
+        var path = Path.of(dir.toString(), ConfigBundle.FILE_NAME);
+        // Keep parsed sources across reloads of the same root.
+        if (bundle == null || !bundle.getFile().equals(path)) {
+            bundle = new ConfigBundle(path);
+            try {
+                bundle.open();
+            } catch (IOException e) {
+                config.getLogger().warning(
+                        OP.formatLog("config bundle discarded", null,
+                                e.getMessage(), null));
+            }
+        }
+        bundle.begin();
+    }
+
+    private static void saveBundle() {
+        try {
+            bundle.save();
+        } catch (IOException e) {
+            config.getLogger().warning(
+                    OP.formatLog("failed saving config bundle", null,
+                            e.getMessage(), null));
+        }
+    }
+
     @InTeam
     public static void setDepthMarketData(CThostFtdcDepthMarketDataField md) {
-        config.depths.put(md.InstrumentID, md);
+        config.setDepthMarketData(
+                InstrumentRegistry.getHandle(md.InstrumentID), md);
     }
 
     @InTeam
@@ -95,51 +166,62 @@ public class ConfigLoader {
 
     @InTeam
     public static void setInstrConfig(CThostFtdcInstrumentField instr) {
-        synchronized (config.instrInfo) {
-            if (!config.instrInfo.containsKey(instr.InstrumentID))
-                config.instrInfo.put(instr.InstrumentID, new InstrumentInfo());
-            config.instrInfo.get(instr.InstrumentID).instrument = instr;
-        }
+        config.instrInfo.compute(instr.InstrumentID, (k, old) -> {
+            var info = copyInfo(old);
+            info.instrument = instr;
+            return info;
+        });
+        config.instrChanged.set(true);
     }
 
     @InTeam
     public static void setInstrConfig(
             CThostFtdcInstrumentMarginRateField margin) {
-        synchronized (config.instrInfo) {
-            if (!config.instrInfo.containsKey(margin.InstrumentID))
-                config.instrInfo.put(margin.InstrumentID, new InstrumentInfo());
-            config.instrInfo.get(margin.InstrumentID).margin = margin;
-        }
+        config.instrInfo.compute(margin.InstrumentID, (k, old) -> {
+            var info = copyInfo(old);
+            info.margin = margin;
+            return info;
+        });
+        config.instrChanged.set(true);
     }
 
     @InTeam
     public static void setInstrConfig(
             CThostFtdcInstrumentCommissionRateField commission) {
-        synchronized (config.instrInfo) {
-            if (!config.instrInfo.containsKey(commission.InstrumentID))
-                config.instrInfo.put(commission.InstrumentID, new InstrumentInfo());
-            config.instrInfo.get(commission.InstrumentID).commission = commission;
+        config.instrInfo.compute(commission.InstrumentID, (k, old) -> {
+            var info = copyInfo(old);
+            info.commission = commission;
+            return info;
+        });
+        config.instrChanged.set(true);
+    }
+
+    // Readers may hold the old info, so update a copy.
+    private static InstrumentInfo copyInfo(InstrumentInfo old) {
+        var info = new InstrumentInfo();
+        if (old != null) {
+            info.instrument = old.instrument;
+            info.margin = old.margin;
+            info.commission = old.commission;
         }
+        return info;
     }
 
-    private static void setInstrConfig() {
-        var dirs = config.getRootDirectory().recursiveGet("dir.flow.rsp");
+    private static void setInstrConfig(ConfigGeneration gen) {
+        var dirs = gen.rootDirectory.recursiveGet("dir.flow.rsp");
         if (dirs.size() == 0)
             return;
         for (var d : dirs) {
             d.path().toFile().listFiles(file -> {
                 try {
                     if (file.getName().startsWith("instrument")) {
-                        setInstrConfig(OP.fromJson(
-                                OP.readText(file, StandardCharsets.UTF_8),
+                        setInstrConfig(bundle.read(file,
                                 CThostFtdcInstrumentField.class));
                     } else if (file.getName().startsWith("commission")) {
-                        setInstrConfig(OP.fromJson(
-                                OP.readText(file, StandardCharsets.UTF_8),
+                        setInstrConfig(bundle.read(file,
                                 CThostFtdcInstrumentCommissionRateField.class));
                     } else if (file.getName().startsWith("margin")) {
-                        setInstrConfig(OP.fromJson(
-                                OP.readText(file, StandardCharsets.UTF_8),
+                        setInstrConfig(bundle.read(file,
                                 CThostFtdcInstrumentMarginRateField.class));
                     }
                 } catch (IOException e) {
@@ -152,20 +234,8 @@ public class ConfigLoader {
         }
     }
 
-    /*
-     Only clear the config-defined settings. For those updated in runtime, don't
-     clear them.
-     */
-    private static void clearConfig() {
-        config.rootDirectory = null;
-        config.tradingDay = null;
-        config.jdbcLoginConfig = null;
-        config.tradingHour.clear();
-        config.login.clear();
-    }
-
-    private static void setTradingHourConfig() throws IOException {
-        var s = config.getRootDirectory().recursiveGet("dir.cfg.hour");
+    private static void setTradingHourConfig(ConfigGeneration gen) throws IOException {
+        var s = gen.rootDirectory.recursiveGet("dir.cfg.hour");
         if (s.size() == 0)
             throw new IOException("directory for trading hour configs not found");
         // Iterate over all dirs.
@@ -174,9 +244,7 @@ public class ConfigLoader {
                 try {
                     if (!file.isFile() || file.length() == 0)
                         return false;
-                    var c = OP.fromJson(
-                            OP.readText(file, StandardCharsets.UTF_8),
-                            TradingHourConfig.class);
+                    var c = bundle.read(file, TradingHourConfig.class);
                     // Not null.
                     Objects.requireNonNull(c);
                     Objects.requireNonNull(c.tradingHour);
@@ -195,7 +263,7 @@ public class ConfigLoader {
                     // Save mapping into config.
                     // All product IDs are lower case.
                     for (var p : c.productID)
-                        config.tradingHour.put(p.toLowerCase(), h);
+                        gen.tradingHour.put(p.toLowerCase(), h);
                 } catch (IOException | NullPointerException e) {
                     config.getLogger().warning(
                             OP.formatLog("failed trading hour config",
@@ -205,7 +273,7 @@ public class ConfigLoader {
             });
         }
         // Write sample config.
-        if (config.tradingHour.size() == 0) {
+        if (gen.tradingHour.size() == 0) {
             var cfg = s.iterator().next();
             cfg.setFile("cfg.hour.sample", "hour.sample.json");
             OP.writeText(OP.toJson(new LoginConfig()),
@@ -214,8 +282,43 @@ public class ConfigLoader {
         }
     }
 
-    private static void setLoginConfig() throws IOException {
-        var s = config.getRootDirectory().recursiveGet("dir.cfg.login");
+    private static void setCalendarConfig(ConfigGeneration gen) throws IOException {
+        var s = gen.rootDirectory.recursiveGet("dir.cfg.calendar");
+        if (s.size() == 0)
+            throw new IOException("directory for calendar configs not found");
+        var holidays = new HashSet<LocalDate>();
+        for (var cfg : s) {
+            cfg.file().listFiles(file -> {
+                try {
+                    if (!file.isFile() || file.length() == 0)
+                        return false;
+                    var c = bundle.read(file, CalendarConfig.class);
+                    Objects.requireNonNull(c);
+                    Objects.requireNonNull(c.holidays);
+                    for (var h : c.holidays)
+                        holidays.add(OP.parseDay(h, null));
+                } catch (IOException | NullPointerException
+                        | DateTimeParseException e) {
+                    config.getLogger().warning(
+                            OP.formatLog("failed calendar config",
+                                    null, e.getMessage(), null));
+                }
+                return false;
+            });
+        }
+        gen.calendar = new TradingCalendar(holidays);
+        // Write sample config.
+        if (holidays.size() == 0) {
+            var cfg = s.iterator().next();
+            cfg.setFile("cfg.calendar.sample", "calendar.sample.json");
+            OP.writeText(OP.toJson(new CalendarConfig()),
+                    cfg.get("cfg.calendar.sample").file(),
+                    StandardCharsets.UTF_8, false);
+        }
+    }
+
+    private static void setLoginConfig(ConfigGeneration gen) throws IOException {
+        var s = gen.rootDirectory.recursiveGet("dir.cfg.login");
         if (s.size() == 0)
             throw new IOException("directory for login configs not found");
         // Iterate over all files under dir.
@@ -224,10 +327,8 @@ public class ConfigLoader {
                 try {
                     if (!file.isFile() || file.length() == 0)
                         return false;
-                    var c = OP.fromJson(
-                            OP.readText(file, StandardCharsets.UTF_8),
-                            LoginConfig.class);
-                    config.login.put(c.name, c);
+                    var c = bundle.read(file, LoginConfig.class);
+                    gen.login.put(c.name, c);
                 } catch (IOException e) {
                     config.getLogger().warning(
                             OP.formatLog("failed login config",
@@ -237,7 +338,7 @@ public class ConfigLoader {
             });
         }
         // Write a configuration sample.
-        if (config.login.size() == 0) {
+        if (gen.login.size() == 0) {
             var cfg = s.iterator().next();
             cfg.setFile("cfg.login.sample", "login.sample.json");
             OP.writeText(OP.toJson(new LoginConfig()),
@@ -246,19 +347,28 @@ public class ConfigLoader {
         }
     }
 
-    private static void setDirectories() throws IOException {
+    private static void setDirectories(ConfigGeneration gen,
+                                       ConfigGeneration prev)
+            throws IOException {
         if (rootPath == null)
             rootPath = "";
-        var root = new EasyFile(rootPath, false);
+        // Keep the root of the same path across generations, so a reload only
+        // registers new directories and doesn't read the tree from disk again.
+        var root = prev.rootDirectory;
+        if (root == null || !root.path().equals(
+                Path.of(rootPath).toAbsolutePath()))
+            root = new EasyFile(rootPath, false);
         root.setDirectory("dir.cfg", ".cfg");
         root.setDirectory("dir.flow", ".flow");
         root.setDirectory("dir.cdl", ".cdl");
         root.setDirectory("dir.log", ".log");
+        root.setDirectory("dir.shm", ".shm");
 
         var cfg = root.get("dir.cfg");
         cfg.setDirectory("dir.cfg.login", ".login");
         cfg.setDirectory("dir.cfg.hour", ".hour");
         cfg.setDirectory("dir.cfg.jdbc", ".jdbc");
+        cfg.setDirectory("dir.cfg.calendar", ".calendar");
 
         var flow = root.get("dir.flow");
         flow.setDirectory("dir.flow.ctp", ".ctp");
@@ -267,20 +377,21 @@ public class ConfigLoader {
         flow.setDirectory("dir.flow.rsp", ".rsp");
         flow.setDirectory("dir.flow.err", ".err");
         flow.setDirectory("dir.flow.stl", ".stl");
+        flow.setDirectory("dir.flow.perf", ".perf");
 
         var ctp = flow.get("dir.flow.ctp");
         ctp.setDirectory("dir.flow.ctp.trader", ".trader");
         ctp.setDirectory("dir.flow.ctp.md", ".md");
 
         // Set config.
-        config.rootDirectory = root;
+        gen.rootDirectory = root;
     }
 
-    private static void setConfigLogger() {
+    private static void setConfigLogger(ConfigGeneration gen) {
         if (Config.logger == null) {
             // Get logging directory.
             String fp;
-            var iter = config.getRootDirectory().recursiveGet("dir.log")
+            var iter = gen.rootDirectory.recursiveGet("dir.log")
                     .iterator();
             if (!iter.hasNext())
                 fp ="system.log";
@@ -299,19 +410,20 @@ public class ConfigLoader {
                 Config.logger = Logger.getGlobal();
             }
         }
+        if (Config.asyncLog == null)
+            Config.asyncLog = new AsyncLog(Config.logger, 8192);
     }
 
-    private static void setJdbcLoginConfig() throws IOException {
-        var s = config.getRootDirectory().recursiveGet("dir.cfg.jdbc");
+    private static void setJdbcLoginConfig(ConfigGeneration gen) throws IOException {
+        var s = gen.rootDirectory.recursiveGet("dir.cfg.jdbc");
         if (s.size() == 0)
             throw new IOException("jdbc config not found");
         // Just use the first file in first dir.
         s.iterator().next().file().listFiles(file -> {
             try {
-                if (config.jdbcLoginConfig == null
+                if (gen.jdbcLoginConfig == null
                         && file.getName().endsWith(".json"))
-                    config.jdbcLoginConfig = OP.fromJson(
-                            OP.readText(file, StandardCharsets.UTF_8),
+                    gen.jdbcLoginConfig = bundle.read(file,
                             JdbcLoginConfig.class);
             } catch (IOException e) {
                 config.getLogger().warning(
@@ -321,7 +433,7 @@ public class ConfigLoader {
             return false;
         });
         // Write an sample config if not exists.
-        if (config.jdbcLoginConfig == null) {
+        if (gen.jdbcLoginConfig == null) {
             var cfg = s.iterator().next();
             cfg.setFile("cfg.jdbc.sample", "jdbc.sample.json");
             OP.writeText(OP.toJson(new JdbcLoginConfig()),
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.cfg;
+
+import com.nabiki.wukong.tools.OP;
+import com.nabiki.wukong.tools.Workers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watch config directories and call back when files in them change. Changes in
+ * a burst, like an editor saving several files, are coalesced into one call.
+ * Sample configs written by the loader itself are ignored.
+ */
+public class ConfigWatcher implements Closeable {
+    private static final long QUIET_MILLIS = 200;
+
+    private final Config config;
+    private final WatchService service;
+    private final Runnable onChange;
+    private final Thread daemon;
+
+    ConfigWatcher(Config cfg, Collection<Path> dirs, Runnable onChange)
+            throws IOException {
+        this.config = cfg;
+        this.onChange = onChange;
+        this.service = FileSystems.getDefault().newWatchService();
+        for (var d : dirs)
+            d.register(this.service, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+        this.daemon = Workers.newIoThread("config-watcher", this::watch);
+    }
+
+    void start() {
+        this.daemon.start();
+    }
+
+    private void watch() {
+        try {
+            while (!Thread.interrupted()) {
+                var changed = drain(this.service.take());
+                // Wait until no more change comes in a while.
+                WatchKey key;
+                while ((key = this.service.poll(QUIET_MILLIS,
+                        TimeUnit.MILLISECONDS)) != null)
+                    changed |= drain(key);
+                if (!changed)
+                    continue;
+                try {
+                    this.onChange.run();
+                } catch (Throwable th) {
+                    this.config.getLogger().warning(
+                            OP.formatLog("failed config reload", null,
+                                    th.getMessage(), null));
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+        }
+    }
+
+    private boolean drain(WatchKey key) {
+        boolean changed = false;
+        for (var event : key.pollEvents()) {
+            var ctx = event.context();
+            if (ctx == null || !ctx.toString().contains(".sample."))
+                changed = true;
+        }
+        key.reset();
+        return changed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.daemon.interrupt();
+        this.service.close();
+    }
+}
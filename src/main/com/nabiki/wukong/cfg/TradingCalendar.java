@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.cfg;
+
+import com.nabiki.wukong.tools.OutTeam;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Trading days of the configured years. Days of the configured years, plus one
+ * year before and after, are computed once on construction, so the queries are
+ * array reads. Days out of the range follow the weekday rule.
+ *
+ * <p>A night session belongs to the next trading day. It is held in the evening
+ * of a trading day only if the next trading day is the next weekday, that is, no
+ * holiday in between.
+ * </p>
+ *
+ * <p><b>Instance of the class is thread-safe.</b></p>
+ */
+public class TradingCalendar {
+    /**
+     * Night session begins at 21 pm.
+     */
+    public static final LocalTime NIGHT_BEGIN = LocalTime.of(21, 0);
+
+    /**
+     * Night session ends before 3 am of the next calendar day.
+     */
+    public static final LocalTime NIGHT_END = LocalTime.of(3, 0);
+
+    private final Set<LocalDate> holidays = new HashSet<>();
+    private final long base;
+    private final boolean[] trading, night;
+    private final long[] next, prev;
+
+    TradingCalendar(Collection<LocalDate> holidays) {
+        this.holidays.addAll(holidays);
+        int minYear = LocalDate.now().getYear(), maxYear = minYear;
+        for (var d : holidays) {
+            minYear = Math.min(minYear, d.getYear());
+            maxYear = Math.max(maxYear, d.getYear());
+        }
+        var from = LocalDate.of(minYear - 1, 1, 1);
+        var to = LocalDate.of(maxYear + 1, 12, 31);
+        this.base = from.toEpochDay();
+        int n = (int) (to.toEpochDay() - this.base + 1);
+        this.trading = new boolean[n];
+        this.night = new boolean[n];
+        this.next = new long[n];
+        this.prev = new long[n];
+        for (int i = 0; i < n; ++i)
+            this.trading[i] = isTradingDayByRule(
+                    LocalDate.ofEpochDay(this.base + i));
+        // Previous trading days.
+        long last = computePrev(from).toEpochDay();
+        for (int i = 0; i < n; ++i) {
+            this.prev[i] = last;
+            if (this.trading[i])
+                last = this.base + i;
+        }
+        // Next trading days.
+        last = computeNext(to).toEpochDay();
+        for (int i = n - 1; i >= 0; --i) {
+            this.next[i] = last;
+            if (this.trading[i])
+                last = this.base + i;
+        }
+        // Night sessions.
+        for (int i = 0; i < n; ++i) {
+            var weekday = nextWeekday(LocalDate.ofEpochDay(this.base + i));
+            this.night[i] = this.trading[i]
+                    && this.next[i] == weekday.toEpochDay();
+        }
+    }
+
+    private boolean isTradingDayByRule(LocalDate day) {
+        var w = day.getDayOfWeek();
+        return w != DayOfWeek.SATURDAY && w != DayOfWeek.SUNDAY
+                && !this.holidays.contains(day);
+    }
+
+    private static LocalDate nextWeekday(LocalDate day) {
+        do {
+            day = day.plusDays(1);
+        } while (day.getDayOfWeek() == DayOfWeek.SATURDAY
+                || day.getDayOfWeek() == DayOfWeek.SUNDAY);
+        return day;
+    }
+
+    private LocalDate computeNext(LocalDate day) {
+        do {
+            day = day.plusDays(1);
+        } while (!isTradingDayByRule(day));
+        return day;
+    }
+
+    private LocalDate computePrev(LocalDate day) {
+        do {
+            day = day.minusDays(1);
+        } while (!isTradingDayByRule(day));
+        return day;
+    }
+
+    private int index(LocalDate day) {
+        long i = day.toEpochDay() - this.base;
+        return i < 0 || i >= this.trading.length ? -1 : (int) i;
+    }
+
+    /**
+     * Check if the specified day is a trading day.
+     *
+     * @param day day
+     * @return {@code true} if the day is a trading day
+     */
+    @OutTeam
+    public boolean isTradingDay(LocalDate day) {
+        var i = index(day);
+        return i < 0 ? isTradingDayByRule(day) : this.trading[i];
+    }
+
+    /**
+     * Check if there is night session in the evening of the specified day.
+     *
+     * @param day day
+     * @return {@code true} if there is night session
+     */
+    @OutTeam
+    public boolean hasNightSession(LocalDate day) {
+        var i = index(day);
+        if (i >= 0)
+            return this.night[i];
+        else
+            return isTradingDayByRule(day)
+                    && computeNext(day).equals(nextWeekday(day));
+    }
+
+    /**
+     * Get the first trading day after the specified day.
+     *
+     * @param day day
+     * @return next trading day
+     */
+    @OutTeam
+    public LocalDate getNextTradingDay(LocalDate day) {
+        var i = index(day);
+        return i < 0 ? computeNext(day) : LocalDate.ofEpochDay(this.next[i]);
+    }
+
+    /**
+     * Get the last trading day before the specified day.
+     *
+     * @param day day
+     * @return previous trading day
+     */
+    @OutTeam
+    public LocalDate getPrevTradingDay(LocalDate day) {
+        var i = index(day);
+        return i < 0 ? computePrev(day) : LocalDate.ofEpochDay(this.prev[i]);
+    }
+
+    /**
+     * Get the trading day that the specified moment belongs to. Night session
+     * belongs to the next trading day, and time on a non-trading day belongs to
+     * the next trading day.
+     *
+     * @param now date time
+     * @return trading day
+     */
+    @OutTeam
+    public LocalDate getTradingDay(LocalDateTime now) {
+        var day = now.toLocalDate();
+        var time = now.toLocalTime();
+        if (!time.isBefore(NIGHT_BEGIN))
+            return getNextTradingDay(day);
+        else if (time.isBefore(NIGHT_END) && hasNightSession(day.minusDays(1)))
+            return getNextTradingDay(day.minusDays(1));
+        else if (isTradingDay(day))
+            return day;
+        else
+            return getNextTradingDay(day);
+    }
+
+    /**
+     * Check if the trading of the specified trading hours is over for now, so
+     * requests can't wait until market opens. Requests are accepted in breaks of
+     * a trading day, and in the night before a trading day that has night
+     * session if the instrument trades in the night.
+     *
+     * @param now date time
+     * @param hour trading hours of the instrument
+     * @return {@code true} if the trading is over
+     */
+    @OutTeam
+    public boolean isOver(LocalDateTime now, TradingHourKeeper hour) {
+        var day = now.toLocalDate();
+        var time = now.toLocalTime();
+        if (!time.isBefore(NIGHT_BEGIN))
+            return !hour.hasNightSession() || !hasNightSession(day);
+        else if (time.isBefore(NIGHT_END))
+            return !hour.hasNightSession()
+                    || !hasNightSession(day.minusDays(1));
+        else
+            return !isTradingDay(day) || hour.isEndDay(time);
+    }
+}
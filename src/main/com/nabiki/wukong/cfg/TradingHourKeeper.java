@@ -61,11 +61,56 @@ public class TradingHourKeeper {
         }
     }
 
-    final List<TradingHour> tradingHours = new LinkedList<>();
-    final Map<Duration, Set<LocalTime>> durationSplits = new ConcurrentHashMap<>();
+    private static final int SECONDS_OF_DAY = 24 * 60 * 60;
+
+    final List<TradingHour> tradingHours = new ArrayList<>();
+    final Map<Duration, BitSet> durationSplits = new ConcurrentHashMap<>();
+
+    // Second of day -> index of the trading hour containing the second, or -1.
+    // The table is compiled once, so checks are array reads.
+    private final byte[] sessions = new byte[SECONDS_OF_DAY];
+    private final boolean night;
 
     TradingHourKeeper(TradingHour... hours) {
+        if (hours.length > Byte.MAX_VALUE)
+            throw new IllegalArgumentException("too many trading hours");
         this.tradingHours.addAll(Arrays.asList(hours));
+        Arrays.fill(this.sessions, (byte) -1);
+        for (int i = 0; i < hours.length; ++i) {
+            int from = hours[i].from.toSecondOfDay(),
+                    to = hours[i].to.toSecondOfDay();
+            if (from == to)
+                continue;
+            // (from, to], possibly crossing midnight.
+            for (int sec = from + 1; ; ++sec) {
+                sec %= SECONDS_OF_DAY;
+                this.sessions[sec] = (byte) i;
+                if (sec == to)
+                    break;
+            }
+        }
+        this.night = computeNight();
+    }
+
+    private boolean computeNight() {
+        int begin = TradingCalendar.NIGHT_BEGIN.toSecondOfDay(),
+                end = TradingCalendar.NIGHT_END.toSecondOfDay();
+        for (int sec = begin; sec != end; sec = (sec + 1) % SECONDS_OF_DAY)
+            if (this.sessions[sec] >= 0)
+                return true;
+        return false;
+    }
+
+    /*
+     Index of the table for the specified time. A time with fraction of second
+     is inside (from, to] iff its next whole second is, because the bounds are
+     whole seconds.
+     */
+    private static int index(LocalTime now) {
+        var sec = now.toSecondOfDay();
+        if (now.getNano() != 0)
+            sec = (sec + 1) % SECONDS_OF_DAY;
+        return sec;
     }
 
     /**
@@ -77,11 +122,30 @@ public class TradingHourKeeper {
      */
     @OutTeam
     public boolean contains(LocalTime now) {
-        for (var hour : this.tradingHours) {
-            if (hour.contains(now))
-                return true;
-        }
-        return false;
+        return this.sessions[index(now)] >= 0;
+    }
+
+    /**
+     * Check if any of the trading hours is in the night, between
+     * {@link TradingCalendar#NIGHT_BEGIN} and {@link TradingCalendar#NIGHT_END}.
+     *
+     * @return {@code true} if the product trades in the night
+     */
+    @OutTeam
+    public boolean hasNightSession() {
+        return this.night;
+    }
+
+    /**
+     * Get index of the trading hour that contains the specified local time, in the
+     * order the trading hours are configured.
+     *
+     * @param now local time now
+     * @return index of trading hour, or {@code -1} if not in trading hours
+     */
+    @OutTeam
+    public int getSession(LocalTime now) {
+        return this.sessions[index(now)];
     }
 
     /**
@@ -96,50 +160,60 @@ public class TradingHourKeeper {
      */
     @OutTeam
     public boolean contains(Duration du, LocalTime now) {
-        if (!this.durationSplits.containsKey(du))
+        var splits = this.durationSplits.get(du);
+        if (splits == null || now.getNano() != 0)
             return false;
-        return this.durationSplits.get(du).contains(now);
+        return splits.get(now.toSecondOfDay());
+    }
+
+    /**
+     * Get durations that have been sampled.
+     *
+     * @return set of sampled durations
+     */
+    @OutTeam
+    public Set<Duration> getSampledDurations() {
+        return new HashSet<>(this.durationSplits.keySet());
     }
 
     /**
      * Sample some time points in trading hours with interval of the specified
-     * {@link Duration}.
+     * {@link Duration}. The duration must be whole seconds.
      *
      * @param du duration between sampled time points
      */
     @OutTeam
     public void sample(Duration du) {
+        if (du.getNano() != 0 || du.isNegative() || du.isZero())
+            throw new IllegalArgumentException("duration must be whole seconds");
         if (this.durationSplits.containsKey(du))
             return;
-        else
-            this.durationSplits.put(du, new HashSet<>());
-
-        final Set<LocalTime> times = durationSplits.get(du);
-        synchronized (times) {
-            // Calculate splits.
-            final LocalTime[] next = {null}, to = {null};
-            final Duration[] nextDu = {du};
-            this.tradingHours.forEach(hour -> {
-                if (next[0] == null)
-                    next[0] = hour.from;
-                while (true) {
-                    next[0] = next[0].plus(nextDu[0]);
-                    if (hour.contains(next[0])) {
-                        times.add(next[0]);
-                        nextDu[0] = du;
-                    } else {
-                        nextDu[0] = OP.between(hour.to, next[0]);
-                        break;
-                    }
+        final BitSet times = new BitSet(SECONDS_OF_DAY);
+        // Calculate splits.
+        final LocalTime[] next = {null}, to = {null};
+        final Duration[] nextDu = {du};
+        this.tradingHours.forEach(hour -> {
+            if (next[0] == null)
+                next[0] = hour.from;
+            while (true) {
+                next[0] = next[0].plus(nextDu[0]);
+                if (hour.contains(next[0])) {
+                    times.set(next[0].toSecondOfDay());
+                    nextDu[0] = du;
+                } else {
+                    nextDu[0] = OP.between(hour.to, next[0]);
+                    break;
                 }
-                to[0] = hour.to;
-                next[0] = null;
-            });
-            // Finalize the calculation by adding the end of trading hour if next
-            // possible local time exceeds the last trading hour.
-            if (!nextDu[0].equals(du))
-                times.add(to[0]);
-        }
+            }
+            to[0] = hour.to;
+            next[0] = null;
+        });
+        // Finalize the calculation by adding the end of trading hour if next
+        // possible local time exceeds the last trading hour.
+        if (!nextDu[0].equals(du))
+            times.set(to[0].toSecondOfDay());
+        // Publish the complete table.
+        this.durationSplits.putIfAbsent(du, times);
     }
 
     /**
@@ -30,6 +30,7 @@ package com.nabiki.wukong.cfg;
 
 import com.nabiki.ctp4j.jni.struct.CThostFtdcInvestorPositionDetailField;
 import com.nabiki.ctp4j.jni.struct.CThostFtdcTradingAccountField;
+import com.nabiki.wukong.journal.SettlementSnapshot;
 import com.nabiki.wukong.tools.InTeam;
 import com.nabiki.wukong.tools.OP;
 import com.nabiki.wukong.user.core.User;
@@ -37,11 +38,15 @@ import com.nabiki.wukong.user.core.UserAccount;
 import com.nabiki.wukong.user.core.UserPosition;
 import com.nabiki.wukong.user.core.UserPositionDetail;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 
 public class UserLoader {
     /**
@@ -53,11 +58,42 @@ public class UserLoader {
      */
     @InTeam
     public static Collection<User> load(Config cfg) {
-        var r = new HashSet<User>();
-        for (var dir : getUserDirs(cfg)) {
-            var usr = loadUser(dir, cfg);
-            if (usr != null)
-                r.add(usr);
+        return load(cfg, 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Load user from directory containing the settlement results of the previous
+     * trading day, with the specified number of loading threads. Each user is
+     * read and constructed in its own task, so loading is bounded by disk rather
+     * than a single core parsing JSON.
+     *
+     * @param cfg {@link Config} configuration
+     * @param parallelism number of threads loading users
+     * @return collection of users
+     */
+    @InTeam
+    public static Collection<User> load(Config cfg, int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism less than 1");
+        final Set<User> r = ConcurrentHashMap.newKeySet();
+        var tasks = new LinkedList<Callable<Void>>();
+        for (var dir : getUserDirs(cfg))
+            tasks.add(() -> {
+                var usr = loadUser(dir, cfg);
+                if (usr != null)
+                    r.add(usr);
+                return null;
+            });
+        var pool = new ForkJoinPool(parallelism);
+        try {
+            for (var f : pool.invokeAll(tasks))
+                f.get();
+        } catch (InterruptedException | ExecutionException e) {
+            cfg.getLogger().severe(
+                    OP.formatLog("loading users interrupted", null,
+                            e.getMessage(), null));
+        } finally {
+            pool.shutdown();
         }
         return r;
     }
@@ -78,25 +114,54 @@ public class UserLoader {
             }
             return false;
         });
-        final var r = new HashSet<File>();
-        final var lastDir = Path.of(dir.path().toString(), latest[0]).toFile();
-        lastDir.listFiles(file -> {
-            if (file.isDirectory())
-                r.add(file);
-            return false;
-        });
+        final var r = new LinkedList<File>();
+        final var lastDir = Path.of(dir.path().toString(), latest[0]);
+        if (!lastDir.toFile().isDirectory())
+            return r;
+        // Stream directory entries without building the whole file array.
+        try (var stream = Files.newDirectoryStream(lastDir, Files::isDirectory)) {
+            for (var p : stream)
+                r.add(p.toFile());
+        } catch (IOException e) {
+            cfg.getLogger().warning(
+                    OP.formatLog("failed listing users", null,
+                            e.getMessage(), null));
+        }
         return r;
     }
 
     private static User loadUser(File dir, Config config) {
+        var snapshot = Path.of(dir.getAbsolutePath(), SettlementSnapshot.FILE_NAME);
+        if (snapshot.toFile().isFile())
+            return loadSnapshot(snapshot, config);
+        else
+            return loadLegacy(dir, config);
+    }
+
+    private static User loadSnapshot(Path file, Config config) {
+        try {
+            var s = SettlementSnapshot.read(file);
+            return toUser(s.getAccount(), s.getPositions());
+        } catch (IOException e) {
+            config.getLogger().warning(
+                    OP.formatLog("failed loading snapshot", null,
+                            e.getMessage(), null));
+            return null;
+        }
+    }
+
+    /*
+    Load user from the old layout that keeps account and each position detail in
+    its own JSON file.
+     */
+    private static User loadLegacy(File dir, Config config) {
         final CThostFtdcTradingAccountField[] account = {null};
         var pds = new LinkedList<CThostFtdcInvestorPositionDetailField>();
         dir.listFiles(file -> {
             var name = file.getName();
             if (name.compareTo("account.json") == 0) {
                 try {
-                    account[0] = OP.fromJson(
-                            OP.readText(file, StandardCharsets.UTF_8),
+                    account[0] = parse(file,
                             CThostFtdcTradingAccountField.class);
                 } catch (IOException e) {
                     config.getLogger().warning(
@@ -107,8 +172,7 @@ public class UserLoader {
             } else if (name.startsWith("position.")
                     && name.endsWith(".json")) {
                 try {
-                    pds.add(OP.fromJson(
-                            OP.readText(file, StandardCharsets.UTF_8),
+                    pds.add(parse(file,
                             CThostFtdcInvestorPositionDetailField.class));
                 } catch (IOException e) {
                     config.getLogger().warning(
@@ -126,6 +190,18 @@ public class UserLoader {
                             dir.getAbsolutePath(), null));
             return null;
         }
+        return toUser(account[0], pds);
+    }
+
+    private static <T> T parse(File file, Class<T> clz) throws IOException {
+        try (var r = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8))) {
+            return OP.fromJson(r, clz);
+        }
+    }
+
+    private static User toUser(CThostFtdcTradingAccountField account,
+                               Collection<CThostFtdcInvestorPositionDetailField> pds) {
         var m = new HashMap<String, List<UserPositionDetail>>();
         for (var d : pds) {
             if (!m.containsKey(d.InstrumentID))
@@ -134,7 +210,7 @@ public class UserLoader {
         }
         // Construct user.
         var user = new User();
-        var usrAccount = new UserAccount(account[0], user);
+        var usrAccount = new UserAccount(account, user);
         var usrPosition = new UserPosition(m, user);
         user.setAccount(usrAccount);
         user.setPosition(usrPosition);
@@ -31,6 +31,10 @@ package com.nabiki.wukong.ctp;
 import com.nabiki.ctp4j.jni.struct.CThostFtdcDepthMarketDataField;
 import com.nabiki.wukong.ctp4j.jni.struct.CThostFtdcCandleField;
 
+/**
+ * Receiver of market data. The same depth or candle object is passed to all
+ * receivers, so receivers must not modify it.
+ */
 public interface MarketDataReceiver {
     void depthReceived(CThostFtdcDepthMarketDataField depth);
 
@@ -36,36 +36,59 @@ import com.nabiki.wukong.active.ActiveRequest;
 import com.nabiki.wukong.cfg.Config;
 import com.nabiki.wukong.cfg.ConfigLoader;
 import com.nabiki.wukong.cfg.plain.LoginConfig;
+import com.nabiki.wukong.ctp.ReconnectSupervisor.Link;
 import com.nabiki.wukong.journal.MessageWriter;
+import com.nabiki.wukong.metric.Hop;
+import com.nabiki.wukong.metric.Latency;
+import com.nabiki.wukong.metric.Meter;
+import com.nabiki.wukong.metric.Metrics;
+import com.nabiki.wukong.metric.OrderTracer;
+import com.nabiki.wukong.metric.Stage;
 import com.nabiki.wukong.tools.InTeam;
 import com.nabiki.wukong.tools.OP;
 import com.nabiki.wukong.tools.OrderMapper;
 import com.nabiki.wukong.tools.OutTeam;
+import com.nabiki.wukong.tools.Workers;
 
-import java.time.DayOfWeek;
-import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
 
 /**
  * {@code AliveOrderManager} keeps the status of all alive orders, interacts with
  * JNI interfaces and invoke callback methods to process responses.
+ *
+ * <p>When the front reconnects in work time, the provider authenticates, logs
+ * in and confirms settlement again, then queries orders and trades to catch up
+ * the returns missed when disconnected. Pending requests are held until the
+ * resync completes and then sent at the normal flow control.
+ * </p>
  */
 public class OrderProvider extends CThostFtdcTraderSpi {
+    protected final long QUERY_RETRY_MILLIS = 1000;
     protected final OrderMapper mapper = new OrderMapper();
     protected final AtomicInteger orderRef = new AtomicInteger(0);
+    // Order ref -> time the order is sent, removed on its first return.
+    protected final Map<String, Long> sentNanos = new ConcurrentHashMap<>();
     protected final Config config;
     protected final LoginConfig loginCfg;
     protected final MessageWriter msgWriter;
     protected final CThostFtdcTraderApi traderApi;
-    protected final Thread orderDaemon = new Thread(new RequestDaemon());
-    protected final Timer qryTimer = new Timer();
+    protected final Thread orderDaemon
+            = Workers.newCriticalThread("order-daemon", new RequestDaemon());
+    protected final ScheduledFuture<?> qryTask;
     protected final List<String> instruments = new LinkedList<>();
     protected final BlockingQueue<PendingRequest> pendingReqs;
+    protected final ReconnectSupervisor link
+            = new ReconnectSupervisor("trader");
 
     protected boolean isConfirmed = false,
             isConnected = false,
@@ -81,8 +104,9 @@ public class OrderProvider extends CThostFtdcTraderSpi {
         this.loginCfg = this.config.getLoginConfigs().get("trader");
         this.msgWriter = new MessageWriter(this.config);
         this.pendingReqs = new LinkedBlockingQueue<>();
+        Metrics.gauge("order.pending", this.pendingReqs::size);
         // Start query timer task.
-        this.qryTimer.scheduleAtFixedRate(new QueryTask(), 0, 3000);
+        this.qryTask = Workers.scheduleIo(new QueryTask(), 0, 3000);
         // Start order daemon.
         this.orderDaemon.start();
     }
@@ -97,6 +121,16 @@ public class OrderProvider extends CThostFtdcTraderSpi {
         return this.mapper;
     }
 
+    /**
+     * Get link state of the trader session.
+     *
+     * @return {@link ReconnectSupervisor}
+     */
+    @InTeam
+    public ReconnectSupervisor getSupervisor() {
+        return this.link;
+    }
+
     protected void configTrader() {
         for (var fa : this.loginCfg.frontAddresses)
             this.traderApi.RegisterFront(fa);
@@ -123,15 +157,15 @@ public class OrderProvider extends CThostFtdcTraderSpi {
         this.isConfirmed = false;
         this.isConnected = false;
         this.workingState = WorkingState.STOPPED;
+        this.link.moveTo(Link.DISCONNECTED);
         // Cancel threads.
-        this.qryTimer.cancel();
+        this.qryTask.cancel(false);
         this.orderDaemon.interrupt();
         try {
             this.orderDaemon.join(5000);
         } catch (InterruptedException e) {
-            this.config.getLogger().warning(
-                    OP.formatLog("failed join order daemon",
-                            null, e.getMessage(), null));
+            this.config.getAsyncLog().warning(
+                    "failed join order daemon", null, e.getMessage());
         }
         // Release resources.
         this.traderApi.Release();
@@ -187,10 +221,14 @@ public class OrderProvider extends CThostFtdcTraderSpi {
                     TThostFtdcErrorMessage.FRONT_NOT_ACTIVE);
             return (-1);
         } else {
-            if (!this.pendingReqs.offer(new PendingRequest(detail, active)))
+            // Link the detail order before it is visible to the sender.
+            OrderTracer.queue(detail.OrderRef, detail.VolumeTotalOriginal,
+                    active.getOrderUUID());
+            if (!this.pendingReqs.offer(new PendingRequest(detail, active))) {
+                OrderTracer.drop(detail.OrderRef);
                 return (-2);
-            else
-                return 0;
+            }
+            return 0;
         }
     }
 
@@ -210,33 +248,11 @@ public class OrderProvider extends CThostFtdcTraderSpi {
         OnRspOrderAction(action, rsp, 0, true);
     }
 
-    /*
-    Beginning hour of continuous trading, at night, 21 pm.
-     */
-    protected static final int CONT_TRADE_BEG = 21;
-
     protected boolean isOver(String instrID) {
         var hour = this.config.getTradingHour(null, instrID);
         if (hour == null)
             throw new IllegalArgumentException("invalid instr for trading hour");
-        var depth = this.config.getDepthMarketData(instrID);
-        if (depth == null)
-            throw new IllegalStateException("depth market data not found");
-        var depthTradingDay = OP.parseDay(depth.TradingDay, null);
-        var day = LocalDate.now();
-        var time = LocalTime.now();
-        // Holiday.
-        if (depthTradingDay.isBefore(day))
-            return true;
-        if (CONT_TRADE_BEG <= time.getHour()) {
-            // The night before holiday.
-            return depthTradingDay.equals(day);
-        } else {
-            // Workday.
-            var dayOfWeek = day.getDayOfWeek();
-            return dayOfWeek != DayOfWeek.SATURDAY && dayOfWeek != DayOfWeek.SUNDAY
-                    && hour.isEndDay(LocalTime.now());
-        }
+        return this.config.getTradingCalendar().isOver(LocalDateTime.now(), hour);
     }
 
     /**
@@ -287,9 +303,8 @@ public class OrderProvider extends CThostFtdcTraderSpi {
         req.Password = this.loginCfg.password;
         var r = this.traderApi.ReqUserLogin(req, OP.getIncrementID());
         if (r != 0)
-            this.config.getLogger().severe(
-                    OP.formatLog("failed login request", null,
-                            null, r));
+            this.config.getAsyncLog().severe(
+                    "failed login request", null, null, r);
     }
 
     protected void doLogout() {
@@ -298,9 +313,8 @@ public class OrderProvider extends CThostFtdcTraderSpi {
         req.UserID = this.loginCfg.userID;
         var r = this.traderApi.ReqUserLogout(req, OP.getIncrementID());
         if (r != 0)
-            this.config.getLogger().warning(
-                    OP.formatLog("failed logout request", null,
-                            null, r));
+            this.config.getAsyncLog().warning(
+                    "failed logout request", null, null, r);
     }
 
     protected void doAuthentication() {
@@ -312,9 +326,8 @@ public class OrderProvider extends CThostFtdcTraderSpi {
         req.UserProductInfo = this.loginCfg.userProductInfo;
         var r = this.traderApi.ReqAuthenticate(req, OP.getIncrementID());
         if (r != 0)
-            this.config.getLogger().severe(
-                    OP.formatLog("failed authentication", null,
-                            null, OP.getIncrementID()));
+            this.config.getAsyncLog().severe(
+                    "failed authentication", null, null, r);
     }
 
     protected void doSettlement() {
@@ -325,12 +338,17 @@ public class OrderProvider extends CThostFtdcTraderSpi {
         req.CurrencyID = "CNY";
         var r = this.traderApi.ReqSettlementInfoConfirm(req, OP.getIncrementID());
         if (r != 0)
-            this.config.getLogger().severe(
-                    OP.formatLog("failed confirm settlement", null,
-                            null, OP.getIncrementID()));
+            this.config.getAsyncLog().severe(
+                    "failed confirm settlement", null, null, r);
     }
 
     protected void doRspLogin(CThostFtdcRspUserLoginField rsp) {
+        // Trade IDs restart on a new trading day.
+        if (this.rspLogin != null
+                && !Objects.equals(this.rspLogin.TradingDay, rsp.TradingDay)) {
+            this.mapper.clearTrades();
+            this.mapper.clearSessions();
+        }
         this.rspLogin = rsp;
         // Update order ref if max order ref goes after it.
         var maxOrderRef = Integer.parseInt(this.rspLogin.MaxOrderRef);
@@ -382,9 +400,8 @@ public class OrderProvider extends CThostFtdcTraderSpi {
     protected void doRtnOrder(CThostFtdcOrderField rtn) {
         var active = this.mapper.getActiveOrder(rtn.OrderRef);
         if (active == null) {
-            this.config.getLogger().warning(
-                    OP.formatLog("active order not found", rtn.OrderRef,
-                            null, null));
+            this.config.getAsyncLog().warning(
+                    "active order not found", rtn.OrderRef, null);
             return;
         }
         // Adjust user.
@@ -393,21 +410,21 @@ public class OrderProvider extends CThostFtdcTraderSpi {
         rtn.InvestorID = active.getOriginOrder().InvestorID;
         rtn.AccountID = active.getOriginOrder().AccountID;
 
+        if (rtn.OrderStatus == TThostFtdcOrderStatusType.CANCELED)
+            OrderTracer.cancel(rtn.OrderRef);
         try {
             active.updateRtnOrder(rtn);
         } catch (Throwable th) {
-            this.config.getLogger().severe(
-                    OP.formatLog("failed update rtn order", rtn.OrderRef,
-                            th.getMessage(), null));
+            this.config.getAsyncLog().severe(
+                    "failed update rtn order", rtn.OrderRef, th.getMessage());
         }
     }
 
     protected void doRtnTrade(CThostFtdcTradeField trade) {
         var active = this.mapper.getActiveOrder(trade.OrderRef);
         if (active == null) {
-            this.config.getLogger().warning(
-                    OP.formatLog("active order not found", trade.OrderRef,
-                            null, null));
+            this.config.getAsyncLog().warning(
+                    "active order not found", trade.OrderRef, null);
             return;
         }
         // Adjust user.
@@ -415,39 +432,140 @@ public class OrderProvider extends CThostFtdcTraderSpi {
         trade.UserID = active.getOriginOrder().UserID;
         trade.InvestorID = active.getOriginOrder().InvestorID;
 
+        OrderTracer.trade(trade.OrderRef, trade.Volume);
         try {
             active.updateTrade(trade);
         } catch (Throwable th) {
-            this.config.getLogger().severe(
-                    OP.formatLog("failed update rtn trade", trade.OrderRef,
-                            th.getMessage(), null));
+            this.config.getAsyncLog().severe(
+                    "failed update rtn trade", trade.OrderRef,
+                    th.getMessage());
         }
     }
 
     protected void doQueryInstr() {
         var req = new CThostFtdcQryInstrumentField();
-        var r = this.traderApi.ReqQryInstrument(req, OP.getIncrementID());
-        if (r != 0)
-            this.config.getLogger().warning(
-                    OP.formatLog("failed query instrument", null,
-                            null, r));
+        sendQuery(Link.READY, "failed query instrument",
+                () -> this.traderApi.ReqQryInstrument(req,
+                        OP.getIncrementID()));
+    }
+
+    /*
+     Query all orders and then all trades of the trading day, and apply those
+     missed when disconnected. The link is ready after the last trade response.
+     */
+    protected void doResync() {
+        this.link.moveTo(Link.SYNCING);
+        var req = new CThostFtdcQryOrderField();
+        req.BrokerID = this.loginCfg.brokerID;
+        req.InvestorID = this.loginCfg.userID;
+        sendQuery(Link.SYNCING, "failed query order",
+                () -> this.traderApi.ReqQryOrder(req, OP.getIncrementID()));
+    }
+
+    protected void doQueryTrade() {
+        var req = new CThostFtdcQryTradeField();
+        req.BrokerID = this.loginCfg.brokerID;
+        req.InvestorID = this.loginCfg.userID;
+        sendQuery(Link.SYNCING, "failed query trade",
+                () -> this.traderApi.ReqQryTrade(req, OP.getIncrementID()));
+    }
+
+    protected void doReady() {
+        if (!this.link.moveTo(Link.READY))
+            return;
+        this.isConfirmed = true;
+        this.config.getLogger().info(
+                OP.formatLog("trader ready", null, null,
+                        (int) this.link.getReconnectCount()));
+        // Query instruments.
+        doQueryInstr();
+    }
+
+    /*
+     Send query on IO executor. Query is rejected by flow control when another
+     query is in progress, so retry until it is sent as long as the link stays
+     in the specified stage.
+     */
+    protected void sendQuery(Link stage, String hint, IntSupplier query) {
+        Workers.io().execute(() -> {
+            while (this.link.getLink() == stage) {
+                var r = query.getAsInt();
+                if (r == 0)
+                    return;
+                this.config.getAsyncLog().warning(hint, null, null, r);
+                try {
+                    Thread.sleep(QUERY_RETRY_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+    }
+
+    /*
+     Register the return order and apply it if it brings new status or volume.
+     Returns replayed after reconnect may come after the queried ones, so a
+     return older than the registered one is dropped.
+     */
+    protected void applyRtnOrder(CThostFtdcOrderField rtn) {
+        var last = this.mapper.getRtnOrder(rtn.OrderRef);
+        if (last != null && (isDone(last)
+                || rtn.VolumeTraded < last.VolumeTraded))
+            return;
+        this.mapper.register(rtn);
+        if (last == null || last.OrderStatus != rtn.OrderStatus
+                || last.VolumeTraded != rtn.VolumeTraded)
+            doRtnOrder(rtn);
+    }
+
+    protected boolean isDone(CThostFtdcOrderField rtn) {
+        return rtn.OrderStatus == TThostFtdcOrderStatusType.ALL_TRADED
+                || rtn.OrderStatus == TThostFtdcOrderStatusType.CANCELED;
+    }
+
+    /*
+     Query returns orders of all sessions under the account. Only those match
+     the sent order, and the session it is sent in, are ours.
+     */
+    protected boolean isOwnOrder(CThostFtdcOrderField order) {
+        return isSent(order.OrderRef, order.InstrumentID, order.Direction)
+                && this.mapper.isSentIn(order.OrderRef, order.FrontID,
+                order.SessionID);
+    }
+
+    /*
+     Trade has no session, so it is ours only if its order is. Orders are
+     queried before trades, so our orders are known by now.
+     */
+    protected boolean isOwnTrade(CThostFtdcTradeField trade) {
+        if (!isSent(trade.OrderRef, trade.InstrumentID, trade.Direction))
+            return false;
+        var last = this.mapper.getRtnOrder(trade.OrderRef);
+        return last != null && last.OrderSysID != null
+                && last.OrderSysID.equals(trade.OrderSysID);
+    }
+
+    protected boolean isSent(String ref, String instrID, char direction) {
+        var detail = this.mapper.getDetailOrder(ref);
+        return detail != null && Objects.equals(detail.InstrumentID, instrID)
+                && detail.Direction == direction;
     }
 
     @Override
     public void OnFrontConnected() {
         this.isConnected = true;
-        if (this.workingState == WorkingState.STARTING
-                || this.workingState == WorkingState.STARTED)
-            doLogin();
+        this.link.moveTo(Link.CONNECTED);
+        if (ReconnectSupervisor.shouldResume(this.workingState))
+            doAuthentication();
     }
 
     @Override
     public void OnFrontDisconnected(int reason) {
-        this.config.getLogger().warning(
-                OP.formatLog("trader disconnected", null,
-                        null, reason));
+        this.config.getAsyncLog().warning(
+                "trader disconnected", null, null, reason);
         this.isConnected = false;
         this.isConfirmed = false;
+        this.link.moveTo(Link.DISCONNECTED);
     }
 
     @Override
@@ -455,9 +573,9 @@ public class OrderProvider extends CThostFtdcTraderSpi {
                                     CThostFtdcRspInfoField rspInfo) {
         this.msgWriter.writeErr(orderAction);
         this.msgWriter.writeErr(rspInfo);
-        this.config.getLogger().warning(
-                OP.formatLog("failed action", orderAction.OrderRef,
-                        rspInfo.ErrorMsg, rspInfo.ErrorID));
+        this.config.getAsyncLog().warning(
+                "failed action", orderAction.OrderRef, rspInfo.ErrorMsg,
+                rspInfo.ErrorID);
     }
 
     @Override
@@ -465,9 +583,10 @@ public class OrderProvider extends CThostFtdcTraderSpi {
                                     CThostFtdcRspInfoField rspInfo) {
         this.msgWriter.writeErr(inputOrder);
         this.msgWriter.writeErr(rspInfo);
-        this.config.getLogger().severe(
-                OP.formatLog("failed order insertion", inputOrder.OrderRef,
-                        rspInfo.ErrorMsg, rspInfo.ErrorID));
+        this.config.getAsyncLog().severe(
+                "failed order insertion", inputOrder.OrderRef,
+                rspInfo.ErrorMsg, rspInfo.ErrorID);
+        this.sentNanos.remove(inputOrder.OrderRef);
         // Failed order results in canceling the order.
         doRtnOrder(toCancelRtnOrder(inputOrder));
     }
@@ -476,12 +595,13 @@ public class OrderProvider extends CThostFtdcTraderSpi {
     public void OnRspAuthenticate(
             CThostFtdcRspAuthenticateField rspAuthenticateField,
             CThostFtdcRspInfoField rspInfo, int requestId, boolean isLast) {
-        if (rspInfo.ErrorID == 0)
+        if (rspInfo.ErrorID == 0) {
+            this.link.moveTo(Link.AUTHENTICATED);
             doLogin();
-        else {
-            this.config.getLogger().severe(
-                    OP.formatLog("failed authentication", null,
-                            rspInfo.ErrorMsg, rspInfo.ErrorID));
+        } else {
+            this.config.getAsyncLog().severe(
+                    "failed authentication", null, rspInfo.ErrorMsg,
+                    rspInfo.ErrorID);
             this.msgWriter.writeErr(rspInfo);
         }
     }
@@ -490,9 +610,8 @@ public class OrderProvider extends CThostFtdcTraderSpi {
     public void OnRspError(CThostFtdcRspInfoField rspInfo, int requestId,
                            boolean isLast) {
         this.msgWriter.writeErr(rspInfo);
-        this.config.getLogger().severe(
-                OP.formatLog("unknown error", null, rspInfo.ErrorMsg,
-                        rspInfo.ErrorID));
+        this.config.getAsyncLog().severe(
+                "unknown error", null, rspInfo.ErrorMsg, rspInfo.ErrorID);
     }
 
     @Override
@@ -501,9 +620,9 @@ public class OrderProvider extends CThostFtdcTraderSpi {
                                  boolean isLast) {
         this.msgWriter.writeErr(inputOrderAction);
         this.msgWriter.writeErr(rspInfo);
-        this.config.getLogger().warning(
-                OP.formatLog("failed action", inputOrderAction.OrderRef,
-                        rspInfo.ErrorMsg, rspInfo.ErrorID));
+        this.config.getAsyncLog().warning(
+                "failed action", inputOrderAction.OrderRef, rspInfo.ErrorMsg,
+                rspInfo.ErrorID);
     }
 
     @Override
@@ -512,9 +631,10 @@ public class OrderProvider extends CThostFtdcTraderSpi {
                                  boolean isLast) {
         this.msgWriter.writeErr(inputOrder);
         this.msgWriter.writeErr(rspInfo);
-        this.config.getLogger().severe(
-                OP.formatLog("failed order insertion", inputOrder.OrderRef,
-                        rspInfo.ErrorMsg, rspInfo.ErrorID));
+        this.config.getAsyncLog().severe(
+                "failed order insertion", inputOrder.OrderRef,
+                rspInfo.ErrorMsg, rspInfo.ErrorID);
+        this.sentNanos.remove(inputOrder.OrderRef);
         // Failed order results in canceling the order.
         doRtnOrder(toCancelRtnOrder(inputOrder));
     }
@@ -534,9 +654,9 @@ public class OrderProvider extends CThostFtdcTraderSpi {
                 this.qryInstrLast = isLast;
             }
         } else {
-            this.config.getLogger().severe(
-                    OP.formatLog("failed instrument query", null,
-                            rspInfo.ErrorMsg, rspInfo.ErrorID));
+            this.config.getAsyncLog().severe(
+                    "failed instrument query", null, rspInfo.ErrorMsg,
+                    rspInfo.ErrorID);
             this.msgWriter.writeErr(rspInfo);
         }
     }
@@ -549,9 +669,9 @@ public class OrderProvider extends CThostFtdcTraderSpi {
             this.msgWriter.writeRsp(instrumentCommissionRate);
             ConfigLoader.setInstrConfig(instrumentCommissionRate);
         } else {
-            this.config.getLogger().severe(
-                    OP.formatLog("failed commission query", null,
-                            rspInfo.ErrorMsg, rspInfo.ErrorID));
+            this.config.getAsyncLog().severe(
+                    "failed commission query", null, rspInfo.ErrorMsg,
+                    rspInfo.ErrorID);
             this.msgWriter.writeErr(rspInfo);
         }
     }
@@ -564,9 +684,9 @@ public class OrderProvider extends CThostFtdcTraderSpi {
             this.msgWriter.writeRsp(instrumentMarginRate);
             ConfigLoader.setInstrConfig(instrumentMarginRate);
         } else {
-            this.config.getLogger().severe(
-                    OP.formatLog("failed margin query", null,
-                            rspInfo.ErrorMsg, rspInfo.ErrorID));
+            this.config.getAsyncLog().severe(
+                    "failed margin query", null, rspInfo.ErrorMsg,
+                    rspInfo.ErrorID);
             this.msgWriter.writeErr(rspInfo);
         }
     }
@@ -579,14 +699,14 @@ public class OrderProvider extends CThostFtdcTraderSpi {
             this.config.getLogger().fine(
                     OP.formatLog("successful login", null,
                             rspInfo.ErrorMsg, rspInfo.ErrorID));
-            this.isConfirmed = true;
+            this.link.moveTo(Link.CONFIRMED);
             this.workingState = WorkingState.STARTED;
-            // Query instruments.
-            doQueryInstr();
+            // Catch up returns before sending requests.
+            doResync();
         } else {
-            this.config.getLogger().severe(
-                    OP.formatLog("failed settlement confirm", null,
-                            rspInfo.ErrorMsg, rspInfo.ErrorID));
+            this.config.getAsyncLog().severe(
+                    "failed settlement confirm", null, rspInfo.ErrorMsg,
+                    rspInfo.ErrorID);
             this.msgWriter.writeErr(rspInfo);
         }
     }
@@ -596,12 +716,12 @@ public class OrderProvider extends CThostFtdcTraderSpi {
                                CThostFtdcRspInfoField rspInfo, int requestId,
                                boolean isLast) {
         if (rspInfo.ErrorID == 0) {
+            this.link.moveTo(Link.LOGGED_IN);
             doSettlement();
             doRspLogin(rspUserLogin);
         } else {
-            this.config.getLogger().severe(
-                    OP.formatLog("failed login", null,
-                            rspInfo.ErrorMsg, rspInfo.ErrorID));
+            this.config.getAsyncLog().severe(
+                    "failed login", null, rspInfo.ErrorMsg, rspInfo.ErrorID);
             this.msgWriter.writeErr(rspInfo);
         }
     }
@@ -616,31 +736,73 @@ public class OrderProvider extends CThostFtdcTraderSpi {
                             rspInfo.ErrorMsg, rspInfo.ErrorID));
             this.isConfirmed = false;
             this.workingState = WorkingState.STOPPED;
+            this.link.moveTo(Link.CONNECTED);
         } else {
-            this.config.getLogger().warning(
-                    OP.formatLog("failed logout", null,
-                            rspInfo.ErrorMsg, rspInfo.ErrorID));
+            this.config.getAsyncLog().warning(
+                    "failed logout", null, rspInfo.ErrorMsg, rspInfo.ErrorID);
             this.msgWriter.writeErr(rspInfo);
         }
     }
 
     @Override
     public void OnRtnOrder(CThostFtdcOrderField order) {
+        var sent = this.sentNanos.remove(order.OrderRef);
+        if (sent != null)
+            Latency.since(Stage.ORDER_ACK, sent);
+        OrderTracer.stamp(order.OrderRef, Hop.ACKED);
         this.msgWriter.writeRtn(order);
-        this.mapper.register(order);
-        doRtnOrder(order);
+        applyRtnOrder(order);
     }
 
     @Override
     public void OnRtnTrade(CThostFtdcTradeField trade) {
+        // Trade replayed after reconnect is applied only once.
+        if (!this.mapper.register(trade))
+            return;
         this.msgWriter.writeRtn(trade);
         doRtnTrade(trade);
     }
 
+    @Override
+    public void OnRspQryOrder(CThostFtdcOrderField order,
+                              CThostFtdcRspInfoField rspInfo, int requestId,
+                              boolean isLast) {
+        if (rspInfo != null && rspInfo.ErrorID != 0) {
+            this.config.getAsyncLog().severe(
+                    "failed order query", null, rspInfo.ErrorMsg,
+                    rspInfo.ErrorID);
+            this.msgWriter.writeErr(rspInfo);
+        } else if (order != null && isOwnOrder(order)) {
+            this.msgWriter.writeRtn(order);
+            applyRtnOrder(order);
+        }
+        if (isLast && this.link.getLink() == Link.SYNCING)
+            doQueryTrade();
+    }
+
+    @Override
+    public void OnRspQryTrade(CThostFtdcTradeField trade,
+                              CThostFtdcRspInfoField rspInfo, int requestId,
+                              boolean isLast) {
+        if (rspInfo != null && rspInfo.ErrorID != 0) {
+            this.config.getAsyncLog().severe(
+                    "failed trade query", null, rspInfo.ErrorMsg,
+                    rspInfo.ErrorID);
+            this.msgWriter.writeErr(rspInfo);
+        } else if (trade != null && isOwnTrade(trade)
+                && this.mapper.register(trade)) {
+            this.msgWriter.writeRtn(trade);
+            doRtnTrade(trade);
+        }
+        if (isLast && this.link.getLink() == Link.SYNCING)
+            doReady();
+    }
+
     protected static class PendingRequest {
         final ActiveRequest active;
         final CThostFtdcInputOrderField order;
         final CThostFtdcInputOrderActionField action;
+        final long queuedNanos = System.nanoTime();
 
         PendingRequest(CThostFtdcInputOrderField order, ActiveRequest active) {
             this.order = order;
@@ -657,22 +819,47 @@ public class OrderProvider extends CThostFtdcTraderSpi {
 
     protected class RequestDaemon implements Runnable {
         protected final int MAX_REQ_PER_SEC = 5;
+        protected final Meter sent = Metrics.meter("order.sent");
+        protected final LongAdder throttled = Metrics.counter("order.throttled");
 
         @Override
         public void run() {
+            Metrics.gauge("order.throttle", () -> MAX_REQ_PER_SEC);
+            Metrics.watchAllocation("order");
             int sendCnt = 0;
             long threshold = TimeUnit.SECONDS.toMillis(1);
             long timeStamp = System.currentTimeMillis();
+            int parked = 0;
             while (!Thread.interrupted()) {
                 try {
                     PendingRequest pend = null;
                     while (pend == null)
                         pend = pendingReqs.poll(1, TimeUnit.DAYS);
                     // Await time out, or notified by new request.
-                    // Instrument not trading.
-                    if (!isTrading(getInstrID(pend)))
+                    // Hold requests until session is ready, so those queued
+                    // when disconnected are sent after resync.
+                    link.awaitReady();
+                    var instrID = getInstrID(pend);
+                    if (config.getTradingHour(null, instrID) == null) {
+                        config.getAsyncLog().warning(
+                                "trading hour config null", instrID, null);
+                        continue;
+                    }
+                    // Instrument not trading, keep it and try the others. Sleep
+                    // after all requests are tried.
+                    if (!isTrading(instrID)) {
+                        pendingReqs.offer(pend);
+                        if (++parked >= pendingReqs.size()) {
+                            parked = 0;
+                            Thread.sleep(threshold);
+                        }
                         continue;
+                    }
+                    parked = 0;
                     int r = 0;
+                    var sendNanos = System.nanoTime();
+                    Latency.get(Stage.ORDER_QUEUE).record(
+                            sendNanos - pend.queuedNanos);
                     // Send order or action.
                     // Fill and send order at first place so its fields are filled.
                     if (pend.action != null) {
@@ -680,16 +867,28 @@ public class OrderProvider extends CThostFtdcTraderSpi {
                         if (r == 0)
                             msgWriter.writeReq(pend.action);
                     } else if (pend.order != null) {
+                        var ref = pend.order.OrderRef;
+                        // Map the order and keep its session before sending,
+                        // because the return may come before the send returns.
+                        mapper.register(pend.order, pend.active);
+                        mapper.register(ref, rspLogin.FrontID,
+                                rspLogin.SessionID);
+                        sentNanos.put(ref, sendNanos);
                         r = fillAndSendOrder(pend.order);
                         if (r == 0) {
+                            OrderTracer.stamp(ref, Hop.SENT);
                             msgWriter.writeReq(pend.order);
-                            mapper.register(pend.order, pend.active);
+                        } else {
+                            sentNanos.remove(ref);
+                            mapper.unregister(pend.order);
                         }
                     }
                     // Check send ret code.
                     // If fail sending the request, add it back to queue and sleep
                     // for some time.
-                    if (r != 0) {
+                    if (r == 0)
+                        sent.mark();
+                    else {
                         warn(r, pend);
                         pendingReqs.offer(pend);
                         Thread.sleep(threshold);
@@ -700,6 +899,7 @@ public class OrderProvider extends CThostFtdcTraderSpi {
                     if (diffTimeStamp > 0) {
                         ++sendCnt;
                         if (sendCnt > MAX_REQ_PER_SEC) {
+                            throttled.increment();
                             Thread.sleep(diffTimeStamp);
                             timeStamp = System.currentTimeMillis();
                         }
@@ -712,10 +912,9 @@ public class OrderProvider extends CThostFtdcTraderSpi {
                             || workingState == WorkingState.STOPPED)
                         break;
                     else
-                        config.getLogger().warning(
-                                OP.formatLog("order daemon interrupted",
-                                        null, e.getMessage(),
-                                        null));
+                        config.getAsyncLog().warning(
+                                "order daemon interrupted", null,
+                                e.getMessage());
                 }
             }
         }
@@ -775,13 +974,7 @@ public class OrderProvider extends CThostFtdcTraderSpi {
 
         protected boolean isTrading(String instrID) {
             var hour = config.getTradingHour(null, instrID);
-            if (hour == null) {
-                config.getLogger().warning(
-                        OP.formatLog("trading hour config null", instrID,
-                                null, null));
-                return false;
-            }
-            return isConfirmed && hour.contains(LocalTime.now());
+            return hour != null && hour.contains(LocalTime.now());
         }
 
         protected String getInstrID(PendingRequest pend) {
@@ -800,17 +993,16 @@ public class OrderProvider extends CThostFtdcTraderSpi {
                 ref = pend.action.OrderRef;
                 hint = "failed sending action";
             }
-            config.getLogger().warning(
-                    OP.formatLog(hint, ref, null, r));
+            config.getAsyncLog().warning(hint, ref, null, r);
         }
     }
 
-    protected class QueryTask extends TimerTask {
+    protected class QueryTask implements Runnable {
         protected final Random rand = new Random();
 
         @Override
         public void run() {
-            if (!qryInstrLast || !isConfirmed)
+            if (!qryInstrLast || !link.isReady())
                 return;
             doQuery();
         }
@@ -826,16 +1018,14 @@ public class OrderProvider extends CThostFtdcTraderSpi {
             int r = traderApi.ReqQryInstrumentMarginRate(req,
                     OP.getIncrementID());
             if (r != 0)
-                config.getLogger().warning(
-                        OP.formatLog("failed query margin", null,
-                                ins, r));
+                config.getAsyncLog().warning(
+                        "failed query margin", null, ins, r);
             // Sleep for 1.5 seconds
             try {
                 Thread.sleep(1500);
             } catch (InterruptedException e) {
-                config.getLogger().warning(
-                        OP.formatLog("failed sleep", null,
-                                e.getMessage(), null));
+                config.getAsyncLog().warning(
+                        "failed sleep", null, e.getMessage());
             }
 
             var req0 = new CThostFtdcQryInstrumentCommissionRateField();
@@ -845,9 +1035,8 @@ public class OrderProvider extends CThostFtdcTraderSpi {
             r = traderApi.ReqQryInstrumentCommissionRate(req0,
                     OP.getIncrementID());
             if (r != 0)
-                config.getLogger().warning(
-                        OP.formatLog("failed query commission", null,
-                                ins, r));
+                config.getAsyncLog().warning(
+                        "failed query commission", null, ins, r);
         }
 
         protected String randomGet() {
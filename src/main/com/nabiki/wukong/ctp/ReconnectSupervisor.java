@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.ctp;
+
+import com.nabiki.wukong.metric.Metrics;
+import com.nabiki.wukong.tools.InTeam;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Link state of a provider's session with its front. The remote API reconnects
+ * by itself, and the provider moves the link through the stages of a session on
+ * its callbacks while its {@link WorkingState} is {@code STARTING} or
+ * {@code STARTED}.
+ *
+ * <p>A session is {@link Link#READY} only after all stages are done, including
+ * the resync of states missed when disconnected. Threads that need a ready
+ * session wait in {@link #awaitReady()} and resume once the link is back.
+ * </p>
+ */
+public class ReconnectSupervisor {
+    public enum Link {
+        DISCONNECTED, CONNECTED, AUTHENTICATED, LOGGED_IN, CONFIRMED, SYNCING,
+        READY
+    }
+
+    private final String name;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition ready = this.lock.newCondition();
+    private final LongAdder reconnects;
+    private volatile Link link = Link.DISCONNECTED;
+    private volatile long lostMillis = 0;
+    private boolean wasReady = false;
+    private long lostNanos = 0;
+
+    /**
+     * Create a supervisor that reports under the specified name, like
+     * {@code trader.link} and {@code trader.reconnect}.
+     *
+     * @param name metric name prefix
+     */
+    public ReconnectSupervisor(String name) {
+        this.name = name;
+        this.reconnects = Metrics.counter(name + ".reconnect");
+        Metrics.gauge(name + ".link", () -> this.link.ordinal());
+        Metrics.gauge(name + ".lost.millis", () -> this.lostMillis);
+    }
+
+    /**
+     * Check if a provider in the specified working state should rebuild its
+     * session after a reconnect.
+     *
+     * @param state working state of the provider
+     * @return {@code true} if the session should be rebuilt
+     */
+    public static boolean shouldResume(WorkingState state) {
+        return state == WorkingState.STARTING || state == WorkingState.STARTED;
+    }
+
+    /**
+     * Move the link to the specified stage. A link that is disconnected can
+     * only move to {@link Link#CONNECTED}, so late responses of a lost session
+     * don't bring it back.
+     *
+     * @param next next stage
+     * @return {@code true} if the link is moved, {@code false} otherwise
+     */
+    @InTeam
+    public boolean moveTo(Link next) {
+        this.lock.lock();
+        try {
+            if (next == Link.DISCONNECTED)
+                return disconnect();
+            if (this.link == Link.DISCONNECTED && next != Link.CONNECTED)
+                return false;
+            // Session ended by logout, not lost.
+            if (this.link == Link.READY && next != Link.READY)
+                this.wasReady = false;
+            this.link = next;
+            if (next == Link.READY) {
+                if (this.wasReady) {
+                    this.reconnects.increment();
+                    this.lostMillis = TimeUnit.NANOSECONDS.toMillis(
+                            System.nanoTime() - this.lostNanos);
+                }
+                this.wasReady = true;
+                this.ready.signalAll();
+            }
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private boolean disconnect() {
+        if (this.link == Link.DISCONNECTED)
+            return false;
+        if (this.link == Link.READY)
+            this.lostNanos = System.nanoTime();
+        this.link = Link.DISCONNECTED;
+        return true;
+    }
+
+    /**
+     * Wait until the link is ready.
+     *
+     * @throws InterruptedException if interrupted when waiting
+     */
+    @InTeam
+    public void awaitReady() throws InterruptedException {
+        this.lock.lock();
+        try {
+            while (this.link != Link.READY)
+                this.ready.await();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until the link is ready, or the specified time elapses.
+     *
+     * @param timeout time to wait
+     * @param unit unit of the time
+     * @return {@code true} if the link is ready, {@code false} if timeout
+     * @throws InterruptedException if interrupted when waiting
+     */
+    @InTeam
+    public boolean awaitReady(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        var nanos = unit.toNanos(timeout);
+        this.lock.lock();
+        try {
+            while (this.link != Link.READY) {
+                if (nanos <= 0)
+                    return false;
+                nanos = this.ready.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @InTeam
+    public boolean isReady() {
+        return this.link == Link.READY;
+    }
+
+    @InTeam
+    public Link getLink() {
+        return this.link;
+    }
+
+    @InTeam
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Get the number of times the link is ready again after losing a ready
+     * session.
+     *
+     * @return count of reconnects
+     */
+    @InTeam
+    public long getReconnectCount() {
+        return this.reconnects.sum();
+    }
+
+    /**
+     * Get how long the last lost session took to be ready again.
+     *
+     * @return milliseconds from losing the link to ready again
+     */
+    @InTeam
+    public long getLostMillis() {
+        return this.lostMillis;
+    }
+}
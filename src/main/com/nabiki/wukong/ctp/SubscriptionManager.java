@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.ctp;
+
+import com.nabiki.ctp4j.jni.struct.CThostFtdcRspInfoField;
+import com.nabiki.ctp4j.md.CThostFtdcMdApi;
+import com.nabiki.wukong.tools.InTeam;
+import com.nabiki.wukong.tools.Workers;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Market data subscription of a {@link TickProvider}. Instruments to subscribe
+ * are queued and sent in batches on the shared timer, so callers never block.
+ *
+ * <p>Each instrument is done when its {@code OnRspSubMarketData} arrives. An
+ * instrument that fails or isn't answered in {@link #TIMEOUT_MILLIS} is sent
+ * again after a backoff, up to {@link #MAX_RETRY} times. All subscribed
+ * instruments are sent again after each login, so subscription survives a
+ * disconnection.
+ * </p>
+ */
+public class SubscriptionManager {
+    public static final int BATCH_SIZE = 100, MAX_RETRY = 3;
+    public static final long INTERVAL_MILLIS = 100, TIMEOUT_MILLIS = 5000,
+            BACKOFF_MILLIS = 1000;
+
+    private enum State {
+        PENDING, SENT, SUBSCRIBED, FAILED
+    }
+
+    private static class Entry {
+        final String instrID;
+        State state = State.PENDING;
+        int retry = 0;
+        long notBefore = 0;
+        CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Entry(String instrID) {
+            this.instrID = instrID;
+        }
+    }
+
+    private final CThostFtdcMdApi mdApi;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Deque<Entry> pending = new LinkedList<>();
+    // Instrument ID -> time of sending, oldest first.
+    private final LinkedHashMap<String, Long> sent = new LinkedHashMap<>();
+    private final String[] batch = new String[BATCH_SIZE];
+    private final ScheduledFuture<?> pump;
+    private boolean login = false;
+
+    public SubscriptionManager(CThostFtdcMdApi mdApi) {
+        this.mdApi = mdApi;
+        this.pump = Workers.schedule(this::pump, INTERVAL_MILLIS,
+                INTERVAL_MILLIS);
+    }
+
+    /**
+     * Subscribe the specified instruments. The returned future completes when all
+     * instruments are subscribed, or completes exceptionally when any of them
+     * fails after retries.
+     *
+     * @param instruments instrument IDs
+     * @return future of the subscription
+     */
+    @InTeam
+    public synchronized CompletableFuture<Void> subscribe(
+            Collection<String> instruments) {
+        var futures = new LinkedList<CompletableFuture<Void>>();
+        for (var id : instruments) {
+            var e = this.entries.get(id);
+            if (e == null) {
+                e = new Entry(id);
+                this.entries.put(id, e);
+                this.pending.add(e);
+            } else if (e.state == State.FAILED) {
+                e.state = State.PENDING;
+                e.retry = 0;
+                e.notBefore = 0;
+                e.future = new CompletableFuture<>();
+                this.pending.add(e);
+            }
+            futures.add(e.future);
+        }
+        return CompletableFuture.allOf(
+                futures.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Get IDs of the subscribed instruments.
+     *
+     * @return set of instrument IDs
+     */
+    @InTeam
+    public synchronized Set<String> getSubscribed() {
+        var r = new HashSet<String>();
+        for (var e : this.entries.values())
+            if (e.state == State.SUBSCRIBED)
+                r.add(e.instrID);
+        return r;
+    }
+
+    /**
+     * Start sending subscription after login, and send again all instruments
+     * subscribed before.
+     */
+    @InTeam
+    public synchronized void onLogin() {
+        this.login = true;
+        for (var e : this.entries.values()) {
+            if (e.state == State.SENT || e.state == State.SUBSCRIBED) {
+                e.state = State.PENDING;
+                e.notBefore = 0;
+                this.pending.add(e);
+            }
+        }
+        this.sent.clear();
+    }
+
+    /**
+     * Stop sending subscription after logout or disconnection. Remote server
+     * forgets the subscription, so it is sent again on next login.
+     */
+    @InTeam
+    public synchronized void onLogout() {
+        this.login = false;
+    }
+
+    /**
+     * Update state of the instrument on its subscription response.
+     *
+     * @param instrID instrument ID
+     * @param rspInfo response info
+     */
+    @InTeam
+    public synchronized void onRsp(String instrID, CThostFtdcRspInfoField rspInfo) {
+        var e = this.entries.get(instrID);
+        if (e == null || e.state != State.SENT)
+            return;
+        this.sent.remove(instrID);
+        if (rspInfo == null || rspInfo.ErrorID == 0) {
+            e.state = State.SUBSCRIBED;
+            e.future.complete(null);
+        } else
+            retry(e, rspInfo.ErrorMsg, rspInfo.ErrorID);
+    }
+
+    private void retry(Entry e, String msg, int code) {
+        if (++e.retry > MAX_RETRY) {
+            e.state = State.FAILED;
+            e.future.completeExceptionally(new IllegalStateException(
+                    String.format("failed subscription %s, %s(%d)", e.instrID,
+                            msg, code)));
+        } else {
+            e.state = State.PENDING;
+            e.notBefore = System.currentTimeMillis() + e.retry * BACKOFF_MILLIS;
+            this.pending.add(e);
+        }
+    }
+
+    private synchronized void pump() {
+        if (!this.login)
+            return;
+        var now = System.currentTimeMillis();
+        // Instruments not answered in time.
+        var iter = this.sent.entrySet().iterator();
+        while (iter.hasNext()) {
+            var s = iter.next();
+            if (now - s.getValue() < TIMEOUT_MILLIS)
+                break;
+            iter.remove();
+            retry(this.entries.get(s.getKey()), "timeout", 0);
+        }
+        // Send a batch of instruments that are ready.
+        int count = 0, size = this.pending.size();
+        var later = new LinkedList<Entry>();
+        while (count < BATCH_SIZE && size-- > 0) {
+            var e = this.pending.poll();
+            if (e.state != State.PENDING)
+                continue;
+            if (e.notBefore > now)
+                later.add(e);
+            else
+                this.batch[count++] = e.instrID;
+        }
+        this.pending.addAll(later);
+        if (count == 0)
+            return;
+        var r = this.mdApi.SubscribeMarketData(this.batch, count);
+        for (int i = 0; i < count; ++i) {
+            var e = this.entries.get(this.batch[i]);
+            if (r == 0) {
+                e.state = State.SENT;
+                this.sent.put(e.instrID, now);
+            } else
+                // Send them first on next pump.
+                this.pending.addFirst(e);
+            this.batch[i] = null;
+        }
+    }
+
+    /**
+     * Stop sending subscription.
+     */
+    @InTeam
+    public void stop() {
+        this.pump.cancel(false);
+    }
+}
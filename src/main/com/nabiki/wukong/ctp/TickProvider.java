@@ -36,21 +36,31 @@ import com.nabiki.wukong.cfg.plain.LoginConfig;
 import com.nabiki.wukong.journal.MessageWriter;
 import com.nabiki.wukong.md.CandleEngine;
 import com.nabiki.wukong.md.MarketDataRouter;
+import com.nabiki.wukong.metric.Latency;
+import com.nabiki.wukong.metric.Meter;
+import com.nabiki.wukong.metric.Metrics;
+import com.nabiki.wukong.metric.Stage;
 import com.nabiki.wukong.tools.InTeam;
 import com.nabiki.wukong.tools.OP;
 
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class TickProvider extends CThostFtdcMdSpi {
     private final Config config;
     private final LoginConfig loginCfg;
     private final CThostFtdcMdApi mdApi;
     private final MessageWriter flowWrt;
+    private final SubscriptionManager subscriptions;
+    private final ReconnectSupervisor link = new ReconnectSupervisor("md");
     private final Set<MarketDataRouter> routers = new HashSet<>();
     private final Set<CandleEngine> engines = new HashSet<>();
+    // Instrument ID -> meter of ticks.
+    private final Map<String, Meter> ticks = new ConcurrentHashMap<>();
 
     private boolean isConnected = false,
             isLogin = false;
@@ -61,6 +71,7 @@ public class TickProvider extends CThostFtdcMdSpi {
         this.mdApi = mdApi;
         this.loginCfg = this.config.getLoginConfigs().get("md");
         this.flowWrt = new MessageWriter(this.config);
+        this.subscriptions = new SubscriptionManager(this.mdApi);
     }
 
     @InTeam
@@ -77,31 +88,35 @@ public class TickProvider extends CThostFtdcMdSpi {
         }
     }
 
+    /**
+     * Subscribe the specified instruments. The method returns at once and the
+     * instruments are sent in batches. They are subscribed again after each
+     * login.
+     *
+     * @param instr instrument IDs
+     * @return future that completes when all instruments are subscribed, or
+     * completes exceptionally if any of them fails
+     */
     @InTeam
-    public void subscribe(List<String> instr) {
+    public CompletableFuture<Void> subscribe(List<String> instr) {
         if (instr == null || instr.size() == 0)
-            return;
-        var ins = new String[50];
-        int count = -1;
-        var iter = instr.iterator();
-        while (true) {
-            while (iter.hasNext() && ++count < 50)
-                ins[count] = iter.next();
-            // Subscribe batch.
-            subscribeBatch(ins, count);
-            count = -1;
-            if (!iter.hasNext())
-                break;
-            else {
-                try {
-                    Thread.sleep(TimeUnit.SECONDS.toMillis(1));
-                } catch (InterruptedException e) {
-                    this.config.getLogger().warning(
-                            OP.formatLog("failed sleep", null,
-                                    e.getMessage(), null));
-                }
-            }
-        }
+            return CompletableFuture.completedFuture(null);
+        return this.subscriptions.subscribe(instr);
+    }
+
+    @InTeam
+    public SubscriptionManager getSubscriptions() {
+        return this.subscriptions;
+    }
+
+    /**
+     * Get link state of the market data session.
+     *
+     * @return {@link ReconnectSupervisor}
+     */
+    @InTeam
+    public ReconnectSupervisor getSupervisor() {
+        return this.link;
     }
 
     @InTeam
@@ -118,7 +133,9 @@ public class TickProvider extends CThostFtdcMdSpi {
         this.isLogin = false;
         this.isConnected = false;
         this.workingState = WorkingState.STOPPED;
+        this.link.moveTo(ReconnectSupervisor.Link.DISCONNECTED);
         setWorking(false);
+        this.subscriptions.stop();
         // Release resources.
         this.mdApi.Release();
     }
@@ -144,10 +161,6 @@ public class TickProvider extends CThostFtdcMdSpi {
         return this.workingState;
     }
 
-    private void subscribeBatch(String[] instr, int count) {
-        this.mdApi.SubscribeMarketData(instr, count);
-    }
-
     private void doLogin() {
         var req = new CThostFtdcReqUserLoginField();
         req.BrokerID = this.loginCfg.brokerID;
@@ -155,9 +168,8 @@ public class TickProvider extends CThostFtdcMdSpi {
         req.Password = this.loginCfg.password;
         var r = this.mdApi.ReqUserLogin(req, OP.getIncrementID());
         if (r != 0)
-            this.config.getLogger().severe(
-                    OP.formatLog("failed login request", null,
-                            null, r));
+            this.config.getAsyncLog().severe(
+                    "failed login request", null, null, r);
     }
 
     private void doLogout() {
@@ -166,9 +178,8 @@ public class TickProvider extends CThostFtdcMdSpi {
         req.UserID = this.loginCfg.userID;
         var r = this.mdApi.ReqUserLogout(req, OP.getIncrementID());
         if (r != 0)
-            this.config.getLogger().warning(
-                    OP.formatLog("failed logout request", null,
-                            null, r));
+            this.config.getAsyncLog().warning(
+                    "failed logout request", null, null, r);
     }
 
     private void setWorking(boolean working) {
@@ -181,18 +192,19 @@ public class TickProvider extends CThostFtdcMdSpi {
     @Override
     public void OnFrontConnected() {
         this.isConnected = true;
-        if (this.workingState == WorkingState.STARTING
-                || this.workingState == WorkingState.STARTED)
+        this.link.moveTo(ReconnectSupervisor.Link.CONNECTED);
+        if (ReconnectSupervisor.shouldResume(this.workingState))
             doLogin();
     }
 
     @Override
     public void OnFrontDisconnected(int reason) {
-        this.config.getLogger().warning(
-                OP.formatLog("md disconnected", null, null,
-                        reason));
+        this.config.getAsyncLog().warning(
+                "md disconnected", null, null, reason);
         this.isLogin = false;
         this.isConnected = false;
+        this.link.moveTo(ReconnectSupervisor.Link.DISCONNECTED);
+        this.subscriptions.onLogout();
         // If disconnected when or after provider stops, candle engine isn't working.
         // But if disconnected in work time, it is still working.
         if (this.workingState == WorkingState.STOPPING
@@ -204,9 +216,8 @@ public class TickProvider extends CThostFtdcMdSpi {
     public void OnRspError(CThostFtdcRspInfoField rspInfo, int requestId,
                            boolean isLast) {
         this.flowWrt.writeErr(rspInfo);
-        this.config.getLogger().severe(
-                OP.formatLog("unknown error", null, rspInfo.ErrorMsg,
-                        rspInfo.ErrorID));
+        this.config.getAsyncLog().severe(
+                "unknown error", null, rspInfo.ErrorMsg, rspInfo.ErrorID);
     }
 
     @Override
@@ -217,10 +228,12 @@ public class TickProvider extends CThostFtdcMdSpi {
             this.isLogin = true;
             this.workingState = WorkingState.STARTED;
             setWorking(true);
+            // Instruments subscribed before are sent again on login.
+            this.subscriptions.onLogin();
+            this.link.moveTo(ReconnectSupervisor.Link.READY);
         } else {
-            this.config.getLogger().severe(
-                    OP.formatLog("failed login", null, rspInfo.ErrorMsg,
-                            rspInfo.ErrorID));
+            this.config.getAsyncLog().severe(
+                    "failed login", null, rspInfo.ErrorMsg, rspInfo.ErrorID);
             this.flowWrt.writeErr(rspInfo);
         }
     }
@@ -233,10 +246,11 @@ public class TickProvider extends CThostFtdcMdSpi {
             this.isLogin = false;
             this.workingState = WorkingState.STOPPED;
             setWorking(false);
+            this.subscriptions.onLogout();
+            this.link.moveTo(ReconnectSupervisor.Link.CONNECTED);
         } else {
-            this.config.getLogger().warning(
-                    OP.formatLog("failed logout", null,
-                            rspInfo.ErrorMsg, rspInfo.ErrorID));
+            this.config.getAsyncLog().warning(
+                    "failed logout", null, rspInfo.ErrorMsg, rspInfo.ErrorID);
             this.flowWrt.writeErr(rspInfo);
         }
     }
@@ -245,10 +259,11 @@ public class TickProvider extends CThostFtdcMdSpi {
     public void OnRspSubMarketData(
             CThostFtdcSpecificInstrumentField specificInstrument,
             CThostFtdcRspInfoField rspInfo, int requestId, boolean isLast) {
+        this.subscriptions.onRsp(specificInstrument.InstrumentID, rspInfo);
         if (rspInfo.ErrorID != 0) {
-            this.config.getLogger().warning(OP.formatLog(
+            this.config.getAsyncLog().warning(
                     "failed subscription", specificInstrument.InstrumentID,
-                    rspInfo.ErrorMsg, rspInfo.ErrorID));
+                    rspInfo.ErrorMsg, rspInfo.ErrorID);
             this.flowWrt.writeErr(rspInfo);
         }
     }
@@ -258,15 +273,18 @@ public class TickProvider extends CThostFtdcMdSpi {
             CThostFtdcSpecificInstrumentField specificInstrument,
             CThostFtdcRspInfoField rspInfo, int nRequestID, boolean isLast) {
         if (rspInfo.ErrorID != 0) {
-            this.config.getLogger().warning(OP.formatLog(
+            this.config.getAsyncLog().warning(
                     "failed un-subscription", specificInstrument.InstrumentID,
-                    rspInfo.ErrorMsg, rspInfo.ErrorID));
+                    rspInfo.ErrorMsg, rspInfo.ErrorID);
             this.flowWrt.writeErr(rspInfo);
         }
     }
 
     @Override
     public void OnRtnDepthMarketData(CThostFtdcDepthMarketDataField depthMarketData) {
+        var start = System.nanoTime();
+        this.ticks.computeIfAbsent(depthMarketData.InstrumentID,
+                k -> Metrics.meter("md.tick." + k)).mark();
         synchronized (this.routers) {
             for (var r : this.routers)
                 r.route(depthMarketData);
@@ -275,5 +293,6 @@ public class TickProvider extends CThostFtdcMdSpi {
             for (var e : this.engines)
                 e.update(depthMarketData);
         }
+        Latency.since(Stage.TICK_CALLBACK, start);
     }
 }
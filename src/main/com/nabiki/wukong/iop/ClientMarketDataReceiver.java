@@ -31,57 +31,82 @@ package com.nabiki.wukong.iop;
 import com.nabiki.ctp4j.jni.struct.CThostFtdcDepthMarketDataField;
 import com.nabiki.wukong.ctp.MarketDataReceiver;
 import com.nabiki.wukong.ctp4j.jni.struct.CThostFtdcCandleField;
-import com.nabiki.wukong.iop.frame.Body;
 import com.nabiki.wukong.iop.frame.MessageType;
-import com.nabiki.wukong.tools.OP;
+import com.nabiki.wukong.md.MarketDataRouter;
+import com.nabiki.wukong.tools.InstrumentRegistry;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.BitSet;
 
 public class ClientMarketDataReceiver implements MarketDataReceiver {
 
     private final IOPSession session;
-    private final Set<String> subscribed = new HashSet<>();
+    private final MarketDataRouter router;
+    private final OutboundQueue outbound;
+    // Bit of instrument handle is set if the instrument is subscribed.
+    private final BitSet subscribed = new BitSet();
 
-    public ClientMarketDataReceiver(IOPSession session) {
+    public ClientMarketDataReceiver(IOPSession session, MarketDataRouter router) {
+        this(session, router, new OutboundQueue(session));
+    }
+
+    public ClientMarketDataReceiver(IOPSession session, MarketDataRouter router,
+                                    OutboundQueue outbound) {
         this.session = session;
+        this.router = router;
+        this.outbound = outbound;
     }
 
-    public void subscribe(String instrID) {
-        this.subscribed.add(instrID);
+    /**
+     * Get outbound queue of the session, for its metrics.
+     *
+     * @return outbound queue
+     */
+    public OutboundQueue getOutbound() {
+        return this.outbound;
     }
 
-    public void unSubscribe(String instrID) {
-        this.subscribed.remove(instrID);
+    public void subscribe(String instrID) {
+        synchronized (this.subscribed) {
+            this.subscribed.set(InstrumentRegistry.getHandle(instrID));
+        }
+        this.router.subscribe(instrID, this);
     }
 
-    private boolean isSubscribed(String instrID) {
+    public void unSubscribe(String instrID) {
+        var handle = InstrumentRegistry.findHandle(instrID);
+        if (handle < 0)
+            return;
         synchronized (this.subscribed) {
-            return this.subscribed.contains(instrID);
+            this.subscribed.clear(handle);
         }
+        this.router.unSubscribe(instrID, this);
     }
 
-    private void send(Object obj, MessageType type) {
-        var body = new Body();
-        body.Type = type;
-        body.Json = OP.toJson(obj);
-        try {
-            this.session.sendResponse(body);
-        } catch (Throwable th) {
-            if (!this.session.isClosed())
-                this.session.fix();
+    /**
+     * Unsubscribe all instruments, usually called when the session is closed.
+     */
+    public void unSubscribeAll() {
+        BitSet copy;
+        synchronized (this.subscribed) {
+            copy = (BitSet) this.subscribed.clone();
+            this.subscribed.clear();
         }
+        for (int h = copy.nextSetBit(0); h >= 0; h = copy.nextSetBit(h + 1))
+            this.router.unSubscribe(InstrumentRegistry.getInstrID(h), this);
     }
 
     @Override
     public void depthReceived(CThostFtdcDepthMarketDataField depth) {
-        if (!this.session.isClosed() && isSubscribed(depth.InstrumentID))
-            send(depth, MessageType.FLOW_DEPTH);
+        if (!this.session.isClosed())
+            this.outbound.offerDepth(
+                    InstrumentRegistry.findHandle(depth.InstrumentID),
+                    FlowEncoder.encode(depth, MessageType.FLOW_DEPTH));
     }
 
     @Override
     public void candleReceived(CThostFtdcCandleField candle) {
-        if (!this.session.isClosed() && isSubscribed(candle.InstrumentID))
-            send(candle, MessageType.FLOW_CANDLE);
+        if (!this.session.isClosed())
+            this.outbound.offer(
+                    FlowEncoder.encode(candle, MessageType.FLOW_CANDLE));
     }
 }
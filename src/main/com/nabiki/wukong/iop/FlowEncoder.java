@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.iop;
+
+import com.nabiki.wukong.iop.frame.Body;
+import com.nabiki.wukong.iop.frame.MessageType;
+import com.nabiki.wukong.md.MarketDataRouter;
+import com.nabiki.wukong.tools.OP;
+
+/**
+ * Encode flow messages into compact JSON bodies. The router hands the same
+ * object to all receivers on its thread, so the encoder remembers the last
+ * event it encoded on each thread and returns the same body for it. An event
+ * is then encoded once no matter how many sessions subscribe it.
+ *
+ * <p>An event is told by the object and the event sequence of
+ * {@link MarketDataRouter}, because a dispatcher such as
+ * {@link com.nabiki.wukong.md.SharedMemoryReader} reuses one object for all
+ * records.
+ * </p>
+ *
+ * <p>The returned body is shared and must not be modified.
+ * </p>
+ */
+class FlowEncoder {
+    private static final ThreadLocal<FlowEncoder> local
+            = ThreadLocal.withInitial(FlowEncoder::new);
+
+    private Object last;
+    private long lastSeq;
+    private Body lastBody;
+
+    private FlowEncoder() {
+    }
+
+    /**
+     * Get body of the specified object.
+     *
+     * @param obj object to encode
+     * @param type message type
+     * @return shared body
+     */
+    static Body encode(Object obj, MessageType type) {
+        var e = local.get();
+        var seq = MarketDataRouter.getEventSeq();
+        if (e.last != obj || e.lastSeq != seq || e.lastBody.Type != type) {
+            var body = new Body();
+            body.Type = type;
+            body.Json = OP.toCompactJson(obj);
+            e.lastBody = body;
+            e.last = obj;
+            e.lastSeq = seq;
+        }
+        return e.lastBody;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.iop;
+
+import com.nabiki.wukong.iop.frame.Body;
+import com.nabiki.wukong.tools.Workers;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded outbound queue of a session. Messages are queued by the producer and
+ * sent to the session on a shared executor, so a slow session only delays its
+ * own messages. A drain sends at most {@link #DRAIN_BATCH} messages and then
+ * yields the executor thread to other sessions, scheduling itself again if more
+ * messages are queued.
+ *
+ * <p>A depth message replaces the queued and unsent depth of the same
+ * instrument, if any, so a lagging client always gets the latest price. What
+ * happens when the queue is full is decided by {@link Policy}.
+ * </p>
+ */
+public class OutboundQueue {
+    public enum Policy {
+        /**
+         * Conflate depths of the same instrument, and drop new messages when the
+         * queue is full.
+         */
+        CONFLATE,
+        /**
+         * Don't conflate, drop new messages when the queue is full.
+         */
+        DROP,
+        /**
+         * Conflate depths of the same instrument, and close the session when the
+         * queue is full.
+         */
+        DISCONNECT
+    }
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    // Max messages sent by one drain before yielding to other sessions.
+    static final int DRAIN_BATCH = 64;
+
+    private static final ExecutorService sharedExecutor
+            = Workers.newIoExecutor("iop-outbound",
+                    Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    private final IOPSession session;
+    private final Executor executor;
+    private final int capacity;
+    private final Policy policy;
+
+    private final Queue<Entry> queue = new LinkedList<>();
+    // Instrument handle -> queued depth not sent yet.
+    private final Map<Integer, Entry> pendingDepths = new HashMap<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    private final AtomicLong enqueued = new AtomicLong(0),
+            sent = new AtomicLong(0), conflated = new AtomicLong(0),
+            dropped = new AtomicLong(0), failed = new AtomicLong(0),
+            highWater = new AtomicLong(0);
+
+    public OutboundQueue(IOPSession session) {
+        this(session, sharedExecutor, DEFAULT_CAPACITY, Policy.CONFLATE);
+    }
+
+    public OutboundQueue(IOPSession session, Executor executor, int capacity,
+                         Policy policy) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive");
+        this.session = session;
+        this.executor = executor;
+        this.capacity = capacity;
+        this.policy = policy;
+    }
+
+    /**
+     * Queue a depth message of the specified instrument.
+     *
+     * @param handle instrument handle
+     * @param body message body
+     */
+    public void offerDepth(int handle, Body body) {
+        offer(handle, body);
+    }
+
+    /**
+     * Queue a message that is never conflated.
+     *
+     * @param body message body
+     */
+    public void offer(Body body) {
+        offer(-1, body);
+    }
+
+    private void offer(int handle, Body body) {
+        boolean overflow = false;
+        synchronized (this.queue) {
+            var conflate = handle >= 0 && this.policy != Policy.DROP;
+            var pending = conflate ? this.pendingDepths.get(handle) : null;
+            if (pending != null) {
+                pending.body = body;
+                this.conflated.incrementAndGet();
+            } else if (this.queue.size() >= this.capacity) {
+                overflow = true;
+            } else {
+                var e = new Entry(handle, body);
+                this.queue.add(e);
+                if (conflate)
+                    this.pendingDepths.put(handle, e);
+                this.enqueued.incrementAndGet();
+                if (this.queue.size() > this.highWater.get())
+                    this.highWater.set(this.queue.size());
+            }
+        }
+        if (overflow) {
+            this.dropped.incrementAndGet();
+            if (this.policy == Policy.DISCONNECT && !this.session.isClosed())
+                this.session.close();
+            return;
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        if (this.scheduled.compareAndSet(false, true))
+            this.executor.execute(this::drain);
+    }
+
+    private Entry poll() {
+        synchronized (this.queue) {
+            var e = this.queue.poll();
+            if (e != null && e.handle >= 0
+                    && this.pendingDepths.get(e.handle) == e)
+                this.pendingDepths.remove(e.handle);
+            return e;
+        }
+    }
+
+    private void drain() {
+        try {
+            Entry e;
+            int count = 0;
+            while (count++ < DRAIN_BATCH && (e = poll()) != null) {
+                if (this.session.isClosed()) {
+                    // The polled message is discarded with the queued ones.
+                    this.dropped.incrementAndGet();
+                    clear();
+                    break;
+                }
+                try {
+                    this.session.sendResponse(e.body);
+                    this.sent.incrementAndGet();
+                } catch (Throwable th) {
+                    this.failed.incrementAndGet();
+                    if (!this.session.isClosed())
+                        this.session.fix();
+                }
+            }
+        } finally {
+            this.scheduled.set(false);
+        }
+        // Messages left by the batch limit, or offered after the last poll but
+        // before the reset.
+        if (size() > 0 && !this.session.isClosed())
+            schedule();
+    }
+
+    /**
+     * Discard all queued messages.
+     */
+    public void clear() {
+        synchronized (this.queue) {
+            this.dropped.addAndGet(this.queue.size());
+            this.queue.clear();
+            this.pendingDepths.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (this.queue) {
+            return this.queue.size();
+        }
+    }
+
+    public long getEnqueuedCount() {
+        return this.enqueued.get();
+    }
+
+    public long getSentCount() {
+        return this.sent.get();
+    }
+
+    public long getConflatedCount() {
+        return this.conflated.get();
+    }
+
+    public long getDroppedCount() {
+        return this.dropped.get();
+    }
+
+    public long getFailedCount() {
+        return this.failed.get();
+    }
+
+    public long getHighWaterMark() {
+        return this.highWater.get();
+    }
+
+    private static class Entry {
+        final int handle;
+        Body body;
+
+        Entry(int handle, Body body) {
+            this.handle = handle;
+            this.body = body;
+        }
+    }
+}
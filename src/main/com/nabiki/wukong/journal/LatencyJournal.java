@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.journal;
+
+import com.nabiki.wukong.cfg.Config;
+import com.nabiki.wukong.metric.Latency;
+import com.nabiki.wukong.tools.CachedClock;
+import com.nabiki.wukong.tools.OP;
+import com.nabiki.wukong.tools.Workers;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically write the latency summaries of all stages into the performance
+ * flow, one line per stage, and reset the histograms for the next period.
+ */
+public class LatencyJournal implements Runnable {
+    private final static long MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final Config config;
+    private final ScheduledFuture<?> task;
+
+    public LatencyJournal(Config cfg) {
+        this.config = cfg;
+        this.task = Workers.scheduleIo(this,
+                MILLIS - System.currentTimeMillis() % MILLIS, MILLIS);
+    }
+
+    private Path getPath() {
+        var dirs = this.config.getRootDirectory().recursiveGet("dir.flow.perf");
+        if (dirs.size() > 0)
+            return dirs.iterator().next().path();
+        else
+            return Path.of("");
+    }
+
+    @Override
+    public void run() {
+        var clock = CachedClock.now();
+        var sb = new StringBuilder();
+        for (var s : Latency.snapshotAndReset()) {
+            if (s.count == 0)
+                continue;
+            sb.append(clock.stamp).append(" ").append(OP.toCompactJson(s))
+                    .append(System.lineSeparator());
+        }
+        if (sb.length() == 0)
+            return;
+        var root = getPath();
+        try {
+            if (!Files.exists(root))
+                Files.createDirectories(root);
+            var file = Path.of(root.toAbsolutePath().toString(),
+                    "perf." + clock.dayStr + ".log").toFile();
+            OP.writeText(sb.toString(), file, StandardCharsets.UTF_8, true);
+        } catch (IOException e) {
+            this.config.getLogger().warning(
+                    OP.formatLog("failed writing latency", root.toString(),
+                            e.getMessage(), null));
+        }
+    }
+
+    /**
+     * Stop writing latency summaries.
+     */
+    public void stop() {
+        this.task.cancel(false);
+    }
+}
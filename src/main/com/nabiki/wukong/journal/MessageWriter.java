@@ -30,6 +30,7 @@ package com.nabiki.wukong.journal;
 
 import com.nabiki.ctp4j.jni.struct.*;
 import com.nabiki.wukong.cfg.Config;
+import com.nabiki.wukong.tools.CachedClock;
 import com.nabiki.wukong.tools.OP;
 
 import java.io.File;
@@ -37,14 +38,12 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.Instant;
+import java.util.Collection;
 
 public class MessageWriter {
     private final Config config;
     private final Path reqDir, rtnDir, rspDir, errDir, stlDir;
-    private final DateTimeFormatter formatter
-            = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss_SSSSSS");
     private final MessageWriterDB db;
 
     public MessageWriter(Config cfg) {
@@ -90,7 +89,11 @@ public class MessageWriter {
     }
 
     private String getTimeStamp() {
-        return LocalDateTime.now().format(this.formatter);
+        // yyyyMMdd_HHmmss_SSSSSS, date and time part is cached per second.
+        var now = Instant.now();
+        var micro = String.valueOf(1000000 + now.getNano() / 1000);
+        return CachedClock.at(now.getEpochSecond()).stamp + "_"
+                + micro.substring(1);
     }
 
     public void writeRtn(CThostFtdcOrderField rtn) {
@@ -161,41 +164,27 @@ public class MessageWriter {
                         "info." + getTimeStamp() + ".json"));
     }
 
-    public void writeSettle(CThostFtdcTradingAccountField cash) {
+    /**
+     * Write settled account and position details of a user into one snapshot file
+     * under the directory of the user and current trading day.
+     *
+     * @param cash settled account
+     * @param positions settled position details of the same user
+     */
+    public void writeSettle(CThostFtdcTradingAccountField cash,
+                            Collection<CThostFtdcInvestorPositionDetailField> positions) {
         var dir = Path.of(this.stlDir.toString(), this.config.getTradingDay(),
                 cash.AccountID);
         try {
             if (!dir.toFile().exists() || !dir.toFile().isDirectory())
                 Files.createDirectories(dir);
-            var file = Path.of(dir.toString(), "account.json").toFile();
-            if (!file.exists() || !file.isFile())
-                file.createNewFile();
-            OP.writeText(OP.toJson(cash), file, StandardCharsets.UTF_8,
-                    false);
+            SettlementSnapshot.write(
+                    Path.of(dir.toString(), SettlementSnapshot.FILE_NAME),
+                    cash, positions);
         } catch (IOException e) {
             this.config.getLogger().severe(OP.formatLog(
                     "failed settlement", cash.AccountID,
                     e.getMessage(), null));
         }
     }
-
-    public void writeSettle(CThostFtdcInvestorPositionDetailField position) {
-        var dir = Path.of(this.stlDir.toString(), this.config.getTradingDay(),
-                position.InvestorID);
-        try {
-            if (!dir.toFile().exists() || !dir.toFile().isDirectory())
-                Files.createDirectories(dir);
-            var fn = "position." + position.InstrumentID + "." + System.nanoTime()
-                    + ".json";
-            var file = Path.of(dir.toString(), fn).toFile();
-            if (!file.exists() || !file.isFile())
-                file.createNewFile();
-            OP.writeText(OP.toJson(position), file, StandardCharsets.UTF_8,
-                    false);
-        } catch (IOException e) {
-            this.config.getLogger().severe(OP.formatLog(
-                    "failed settlement", position.InstrumentID,
-                    e.getMessage(), null));
-        }
-    }
 }
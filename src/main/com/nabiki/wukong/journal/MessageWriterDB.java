@@ -31,12 +31,15 @@ package com.nabiki.wukong.journal;
 import com.nabiki.ctp4j.jni.struct.CThostFtdcOrderField;
 import com.nabiki.ctp4j.jni.struct.CThostFtdcTradeField;
 import com.nabiki.wukong.cfg.Config;
+import com.nabiki.wukong.metric.Metrics;
 import com.nabiki.wukong.tools.OP;
+import com.nabiki.wukong.tools.Workers;
 
 import java.sql.*;
 import java.util.HashSet;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -45,14 +48,18 @@ public class MessageWriterDB {
     private final Config config;
     private final Queue<CThostFtdcOrderField> orders;
     private final Queue<CThostFtdcTradeField> trades;
-    private final Thread daemon = new Thread(new WriteDB());
+    private final Thread daemon;
     private final ReentrantLock lck = new ReentrantLock();
     private final Condition cond = lck.newCondition();
+    // Orders and trades waiting to be written in all writers.
+    private static final LongAdder backlog = Metrics.counter("db.backlog");
 
     MessageWriterDB(Config cfg) {
         this.config = cfg;
         this.orders = new ConcurrentLinkedQueue<>();
         this.trades = new ConcurrentLinkedQueue<>();
+        // Create after config is set, the writer logs with it.
+        this.daemon = Workers.newIoThread("db-writer", new WriteDB());
         this.daemon.start();
     }
 
@@ -60,6 +67,7 @@ public class MessageWriterDB {
         this.lck.lock();
         try {
             this.orders.add(order);
+            backlog.increment();
             this.cond.signal();
         } finally {
             this.lck.unlock();
@@ -70,6 +78,7 @@ public class MessageWriterDB {
         this.lck.lock();
         try {
             this.trades.add(trade);
+            backlog.increment();
             this.cond.signal();
         } finally {
             this.lck.unlock();
@@ -93,6 +102,7 @@ public class MessageWriterDB {
 
         @Override
         public void run() {
+            Metrics.watchAllocation("db");
             while (!Thread.interrupted()) {
                 lck.lock();
                 try {
@@ -100,10 +110,16 @@ public class MessageWriterDB {
                         cond.await();
                     // Check connection valid.
                     checkConnection();
-                    while (orders.size() > 0)
-                            execSQL(orders.poll());
-                    while (trades.size() > 0)
-                        execSQL(trades.poll());
+                    while (orders.size() > 0) {
+                        var order = orders.poll();
+                        backlog.decrement();
+                        execSQL(order);
+                    }
+                    while (trades.size() > 0) {
+                        var trade = trades.poll();
+                        backlog.decrement();
+                        execSQL(trade);
+                    }
                 } catch (InterruptedException e) {
                     config.getLogger().warning(
                             OP.formatLog("condition await interrupted",
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.journal;
+
+import com.nabiki.ctp4j.jni.struct.CThostFtdcInvestorPositionDetailField;
+import com.nabiki.ctp4j.jni.struct.CThostFtdcTradingAccountField;
+import com.nabiki.wukong.tools.InTeam;
+import com.nabiki.wukong.tools.OP;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * Settlement result of one user on one trading day, kept in a single
+ * line-delimited file.
+ *
+ * <p>The file starts with a header line, then one line for the account and one
+ * line for each position detail, each line is a compact JSON string with a type
+ * prefix. The last line keeps the CRC32 checksum and count of the lines before it,
+ * so a truncated or corrupted file is detected when it is read.
+ * </p>
+ * <pre>
+ * #wukong-settlement 1
+ * A {...}
+ * P {...}
+ * #crc32 1a2b3c4d 3
+ * </pre>
+ */
+public class SettlementSnapshot {
+    /**
+     * Name of the snapshot file under user's settlement directory.
+     */
+    public static final String FILE_NAME = "settlement.jsonl";
+
+    private static final String HEADER = "#wukong-settlement 1";
+    private static final String CRC_PREFIX = "#crc32 ";
+    private static final String ACCOUNT_PREFIX = "A ";
+    private static final String POSITION_PREFIX = "P ";
+
+    private final CThostFtdcTradingAccountField account;
+    private final List<CThostFtdcInvestorPositionDetailField> positions;
+
+    SettlementSnapshot(CThostFtdcTradingAccountField account,
+                       List<CThostFtdcInvestorPositionDetailField> positions) {
+        this.account = account;
+        this.positions = Collections.unmodifiableList(positions);
+    }
+
+    /**
+     * Get settled account.
+     *
+     * @return settled account
+     */
+    @InTeam
+    public CThostFtdcTradingAccountField getAccount() {
+        return this.account;
+    }
+
+    /**
+     * Get settled position details. The returned list is unmodifiable.
+     *
+     * @return list of position details
+     */
+    @InTeam
+    public List<CThostFtdcInvestorPositionDetailField> getPositions() {
+        return this.positions;
+    }
+
+    /**
+     * Write the specified account and position details to the specified file. The
+     * content is first written to a temporary file in the same directory, then
+     * moved to the specified path, so readers never see a partly written file.
+     *
+     * @param file path of the snapshot file
+     * @param account settled account
+     * @param positions settled position details
+     * @throws IOException fail writing or moving file
+     */
+    @InTeam
+    public static void write(Path file, CThostFtdcTradingAccountField account,
+                             Collection<CThostFtdcInvestorPositionDetailField> positions)
+            throws IOException {
+        Objects.requireNonNull(file, "file null");
+        Objects.requireNonNull(account, "account null");
+        Objects.requireNonNull(positions, "positions null");
+        var tmp = Path.of(file.toAbsolutePath().toString() + ".tmp");
+        var crc = new CRC32();
+        int count = 0;
+        try (var w = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(tmp.toFile(), false),
+                StandardCharsets.UTF_8))) {
+            writeLine(w, crc, HEADER);
+            writeLine(w, crc, ACCOUNT_PREFIX + OP.toCompactJson(account));
+            count += 2;
+            for (var p : positions) {
+                writeLine(w, crc, POSITION_PREFIX + OP.toCompactJson(p));
+                ++count;
+            }
+            w.write(CRC_PREFIX + Long.toHexString(crc.getValue()) + " " + count);
+            w.write('\n');
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read snapshot from the specified file. The file is parsed line by line and
+     * its checksum is verified.
+     *
+     * @param file path of the snapshot file
+     * @return snapshot read from file
+     * @throws IOException fail reading file, or the file is corrupted
+     */
+    @InTeam
+    public static SettlementSnapshot read(Path file) throws IOException {
+        Objects.requireNonNull(file, "file null");
+        try (var r = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file.toFile()), StandardCharsets.UTF_8))) {
+            return read(r, file.toString());
+        }
+    }
+
+    static SettlementSnapshot read(BufferedReader reader, String name)
+            throws IOException {
+        var crc = new CRC32();
+        CThostFtdcTradingAccountField account = null;
+        var positions = new LinkedList<CThostFtdcInvestorPositionDetailField>();
+        int count = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith(CRC_PREFIX)) {
+                verify(line, crc.getValue(), count, name);
+                if (account == null)
+                    throw new IOException("account missing: " + name);
+                return new SettlementSnapshot(account, positions);
+            }
+            update(crc, line);
+            ++count;
+            if (line.startsWith(ACCOUNT_PREFIX))
+                account = OP.fromJson(line.substring(ACCOUNT_PREFIX.length()),
+                        CThostFtdcTradingAccountField.class);
+            else if (line.startsWith(POSITION_PREFIX))
+                positions.add(OP.fromJson(
+                        line.substring(POSITION_PREFIX.length()),
+                        CThostFtdcInvestorPositionDetailField.class));
+            else if (count == 1 && line.compareTo(HEADER) != 0)
+                throw new IOException("unsupported snapshot: " + name);
+        }
+        throw new IOException("checksum missing: " + name);
+    }
+
+    private static void verify(String line, long crc, int count, String name)
+            throws IOException {
+        var s = line.substring(CRC_PREFIX.length()).split(" ");
+        try {
+            if (s.length != 2 || Long.parseLong(s[0], 16) != crc
+                    || Integer.parseInt(s[1]) != count)
+                throw new IOException("checksum mismatch: " + name);
+        } catch (NumberFormatException e) {
+            throw new IOException("broken checksum: " + name, e);
+        }
+    }
+
+    private static void writeLine(Writer w, CRC32 crc, String line)
+            throws IOException {
+        w.write(line);
+        w.write('\n');
+        update(crc, line);
+    }
+
+    private static void update(CRC32 crc, String line) {
+        crc.update(line.getBytes(StandardCharsets.UTF_8));
+        crc.update('\n');
+    }
+}
@@ -32,21 +32,25 @@ import com.nabiki.ctp4j.jni.struct.CThostFtdcDepthMarketDataField;
 import com.nabiki.wukong.cfg.Config;
 import com.nabiki.wukong.ctp4j.jni.struct.CThostFtdcCandleField;
 import com.nabiki.wukong.tools.InTeam;
-import com.nabiki.wukong.tools.OP;
+import com.nabiki.wukong.tools.InstrumentRegistry;
+import com.nabiki.wukong.tools.Workers;
 
 import java.time.Duration;
 import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-public class CandleEngine extends TimerTask {
+public class CandleEngine implements Runnable {
     private final static long MILLIS = TimeUnit.MINUTES.toMillis(1);
 
     private final Config config;
-    private final Timer timer = new Timer();
     private final Map<String, Product> products = new ConcurrentHashMap<>();
+    // Instrument handle -> candle, so ticks skip the product lookup.
+    private volatile SingleCandle[] candles = new SingleCandle[256];
     private final Set<MarketDataRouter> routers = new HashSet<>();
     private final Duration[] durations = new Duration[] {
             Duration.ofMinutes(1), Duration.ofMinutes(5), Duration.ofMinutes(15),
@@ -55,6 +59,7 @@ public class CandleEngine extends TimerTask {
     };
 
     private final AtomicBoolean working = new AtomicBoolean(false);
+    private ScheduledFuture<?> task;
 
     public CandleEngine(Config cfg) {
         this.config = cfg;
@@ -62,8 +67,8 @@ public class CandleEngine extends TimerTask {
     }
 
     private void prepare() {
-        this.timer.scheduleAtFixedRate(this,
-                MILLIS - System.currentTimeMillis() % MILLIS, MILLIS);
+        this.task = Workers.schedule(this, MILLIS - System.currentTimeMillis() % MILLIS,
+                MILLIS);
         // Set hour keepers.
         var m = this.config.getAllTradingHour();
         for (var keeper : m.values())
@@ -71,6 +76,14 @@ public class CandleEngine extends TimerTask {
                 keeper.sample(du);
     }
 
+    /**
+     * Stop making candles.
+     */
+    @InTeam
+    public void stop() {
+        this.task.cancel(false);
+    }
+
     @InTeam
     public void setWorking(boolean working) {
         this.working.set(working);
@@ -85,7 +98,23 @@ public class CandleEngine extends TimerTask {
     public void registerInstr(String instrID) {
         if (instrID == null || instrID.length() == 0)
             throw new IllegalArgumentException("illegal instr ID");
-        ensureProduct(OP.getProductID(instrID)).registerInstr(instrID);
+        ensureCandle(InstrumentRegistry.getHandle(instrID));
+    }
+
+    private SingleCandle ensureCandle(int handle) {
+        var a = this.candles;
+        if (handle < a.length && a[handle] != null)
+            return a[handle];
+        synchronized (this.products) {
+            a = this.candles;
+            if (handle >= a.length)
+                a = Arrays.copyOf(a, Math.max(handle + 1, a.length << 1));
+            if (a[handle] == null)
+                a[handle] = ensureProduct(InstrumentRegistry.getProductID(handle))
+                        .registerInstr(InstrumentRegistry.getInstrID(handle));
+            this.candles = a;
+            return a[handle];
+        }
     }
 
     private Product ensureProduct(String product) {
@@ -113,7 +142,8 @@ public class CandleEngine extends TimerTask {
 
     @InTeam
     public void update(CThostFtdcDepthMarketDataField md) {
-        ensureProduct(OP.getProductID(md.InstrumentID)).update(md);
+        var handle = InstrumentRegistry.getHandle(md.InstrumentID);
+        ensureCandle(handle).update(handle, md);
     }
 
     @Override
@@ -122,14 +152,16 @@ public class CandleEngine extends TimerTask {
         if (!this.working.get())
             return;
         // Working now.
-        var now = LocalTime.now();
+        // Timer may fire a little early or late, round to the nearest minute so
+        // the boundary isn't missed.
+        var now = LocalTime.now().plusSeconds(30)
+                .truncatedTo(ChronoUnit.MINUTES);
         var hours = this.config.getAllTradingHour();
         for (var e : this.products.entrySet()) {
             var h = hours.get(e.getKey());
             if (h == null) {
-                this.config.getLogger().warning(
-                        OP.formatLog("trading hour config null", e.getKey(),
-                                null, null));
+                this.config.getAsyncLog().warning(
+                        "trading hour config null", e.getKey(), null);
                 continue;
             }
             for (var du : this.durations) {
@@ -146,9 +178,19 @@ public class CandleEngine extends TimerTask {
         Product() {
         }
 
-        public void registerInstr(String instrID) {
-            if (!this.candles.containsKey(instrID))
-                this.candles.put(instrID, new SingleCandle(instrID));
+        public SingleCandle registerInstr(String instrID) {
+            synchronized (this.candles) {
+                if (!this.candles.containsKey(instrID))
+                    this.candles.put(instrID, newCandle(instrID));
+                return this.candles.get(instrID);
+            }
+        }
+
+        private SingleCandle newCandle(String instrID) {
+            var c = new SingleCandle(instrID);
+            for (var du : durations)
+                c.register(du);
+            return c;
         }
 
         public void registerDuration(Duration du) {
@@ -181,14 +223,5 @@ public class CandleEngine extends TimerTask {
             }
             return r;
         }
-
-        public void update(CThostFtdcDepthMarketDataField md) {
-            synchronized (this.candles) {
-                if (!this.candles.containsKey(md.InstrumentID))
-                    this.candles.put(md.InstrumentID,
-                            new SingleCandle(md.InstrumentID));
-                this.candles.get(md.InstrumentID).update(md);
-            }
-        }
     }
 }
@@ -30,11 +30,9 @@ package com.nabiki.wukong.md;
 
 import com.nabiki.ctp4j.jni.struct.CThostFtdcDepthMarketDataField;
 import com.nabiki.wukong.ctp4j.jni.struct.CThostFtdcCandleField;
+import com.nabiki.wukong.tools.CachedClock;
 import com.nabiki.wukong.tools.OP;
 
-import java.time.LocalDate;
-import java.time.LocalTime;
-
 public class CandleProgress {
     private final CThostFtdcCandleField candle = new CThostFtdcCandleField();
 
@@ -51,7 +49,7 @@ public class CandleProgress {
             if (this.popped) {
                 this.candle.InstrumentID = md.InstrumentID;
                 this.candle.ActionDay
-                        = OP.getDay(LocalDate.now(), "yyyyMMdd");
+                        = CachedClock.getDay();
                 this.candle.TradingDay = md.TradingDay;
                 this.candle.OpenPrice
                         = this.candle.HighestPrice
@@ -79,10 +77,9 @@ public class CandleProgress {
             if (this.popped) {
                 // Not updated since last pop.
                 this.candle.TradingDay = tradingDay;
-                this.candle.ActionDay
-                        = OP.getDay(LocalDate.now(), "yyyyMMdd");
-                this.candle.UpdateTime
-                        = OP.getTime(LocalTime.now(), "HH:mm:ss");
+                var now = CachedClock.now();
+                this.candle.ActionDay = now.dayStr;
+                this.candle.UpdateTime = now.timeStr;
                 this.candle.OpenPrice
                         = this.candle.ClosePrice
                         = this.candle.HighestPrice
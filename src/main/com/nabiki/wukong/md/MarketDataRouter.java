@@ -31,23 +31,63 @@ package com.nabiki.wukong.md;
 import com.nabiki.ctp4j.jni.struct.CThostFtdcDepthMarketDataField;
 import com.nabiki.wukong.ctp.MarketDataReceiver;
 import com.nabiki.wukong.ctp4j.jni.struct.CThostFtdcCandleField;
+import com.nabiki.wukong.metric.Latency;
+import com.nabiki.wukong.metric.Metrics;
+import com.nabiki.wukong.metric.Stage;
+import com.nabiki.wukong.tools.InstrumentRegistry;
 import com.nabiki.wukong.tools.OP;
 
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
 public class MarketDataRouter implements Runnable {
+    // Depths queued in all routers.
+    private static final LongAdder queuedDepths
+            = Metrics.counter("md.router.queue");
+    // Sequence of events dispatched on each thread.
+    private static final ThreadLocal<long[]> eventSeq
+            = ThreadLocal.withInitial(() -> new long[1]);
+
     private final Set<MarketDataReceiver> receivers = new HashSet<>();
-    private final Queue<CThostFtdcDepthMarketDataField> depths = new LinkedList<>();
+    // Instrument handle -> receivers subscribing the instrument. Both levels are
+    // copied on write, so routing reads them without lock.
+    private volatile MarketDataReceiver[][] index = new MarketDataReceiver[256][];
+    private final Queue<QueuedDepth> depths = new LinkedList<>();
     private final Queue<CThostFtdcCandleField> candles = new LinkedList<>();
 
     private final ReentrantLock lock = new ReentrantLock();
     private final Condition cond = lock.newCondition();
 
+    private static class QueuedDepth {
+        final CThostFtdcDepthMarketDataField depth;
+        final long nanos = System.nanoTime();
+
+        QueuedDepth(CThostFtdcDepthMarketDataField depth) {
+            this.depth = depth;
+        }
+    }
+
     public MarketDataRouter() {}
 
+    /**
+     * Get sequence of the event being dispatched on the calling thread. A
+     * dispatcher may pass a reused object for different events, so receivers
+     * caching data of an event check the sequence instead of the object.
+     *
+     * @return sequence of the current event
+     */
+    public static long getEventSeq() {
+        return eventSeq.get()[0];
+    }
+
+    // Called by dispatcher before passing a new event to receivers.
+    static void nextEvent() {
+        ++eventSeq.get()[0];
+    }
+
     public void addReceiver(MarketDataReceiver recv) {
         if (recv == null)
             throw new NullPointerException("receiver null");
@@ -64,6 +104,79 @@ public class MarketDataRouter implements Runnable {
         }
     }
 
+    /**
+     * Subscribe the specified instrument for the receiver. The receiver only gets
+     * data of its subscribed instruments. Receivers added by
+     * {@link #addReceiver(MarketDataReceiver)} get data of all instruments and
+     * needn't subscribe.
+     *
+     * @param instrID instrument ID
+     * @param recv receiver
+     */
+    public void subscribe(String instrID, MarketDataReceiver recv) {
+        if (recv == null)
+            throw new NullPointerException("receiver null");
+        var handle = InstrumentRegistry.getHandle(instrID);
+        synchronized (this.receivers) {
+            var idx = this.index;
+            if (handle >= idx.length)
+                idx = Arrays.copyOf(idx, Math.max(handle + 1, idx.length << 1));
+            else
+                idx = idx.clone();
+            var old = idx[handle];
+            if (old == null)
+                idx[handle] = new MarketDataReceiver[] {recv};
+            else {
+                for (var r : old)
+                    if (r == recv)
+                        return;
+                var n = Arrays.copyOf(old, old.length + 1);
+                n[old.length] = recv;
+                idx[handle] = n;
+            }
+            this.index = idx;
+        }
+    }
+
+    /**
+     * Unsubscribe the specified instrument for the receiver.
+     *
+     * @param instrID instrument ID
+     * @param recv receiver
+     */
+    public void unSubscribe(String instrID, MarketDataReceiver recv) {
+        if (recv == null)
+            throw new NullPointerException("receiver null");
+        var handle = InstrumentRegistry.findHandle(instrID);
+        if (handle < 0)
+            return;
+        synchronized (this.receivers) {
+            var idx = this.index;
+            if (handle >= idx.length || idx[handle] == null)
+                return;
+            var old = idx[handle];
+            var n = new MarketDataReceiver[old.length];
+            int cnt = 0;
+            for (var r : old)
+                if (r != recv)
+                    n[cnt++] = r;
+            if (cnt == old.length)
+                return;
+            idx = idx.clone();
+            idx[handle] = cnt == 0 ? null : Arrays.copyOf(n, cnt);
+            this.index = idx;
+        }
+    }
+
+    private MarketDataReceiver[] subscribers(String instrID) {
+        var handle = InstrumentRegistry.findHandle(instrID);
+        var idx = this.index;
+        if (handle < 0 || handle >= idx.length)
+            return null;
+        else
+            return idx[handle];
+    }
+
     public void route(CThostFtdcDepthMarketDataField depth) {
         offerDepth(depth);
         trySignal();
@@ -91,8 +204,9 @@ public class MarketDataRouter implements Runnable {
 
     private void offerDepth(CThostFtdcDepthMarketDataField depth) {
         synchronized (this.depths) {
-            this.depths.add(depth);
+            this.depths.add(new QueuedDepth(depth));
         }
+        queuedDepths.increment();
     }
 
     private void offerCandle(CThostFtdcCandleField candle) {
@@ -109,10 +223,14 @@ public class MarketDataRouter implements Runnable {
         }
     }
 
-    private CThostFtdcDepthMarketDataField pollDepth() {
+    private QueuedDepth pollDepth() {
+        QueuedDepth r;
         synchronized (this.depths) {
-            return this.depths.poll();
+            r = this.depths.poll();
         }
+        if (r != null)
+            queuedDepths.decrement();
+        return r;
     }
 
     private CThostFtdcCandleField pollCandle() {
@@ -134,25 +252,44 @@ public class MarketDataRouter implements Runnable {
 
     @Override
     public void run() {
+        Metrics.watchAllocation("md.router");
         while (!Thread.interrupted()) {
             this.lock.lock();
             try {
                 while (!hasData())
                     this.cond.await(1, TimeUnit.SECONDS);
                 CThostFtdcCandleField candle = null;
-                CThostFtdcDepthMarketDataField md = null;
+                QueuedDepth queued = null;
                 // Depth.
-                while ((md = pollDepth()) != null)
+                // Copy once per message, all receivers share the copy.
+                while ((queued = pollDepth()) != null) {
+                    var start = System.nanoTime();
+                    Latency.get(Stage.ROUTER_QUEUE).record(start - queued.nanos);
+                    var md = OP.deepCopy(queued.depth);
+                    nextEvent();
                     synchronized (this.receivers) {
                         for ( var recv : this.receivers)
-                            recv.depthReceived(OP.deepCopy(md));
+                            recv.depthReceived(md);
                     }
+                    var subs = subscribers(md.InstrumentID);
+                    if (subs != null)
+                        for (var recv : subs)
+                            recv.depthReceived(md);
+                    Latency.since(Stage.ROUTER_DISPATCH, start);
+                }
                 // Candle.
-                while ((candle = pollCandle()) != null)
+                while ((candle = pollCandle()) != null) {
+                    candle = OP.deepCopy(candle);
+                    nextEvent();
                     synchronized (this.receivers) {
                         for (var recv : this.receivers)
-                            recv.candleReceived(OP.deepCopy(candle));
+                            recv.candleReceived(candle);
                     }
+                    var subs = subscribers(candle.InstrumentID);
+                    if (subs != null)
+                        for (var recv : subs)
+                            recv.candleReceived(candle);
+                }
             } catch (InterruptedException ignored) {
             } finally {
                 this.lock.unlock();
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.md;
+
+import com.nabiki.ctp4j.jni.struct.CThostFtdcDepthMarketDataField;
+import com.nabiki.wukong.cfg.Config;
+import com.nabiki.wukong.ctp.MarketDataReceiver;
+import com.nabiki.wukong.ctp4j.jni.struct.CThostFtdcCandleField;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.nabiki.wukong.md.SharedMemoryLayout.*;
+
+/**
+ * Publish market data into a memory-mapped ring file, so processes on the same
+ * host can read ticks with {@link SharedMemoryReader} instead of IOP sessions.
+ *
+ * <p>There is only one writer of a file. Readers never block the writer, a
+ * reader that falls behind a whole ring loses the overwritten records.
+ * </p>
+ *
+ * <p>A restarted writer reuses the file in place because readers may still map
+ * it, and starts a new epoch so readers follow it from its first record.
+ * </p>
+ */
+public class SharedMemoryFeed implements MarketDataReceiver, Closeable {
+    public static final String FILE_NAME = "md.ring";
+    public static final int DEFAULT_SLOTS = 1 << 16;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int slots;
+    private long cursor = 0;
+
+    /**
+     * Create feed in the shared memory directory of the specified config.
+     *
+     * @param cfg config
+     * @throws IOException fail creating the file
+     */
+    public SharedMemoryFeed(Config cfg) throws IOException {
+        this(Path.of(cfg.getRootDirectory().recursiveGet("dir.shm").iterator()
+                .next().path().toString(), FILE_NAME), DEFAULT_SLOTS);
+    }
+
+    /**
+     * Create feed at the specified file. The file is never truncated, records
+     * in it are discarded by a new epoch.
+     *
+     * @param file ring file
+     * @param slots number of records in the ring
+     * @throws IOException fail creating the file
+     */
+    public SharedMemoryFeed(Path file, int slots) throws IOException {
+        if (slots <= 0)
+            throw new IllegalArgumentException("slots must be positive");
+        this.slots = slots;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // Mapping grows a small file, and a larger file keeps its size so
+        // readers' mappings stay valid.
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                Math.max(this.channel.size(),
+                        HEADER_SIZE + (long) slots * SLOT_SIZE));
+        this.buffer.order(ByteOrder.nativeOrder());
+        var b = this.buffer;
+        var epoch = 0L;
+        if (b.getInt(H_MAGIC) == MAGIC && b.getInt(H_VERSION) == VERSION)
+            epoch = (long) LONGS.getAcquire(b, H_EPOCH);
+        // Odd epoch tells readers the ring is being initialized.
+        epoch = (epoch | 1L) + 1;
+        LONGS.setRelease(b, H_EPOCH, epoch - 1);
+        VarHandle.storeStoreFence();
+        b.putInt(H_VERSION, VERSION);
+        b.putInt(H_SLOTS, slots);
+        b.putInt(H_SLOT_SIZE, SLOT_SIZE);
+        // Stamps of the old records would match sequences of the new ones.
+        for (long seq = 0; seq < slots; ++seq)
+            LONGS.setOpaque(b, slotOffset(seq, slots) + STAMP, 0L);
+        LONGS.setRelease(b, H_CURSOR, 0L);
+        LONGS.setRelease(b, H_EPOCH, epoch);
+        // Magic is written last so readers don't see a half-made header.
+        VarHandle.storeStoreFence();
+        b.putInt(H_MAGIC, MAGIC);
+    }
+
+    @Override
+    public synchronized void depthReceived(CThostFtdcDepthMarketDataField depth) {
+        var off = begin();
+        var b = this.buffer;
+        b.putInt(off + TYPE, TYPE_DEPTH);
+        b.putInt(off + MILLISEC, depth.UpdateMillisec);
+        putString(b, off + INSTRUMENT, INSTRUMENT_LEN, depth.InstrumentID);
+        putString(b, off + TRADING_DAY, DAY_LEN, depth.TradingDay);
+        putString(b, off + ACTION_DAY, DAY_LEN, depth.ActionDay);
+        putString(b, off + UPDATE_TIME, TIME_LEN, depth.UpdateTime);
+        b.putDouble(off + PRICE, depth.LastPrice);
+        b.putInt(off + VOLUME, depth.Volume);
+        b.putInt(off + BID_VOLUME, depth.BidVolume1);
+        b.putDouble(off + OPEN_INTEREST, depth.OpenInterest);
+        b.putDouble(off + BID_PRICE, depth.BidPrice1);
+        b.putDouble(off + ASK_PRICE, depth.AskPrice1);
+        b.putInt(off + ASK_VOLUME, depth.AskVolume1);
+        b.putDouble(off + TURNOVER, depth.Turnover);
+        b.putDouble(off + OPEN_PRICE, depth.OpenPrice);
+        b.putDouble(off + HIGH_PRICE, depth.HighestPrice);
+        b.putDouble(off + LOW_PRICE, depth.LowestPrice);
+        b.putDouble(off + UPPER_LIMIT, depth.UpperLimitPrice);
+        b.putDouble(off + LOWER_LIMIT, depth.LowerLimitPrice);
+        b.putDouble(off + PRE_SETTLEMENT, depth.PreSettlementPrice);
+        b.putDouble(off + PRE_CLOSE, depth.PreClosePrice);
+        b.putDouble(off + AVERAGE_PRICE, depth.AveragePrice);
+        commit(off);
+    }
+
+    @Override
+    public synchronized void candleReceived(CThostFtdcCandleField candle) {
+        var off = begin();
+        var b = this.buffer;
+        b.putInt(off + TYPE, TYPE_CANDLE);
+        b.putInt(off + MILLISEC, 0);
+        putString(b, off + INSTRUMENT, INSTRUMENT_LEN, candle.InstrumentID);
+        putString(b, off + TRADING_DAY, DAY_LEN, candle.TradingDay);
+        putString(b, off + ACTION_DAY, DAY_LEN, candle.ActionDay);
+        putString(b, off + UPDATE_TIME, TIME_LEN, candle.UpdateTime);
+        b.putDouble(off + PRICE, candle.ClosePrice);
+        b.putInt(off + VOLUME, candle.Volume);
+        b.putDouble(off + OPEN_INTEREST, candle.OpenInterest);
+        b.putDouble(off + OPEN_PRICE, candle.OpenPrice);
+        b.putDouble(off + HIGH_PRICE, candle.HighestPrice);
+        b.putDouble(off + LOW_PRICE, candle.LowestPrice);
+        commit(off);
+    }
+
+    private int begin() {
+        var off = slotOffset(this.cursor, this.slots);
+        LONGS.setOpaque(this.buffer, off + STAMP, 2 * this.cursor + 1);
+        VarHandle.storeStoreFence();
+        return off;
+    }
+
+    private void commit(int off) {
+        LONGS.setRelease(this.buffer, off + STAMP, 2 * this.cursor + 2);
+        LONGS.setRelease(this.buffer, H_CURSOR, ++this.cursor);
+    }
+
+    /**
+     * Get sequence of the next record to write.
+     *
+     * @return next sequence
+     */
+    public synchronized long getCursor() {
+        return this.cursor;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.md;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Layout of the shared memory ring file. The file has a header followed by
+ * fixed size slots. Record of sequence {@code n} is written to slot
+ * {@code n % slots}.
+ *
+ * <pre>
+ * header  0 magic(int) 4 version(int) 8 slots(int) 12 slot size(int)
+ *        16 cursor(long), next sequence to write
+ *        24 epoch(long), odd while the writer initializes the ring, and
+ *           increased every time a writer opens the file
+ * slot    0 stamp(long), 2n+1 while writing record n, 2n+2 when done
+ *         8 type(int) 12 update millisec(int) 16 instrument ID(32 bytes)
+ *        48 trading day(8) 56 action day(8) 64 update time(8)
+ *        72 last/close price 80 volume(int) 84 bid volume 1(int)
+ *        88 open interest 96 bid price 1 104 ask price 1
+ *       112 ask volume 1(int) 120 turnover 128 open price 136 highest price
+ *       144 lowest price 152 upper limit 160 lower limit
+ *       168 pre-settlement price 176 pre-close price 184 average price
+ * </pre>
+ *
+ * <p>Numbers are in native byte order since the file is only shared on the
+ * same host.
+ * </p>
+ */
+class SharedMemoryLayout {
+    static final int MAGIC = 0x574b4d44; // WKMD
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 64;
+    static final int SLOT_SIZE = 192;
+
+    static final int TYPE_DEPTH = 1, TYPE_CANDLE = 2;
+
+    // Header offsets.
+    static final int H_MAGIC = 0, H_VERSION = 4, H_SLOTS = 8, H_SLOT_SIZE = 12,
+            H_CURSOR = 16, H_EPOCH = 24;
+
+    // Slot offsets.
+    static final int STAMP = 0, TYPE = 8, MILLISEC = 12, INSTRUMENT = 16,
+            TRADING_DAY = 48, ACTION_DAY = 56, UPDATE_TIME = 64, PRICE = 72,
+            VOLUME = 80, BID_VOLUME = 84, OPEN_INTEREST = 88, BID_PRICE = 96,
+            ASK_PRICE = 104, ASK_VOLUME = 112, TURNOVER = 120, OPEN_PRICE = 128,
+            HIGH_PRICE = 136, LOW_PRICE = 144, UPPER_LIMIT = 152,
+            LOWER_LIMIT = 160, PRE_SETTLEMENT = 168, PRE_CLOSE = 176,
+            AVERAGE_PRICE = 184;
+
+    static final int INSTRUMENT_LEN = 32, DAY_LEN = 8, TIME_LEN = 8;
+
+    // Ordered access to the stamps and cursor.
+    static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(
+            long[].class, ByteOrder.nativeOrder());
+
+    static int slotOffset(long seq, int slots) {
+        return HEADER_SIZE + (int) (seq % slots) * SLOT_SIZE;
+    }
+
+    static void putString(ByteBuffer buffer, int offset, int len, String s) {
+        int i = 0;
+        if (s != null)
+            for (; i < Math.min(len, s.length()); ++i)
+                buffer.put(offset + i, (byte) s.charAt(i));
+        for (; i < len; ++i)
+            buffer.put(offset + i, (byte) 0);
+    }
+
+    static String getString(ByteBuffer buffer, int offset, int len) {
+        var bytes = new byte[len];
+        int n = 0;
+        for (; n < len; ++n) {
+            bytes[n] = buffer.get(offset + n);
+            if (bytes[n] == 0)
+                break;
+        }
+        return new String(bytes, 0, n, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.md;
+
+import com.nabiki.ctp4j.jni.struct.CThostFtdcDepthMarketDataField;
+import com.nabiki.wukong.ctp.MarketDataReceiver;
+import com.nabiki.wukong.ctp4j.jni.struct.CThostFtdcCandleField;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.nabiki.wukong.md.SharedMemoryLayout.*;
+
+/**
+ * Read market data published by {@link SharedMemoryFeed}. A reader starts from
+ * the newest record when opened, and polls records in sequence. If the writer
+ * overwrites records before they are read, the reader skips to the oldest
+ * record still in the ring and counts the lost ones.
+ *
+ * <p>When the writer restarts, it starts a new epoch in the same file. The
+ * reader finds the new epoch, or a cursor behind its position, and reads again
+ * from the writer's first record.
+ * </p>
+ *
+ * <p>The reader isn't thread-safe, each consumer thread opens its own reader.
+ * Objects passed to the receiver are reused by the next poll.
+ * </p>
+ */
+public class SharedMemoryReader implements Closeable {
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int slots;
+    private final CThostFtdcDepthMarketDataField depth
+            = new CThostFtdcDepthMarketDataField();
+    private final CThostFtdcCandleField candle = new CThostFtdcCandleField();
+
+    private long next, lost = 0, epoch;
+
+    public SharedMemoryReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                this.channel.size());
+        this.buffer.order(ByteOrder.nativeOrder());
+        if (this.buffer.capacity() < HEADER_SIZE
+                || this.buffer.getInt(H_MAGIC) != MAGIC) {
+            this.channel.close();
+            throw new IOException("not a market data ring file");
+        }
+        VarHandle.loadLoadFence();
+        if (this.buffer.getInt(H_VERSION) != VERSION
+                || this.buffer.getInt(H_SLOT_SIZE) != SLOT_SIZE) {
+            this.channel.close();
+            throw new IOException("unsupported ring file version");
+        }
+        this.epoch = getEpoch();
+        VarHandle.loadLoadFence();
+        this.slots = this.buffer.getInt(H_SLOTS);
+        this.next = getCursor();
+    }
+
+    private long getEpoch() {
+        return (long) LONGS.getAcquire(this.buffer, H_EPOCH);
+    }
+
+    // Follow the restarted writer from its first record. Return false if the
+    // writer is still initializing the ring.
+    private boolean restart(long epoch) {
+        if ((epoch & 1L) != 0)
+            return false;
+        var slots = this.buffer.getInt(H_SLOTS);
+        var size = HEADER_SIZE + (long) slots * SLOT_SIZE;
+        if (size > this.buffer.capacity()) {
+            try {
+                this.buffer = this.channel.map(FileChannel.MapMode.READ_ONLY,
+                        0, size);
+                this.buffer.order(ByteOrder.nativeOrder());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        this.slots = slots;
+        this.epoch = epoch;
+        this.next = 0;
+        return true;
+    }
+
+    /**
+     * Get sequence of the next record the writer will write.
+     *
+     * @return writer's cursor
+     */
+    public long getCursor() {
+        return (long) LONGS.getAcquire(this.buffer, H_CURSOR);
+    }
+
+    /**
+     * Get sequence of the next record to read.
+     *
+     * @return next sequence to read
+     */
+    public long getNext() {
+        return this.next;
+    }
+
+    /**
+     * Get number of records overwritten before they were read.
+     *
+     * @return number of lost records
+     */
+    public long getLostCount() {
+        return this.lost;
+    }
+
+    /**
+     * Start reading from the oldest record in the ring.
+     */
+    public void rewind() {
+        this.next = Math.max(0, getCursor() - this.slots + 1);
+    }
+
+    /**
+     * Read available records and pass them to the receiver, at most the
+     * specified number of records.
+     *
+     * @param recv receiver
+     * @param max max number of records to read
+     * @return number of records read
+     */
+    public int poll(MarketDataReceiver recv, int max) {
+        int cnt = 0;
+        while (cnt < max) {
+            var r = readNext(recv);
+            if (r < 0)
+                continue; // Lapped, retry from the new position.
+            if (r == 0)
+                break;
+            ++cnt;
+        }
+        return cnt;
+    }
+
+    // Return 1 if read, 0 if no record, -1 if overwritten or restarted.
+    private int readNext(MarketDataReceiver recv) {
+        var epoch = getEpoch();
+        if (epoch != this.epoch)
+            return restart(epoch) ? -1 : 0;
+        var off = slotOffset(this.next, this.slots);
+        var want = 2 * this.next + 2;
+        var s1 = (long) LONGS.getAcquire(this.buffer, off + STAMP);
+        if (s1 < want) {
+            // A writer restarted without new epoch is behind the reader.
+            if (getCursor() < this.next) {
+                this.next = 0;
+                return -1;
+            }
+            return 0;
+        }
+        int type = 0;
+        if (s1 == want) {
+            type = this.buffer.getInt(off + TYPE);
+            if (type == TYPE_DEPTH)
+                readDepth(off);
+            else
+                readCandle(off);
+            VarHandle.loadLoadFence();
+        }
+        var s2 = (long) LONGS.getAcquire(this.buffer, off + STAMP);
+        if (getEpoch() != this.epoch)
+            return -1; // Restarted while reading, drop the record.
+        if (s1 != want || s2 != s1) {
+            // The writer has gone around the ring.
+            var oldest = Math.max(this.next + 1, getCursor() - this.slots + 1);
+            this.lost += oldest - this.next;
+            this.next = oldest;
+            return -1;
+        }
+        ++this.next;
+        // Same object carries a new record.
+        MarketDataRouter.nextEvent();
+        if (type == TYPE_DEPTH)
+            recv.depthReceived(this.depth);
+        else
+            recv.candleReceived(this.candle);
+        return 1;
+    }
+
+    private void readDepth(int off) {
+        var b = this.buffer;
+        var d = this.depth;
+        d.UpdateMillisec = b.getInt(off + MILLISEC);
+        d.InstrumentID = getString(b, off + INSTRUMENT, INSTRUMENT_LEN);
+        d.TradingDay = getString(b, off + TRADING_DAY, DAY_LEN);
+        d.ActionDay = getString(b, off + ACTION_DAY, DAY_LEN);
+        d.UpdateTime = getString(b, off + UPDATE_TIME, TIME_LEN);
+        d.LastPrice = b.getDouble(off + PRICE);
+        d.Volume = b.getInt(off + VOLUME);
+        d.BidVolume1 = b.getInt(off + BID_VOLUME);
+        d.OpenInterest = b.getDouble(off + OPEN_INTEREST);
+        d.BidPrice1 = b.getDouble(off + BID_PRICE);
+        d.AskPrice1 = b.getDouble(off + ASK_PRICE);
+        d.AskVolume1 = b.getInt(off + ASK_VOLUME);
+        d.Turnover = b.getDouble(off + TURNOVER);
+        d.OpenPrice = b.getDouble(off + OPEN_PRICE);
+        d.HighestPrice = b.getDouble(off + HIGH_PRICE);
+        d.LowestPrice = b.getDouble(off + LOW_PRICE);
+        d.UpperLimitPrice = b.getDouble(off + UPPER_LIMIT);
+        d.LowerLimitPrice = b.getDouble(off + LOWER_LIMIT);
+        d.PreSettlementPrice = b.getDouble(off + PRE_SETTLEMENT);
+        d.PreClosePrice = b.getDouble(off + PRE_CLOSE);
+        d.AveragePrice = b.getDouble(off + AVERAGE_PRICE);
+    }
+
+    private void readCandle(int off) {
+        var b = this.buffer;
+        var c = this.candle;
+        c.InstrumentID = getString(b, off + INSTRUMENT, INSTRUMENT_LEN);
+        c.TradingDay = getString(b, off + TRADING_DAY, DAY_LEN);
+        c.ActionDay = getString(b, off + ACTION_DAY, DAY_LEN);
+        c.UpdateTime = getString(b, off + UPDATE_TIME, TIME_LEN);
+        c.ClosePrice = b.getDouble(off + PRICE);
+        c.Volume = b.getInt(off + VOLUME);
+        c.OpenInterest = b.getDouble(off + OPEN_INTEREST);
+        c.OpenPrice = b.getDouble(off + OPEN_PRICE);
+        c.HighestPrice = b.getDouble(off + HIGH_PRICE);
+        c.LowestPrice = b.getDouble(off + LOW_PRICE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
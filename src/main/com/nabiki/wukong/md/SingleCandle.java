@@ -30,21 +30,26 @@ package com.nabiki.wukong.md;
 
 import com.nabiki.ctp4j.jni.struct.CThostFtdcDepthMarketDataField;
 import com.nabiki.wukong.ctp4j.jni.struct.CThostFtdcCandleField;
+import com.nabiki.wukong.tools.InstrumentRegistry;
 
 import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 
 public class SingleCandle {
-    private final String instrID;
+    private final int handle;
     private final Map<Duration, CandleProgress> progress = new HashMap<>();
 
     SingleCandle(String instrID) {
-        this.instrID = instrID;
+        this.handle = InstrumentRegistry.getHandle(instrID);
     }
 
-    void update(CThostFtdcDepthMarketDataField md) {
-        if (md.InstrumentID.compareTo(this.instrID) != 0)
+    int getHandle() {
+        return this.handle;
+    }
+
+    void update(int handle, CThostFtdcDepthMarketDataField md) {
+        if (handle != this.handle)
             throw new IllegalArgumentException("wrong instrument");
         synchronized (this.progress) {
             for (var c : this.progress.values())
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.metric;
+
+/**
+ * Hops of an order's lifecycle, stamped by {@link OrderTracer}. Hops of the
+ * detail orders are stamped when the first detail order reaches it, except
+ * {@link #DONE} which waits for the last.
+ */
+public enum Hop {
+    /**
+     * The user's order is accepted.
+     */
+    ACCEPTED,
+    /**
+     * Money or position is checked and frozen.
+     */
+    RISK_CHECKED,
+    /**
+     * A detail order is put into the order provider's queue.
+     */
+    QUEUED,
+    /**
+     * A detail order is sent to remote server.
+     */
+    SENT,
+    /**
+     * A detail order's return order arrives.
+     */
+    ACKED,
+    /**
+     * A detail order's trade arrives.
+     */
+    FIRST_FILL,
+    /**
+     * All detail orders are traded or canceled, or the order is rejected before
+     * any detail order is queued.
+     */
+    DONE
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.metric;
+
+import com.nabiki.wukong.metric.plain.LatencySummary;
+import com.nabiki.wukong.tools.OutTeam;
+
+import java.util.EnumMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Latency histograms of all {@link Stage}s. Hot paths record into the histogram
+ * of their stage with {@link #since(Stage, long)}.
+ */
+public class Latency {
+    private static final Map<Stage, LatencyHistogram> histograms
+            = new EnumMap<>(Stage.class);
+
+    static {
+        for (var s : Stage.values())
+            histograms.put(s, new LatencyHistogram());
+    }
+
+    /**
+     * Get histogram of the specified stage.
+     *
+     * @param stage stage
+     * @return histogram
+     */
+    public static LatencyHistogram get(Stage stage) {
+        return histograms.get(stage);
+    }
+
+    /**
+     * Record the latency of the specified stage from the start to now.
+     *
+     * @param stage stage
+     * @param startNanos start time from {@link System#nanoTime()}
+     */
+    public static void since(Stage stage, long startNanos) {
+        histograms.get(stage).recordSince(startNanos);
+    }
+
+    /**
+     * Get summaries of all stages since the process started, or the last reset.
+     *
+     * @return list of summaries in the order of stages
+     */
+    @OutTeam
+    public static List<LatencySummary> snapshot() {
+        var r = new LinkedList<LatencySummary>();
+        for (var e : histograms.entrySet())
+            r.add(e.getValue().summarize(e.getKey().name()));
+        return r;
+    }
+
+    /**
+     * Get summaries of all stages since the last reset and reset them.
+     *
+     * @return list of summaries in the order of stages
+     */
+    public static List<LatencySummary> snapshotAndReset() {
+        var r = new LinkedList<LatencySummary>();
+        for (var e : histograms.entrySet())
+            r.add(e.getValue().summarizeAndReset(e.getKey().name()));
+        return r;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.metric;
+
+import com.nabiki.wukong.metric.plain.LatencySummary;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds, recorded without locks.
+ *
+ * <p>Buckets are log-linear like HdrHistogram's. Values under 64 have a bucket
+ * each, then every power of two is split into 32 buckets, so a value is kept
+ * within about 3% of its real value over the whole range of {@code long}.
+ * Recording is a few arithmetic operations and an atomic increment.
+ * </p>
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong total = new AtomicLong(0),
+            max = new AtomicLong(0);
+
+    public LatencyHistogram() {
+    }
+
+    static int index(long value) {
+        if (value < (SUB_COUNT << 1))
+            return (int) value;
+        var e = (63 - Long.numberOfLeadingZeros(value)) - SUB_BITS;
+        return (e << SUB_BITS) + (int) (value >>> e);
+    }
+
+    // Highest value of the bucket.
+    static long valueOf(int index) {
+        if (index < (SUB_COUNT << 1))
+            return index;
+        var e = (index >>> SUB_BITS) - 1;
+        var m = index - (e << SUB_BITS);
+        return ((m + 1L) << e) - 1;
+    }
+
+    /**
+     * Record a latency. Negative values are recorded as 0.
+     *
+     * @param nanos latency in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        this.counts.incrementAndGet(index(nanos));
+        this.total.addAndGet(nanos);
+        var m = this.max.get();
+        while (nanos > m && !this.max.compareAndSet(m, nanos))
+            m = this.max.get();
+    }
+
+    /**
+     * Record the latency from the specified start to now.
+     *
+     * @param startNanos start time from {@link System#nanoTime()}
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Summarize the recorded latencies.
+     *
+     * @param name name of the summary
+     * @return summary
+     */
+    public LatencySummary summarize(String name) {
+        return summarize(name, false);
+    }
+
+    /**
+     * Summarize the recorded latencies and clear the histogram, so next summary
+     * covers the latencies after this call. Latencies recorded during the call
+     * go to either summary but aren't lost.
+     *
+     * @param name name of the summary
+     * @return summary
+     */
+    public LatencySummary summarizeAndReset(String name) {
+        return summarize(name, true);
+    }
+
+    private LatencySummary summarize(String name, boolean reset) {
+        var copy = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            copy[i] = reset ? this.counts.getAndSet(i, 0) : this.counts.get(i);
+            count += copy[i];
+        }
+        var r = new LatencySummary();
+        r.name = name;
+        r.count = count;
+        r.total = reset ? this.total.getAndSet(0) : this.total.get();
+        r.max = reset ? this.max.getAndSet(0) : this.max.get();
+        if (count == 0)
+            return r;
+        r.mean = r.total / count;
+        r.p50 = percentile(copy, count, 0.50D);
+        r.p90 = percentile(copy, count, 0.90D);
+        r.p99 = percentile(copy, count, 0.99D);
+        r.p999 = percentile(copy, count, 0.999D);
+        // Bucket bound may exceed the real max.
+        r.p50 = Math.min(r.p50, r.max);
+        r.p90 = Math.min(r.p90, r.max);
+        r.p99 = Math.min(r.p99, r.max);
+        r.p999 = Math.min(r.p999, r.max);
+        return r;
+    }
+
+    private static long percentile(long[] counts, long count, double p) {
+        var rank = (long) Math.ceil(p * count);
+        long seen = 0;
+        for (int i = 0; i < counts.length; ++i) {
+            seen += counts[i];
+            if (seen >= rank)
+                return valueOf(i);
+        }
+        return valueOf(counts.length - 1);
+    }
+}
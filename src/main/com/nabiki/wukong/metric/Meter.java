@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.metric;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counter of events with the number of events in the last whole second. The
+ * rate is updated once a second by {@link Metrics}.
+ */
+public class Meter {
+    private final LongAdder count = new LongAdder();
+    private long last = 0;
+    private volatile long rate = 0;
+
+    Meter() {
+    }
+
+    /**
+     * Count one event.
+     */
+    public void mark() {
+        this.count.increment();
+    }
+
+    /**
+     * Count the specified number of events.
+     *
+     * @param n number of events
+     */
+    public void mark(long n) {
+        this.count.add(n);
+    }
+
+    /**
+     * Get number of all events counted.
+     *
+     * @return number of events
+     */
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    /**
+     * Get number of events in the last whole second.
+     *
+     * @return events per second
+     */
+    public long getRate() {
+        return this.rate;
+    }
+
+    // Called by the single metrics timer thread.
+    void tick() {
+        var c = this.count.sum();
+        this.rate = c - this.last;
+        this.last = c;
+    }
+}
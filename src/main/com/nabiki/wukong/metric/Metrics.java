@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.metric;
+
+import com.nabiki.wukong.metric.plain.MetricSnapshot;
+import com.nabiki.wukong.tools.CachedClock;
+import com.nabiki.wukong.tools.OutTeam;
+import com.nabiki.wukong.tools.Workers;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of operational counters, meters and gauges. Components look up their
+ * metrics once and keep the references, so updating a metric on hot paths is an
+ * uncontended add without lookup or lock.
+ *
+ * <p>Counters are {@link LongAdder}s and may go up and down, like the depth of
+ * a queue shared by many instances. Meters count events and their rate per
+ * second. Gauges are sampled only when a snapshot is taken.
+ * </p>
+ */
+public class Metrics {
+    private static final Map<String, LongAdder> counters
+            = new ConcurrentHashMap<>();
+    private static final Map<String, Meter> meters = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier> gauges
+            = new ConcurrentHashMap<>();
+    // Component -> IDs of the threads working for the component.
+    private static final Map<String, Set<Long>> threads
+            = new ConcurrentHashMap<>();
+
+    static {
+        Workers.schedule(() -> {
+            for (var m : meters.values())
+                m.tick();
+        }, TimeUnit.SECONDS.toMillis(1), TimeUnit.SECONDS.toMillis(1));
+        registerSystem();
+    }
+
+    /**
+     * Get the counter of the specified name, create it if it doesn't exist.
+     *
+     * @param name counter name
+     * @return counter
+     */
+    public static LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, k -> new LongAdder());
+    }
+
+    /**
+     * Get the meter of the specified name, create it if it doesn't exist.
+     *
+     * @param name meter name
+     * @return meter
+     */
+    public static Meter meter(String name) {
+        return meters.computeIfAbsent(name, k -> new Meter());
+    }
+
+    /**
+     * Set gauge of the specified name. The new gauge replaces the old one of the
+     * same name.
+     *
+     * @param name gauge name
+     * @param gauge supplier of the gauge value
+     */
+    public static void gauge(String name, LongSupplier gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * Remove gauge of the specified name.
+     *
+     * @param name gauge name
+     */
+    public static void removeGauge(String name) {
+        gauges.remove(name);
+    }
+
+    /**
+     * Count the bytes allocated by the calling thread into the gauge
+     * {@code alloc.<component>}. Threads of the same component are summed, and a
+     * thread's allocation is no longer counted after it dies. The call has no
+     * effect if the JVM can't measure allocation per thread.
+     *
+     * @param component component name
+     */
+    public static void watchAllocation(String component) {
+        var bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean))
+            return;
+        var sun = (com.sun.management.ThreadMXBean) bean;
+        if (!sun.isThreadAllocatedMemorySupported())
+            return;
+        if (!sun.isThreadAllocatedMemoryEnabled())
+            sun.setThreadAllocatedMemoryEnabled(true);
+        var ids = threads.computeIfAbsent(component, k -> {
+            var s = ConcurrentHashMap.<Long>newKeySet();
+            gauge("alloc." + k, () -> {
+                long sum = 0;
+                for (var id : s) {
+                    var b = sun.getThreadAllocatedBytes(id);
+                    if (b < 0)
+                        s.remove(id);
+                    else
+                        sum += b;
+                }
+                return sum;
+            });
+            return s;
+        });
+        ids.add(Thread.currentThread().getId());
+    }
+
+    private static void registerSystem() {
+        for (var gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            var name = gc.getName().replace(' ', '_');
+            gauge("gc." + name + ".count", gc::getCollectionCount);
+            gauge("gc." + name + ".millis", gc::getCollectionTime);
+        }
+        var mem = ManagementFactory.getMemoryMXBean();
+        gauge("mem.heap.used", () -> mem.getHeapMemoryUsage().getUsed());
+        gauge("thread.count", ManagementFactory.getThreadMXBean()::getThreadCount);
+    }
+
+    /**
+     * Get values of all metrics and latency summaries. Latency histograms are
+     * not reset.
+     *
+     * @return snapshot of metrics
+     */
+    @OutTeam
+    public static MetricSnapshot snapshot() {
+        var r = new MetricSnapshot();
+        r.time = CachedClock.now().stamp;
+        r.counters = new TreeMap<>();
+        r.rates = new TreeMap<>();
+        r.gauges = new TreeMap<>();
+        for (var e : counters.entrySet())
+            r.counters.put(e.getKey(), e.getValue().sum());
+        for (var e : meters.entrySet()) {
+            r.counters.put(e.getKey(), e.getValue().getCount());
+            r.rates.put(e.getKey(), e.getValue().getRate());
+        }
+        for (var e : gauges.entrySet()) {
+            try {
+                r.gauges.put(e.getKey(), e.getValue().getAsLong());
+            } catch (Throwable ignored) {
+                r.gauges.put(e.getKey(), -1L);
+            }
+        }
+        r.latencies = Latency.snapshot();
+        r.hops = OrderTracer.summarize();
+        return r;
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.metric;
+
+import com.nabiki.wukong.metric.plain.LatencySummary;
+import com.nabiki.wukong.metric.plain.OrderTrace;
+import com.nabiki.wukong.tools.InTeam;
+import com.nabiki.wukong.tools.OutTeam;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Trace of orders from the user's UUID down to detail orders and trades. Each
+ * hop of an order is stamped with {@link System#nanoTime()} once, and its time
+ * from {@link Hop#ACCEPTED} is recorded into the histogram of the hop, so the
+ * summaries show which hop the tail latency comes from.
+ *
+ * <p>A user's order may be split into several detail orders, so detail orders
+ * are linked to the UUID when they are queued. The order is done when all its
+ * detail orders are fully traded or canceled. Traces of done orders are kept for
+ * query until {@link #MAX_DONE} newer orders are done.
+ * </p>
+ */
+public class OrderTracer {
+    public static final int MAX_DONE = 4096;
+
+    private static final Hop[] hops = Hop.values();
+    private static final LatencyHistogram[] histograms
+            = new LatencyHistogram[hops.length];
+    private static final Map<UUID, Trace> alive = new ConcurrentHashMap<>();
+    private static final Map<String, Leg> legs = new ConcurrentHashMap<>();
+    private static final Map<UUID, Trace> done = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, Trace> eldest) {
+            return size() > MAX_DONE;
+        }
+    };
+
+    static {
+        for (int i = 0; i < histograms.length; ++i)
+            histograms[i] = new LatencyHistogram();
+    }
+
+    private static class Trace {
+        final UUID uuid;
+        final AtomicLongArray stamps = new AtomicLongArray(hops.length);
+        // Alive detail orders, plus one until all detail orders are queued.
+        final AtomicInteger pending = new AtomicInteger(1);
+        final Set<String> refs = ConcurrentHashMap.newKeySet();
+
+        Trace(UUID uuid) {
+            this.uuid = uuid;
+        }
+
+        void stamp(Hop hop, long nanos) {
+            // Zero is not stamped, and it happens once in 292 years.
+            if (this.stamps.compareAndSet(hop.ordinal(), 0, nanos)
+                    && hop != Hop.ACCEPTED) {
+                var accepted = this.stamps.get(Hop.ACCEPTED.ordinal());
+                if (accepted != 0)
+                    histograms[hop.ordinal()].record(nanos - accepted);
+            }
+        }
+    }
+
+    private static class Leg {
+        final Trace trace;
+        final AtomicInteger remaining;
+
+        Leg(Trace trace, int volume) {
+            this.trace = trace;
+            this.remaining = new AtomicInteger(volume);
+        }
+    }
+
+    /**
+     * Start tracing the order of the specified UUID and stamp
+     * {@link Hop#ACCEPTED}.
+     *
+     * @param uuid UUID of the user's order
+     */
+    @InTeam
+    public static void accept(UUID uuid) {
+        var t = new Trace(uuid);
+        t.stamp(Hop.ACCEPTED, System.nanoTime());
+        alive.put(uuid, t);
+    }
+
+    /**
+     * Stamp the hop of the order of the specified UUID.
+     *
+     * @param uuid UUID of the user's order
+     * @param hop hop
+     */
+    @InTeam
+    public static void stamp(UUID uuid, Hop hop) {
+        var t = alive.get(uuid);
+        if (t != null)
+            t.stamp(hop, System.nanoTime());
+    }
+
+    /**
+     * Link the queued detail order to the order of the specified UUID and stamp
+     * {@link Hop#QUEUED}.
+     *
+     * @param orderRef ref of the detail order
+     * @param volume volume of the detail order
+     * @param uuid UUID of the user's order
+     */
+    @InTeam
+    public static void queue(String orderRef, int volume, UUID uuid) {
+        var t = alive.get(uuid);
+        if (t == null)
+            return;
+        t.pending.incrementAndGet();
+        t.refs.add(orderRef);
+        legs.put(orderRef, new Leg(t, volume));
+        t.stamp(Hop.QUEUED, System.nanoTime());
+    }
+
+    /**
+     * Stamp the hop of the order that has the specified detail order.
+     *
+     * @param orderRef ref of the detail order
+     * @param hop hop
+     */
+    @InTeam
+    public static void stamp(String orderRef, Hop hop) {
+        var leg = legs.get(orderRef);
+        if (leg != null)
+            leg.trace.stamp(hop, System.nanoTime());
+    }
+
+    /**
+     * Stamp {@link Hop#FIRST_FILL} for the trade of the specified detail order.
+     * The detail order ends when its volume is fully traded.
+     *
+     * @param orderRef ref of the detail order
+     * @param volume traded volume
+     */
+    @InTeam
+    public static void trade(String orderRef, int volume) {
+        var leg = legs.get(orderRef);
+        if (leg == null)
+            return;
+        leg.trace.stamp(Hop.FIRST_FILL, System.nanoTime());
+        if (leg.remaining.addAndGet(-volume) <= 0)
+            end(orderRef);
+    }
+
+    /**
+     * End the specified detail order because it is canceled.
+     *
+     * @param orderRef ref of the detail order
+     */
+    @InTeam
+    public static void cancel(String orderRef) {
+        end(orderRef);
+    }
+
+    /**
+     * Drop the specified detail order because it failed to be queued. Unlike
+     * {@link #cancel(String)}, the detail order is also removed from the refs of
+     * its order.
+     *
+     * @param orderRef ref of the detail order
+     */
+    @InTeam
+    public static void drop(String orderRef) {
+        var leg = legs.get(orderRef);
+        if (leg != null)
+            leg.trace.refs.remove(orderRef);
+        end(orderRef);
+    }
+
+    /**
+     * Mark that all detail orders of the specified UUID are queued. The order
+     * ends now if none is queued, like an order rejected by risk check, or all
+     * of them have already ended.
+     *
+     * @param uuid UUID of the user's order
+     */
+    @InTeam
+    public static void allQueued(UUID uuid) {
+        var t = alive.get(uuid);
+        if (t != null && t.pending.decrementAndGet() == 0)
+            finish(t);
+    }
+
+    private static void end(String orderRef) {
+        var leg = legs.remove(orderRef);
+        if (leg != null && leg.trace.pending.decrementAndGet() == 0)
+            finish(leg.trace);
+    }
+
+    private static void finish(Trace t) {
+        if (alive.remove(t.uuid) == null)
+            return;
+        t.stamp(Hop.DONE, System.nanoTime());
+        synchronized (done) {
+            done.put(t.uuid, t);
+        }
+    }
+
+    /**
+     * Get trace of the order of the specified UUID, alive or recently done.
+     *
+     * @param uuid UUID of the user's order
+     * @return trace, or {@code null} if the order isn't traced
+     */
+    @OutTeam
+    public static OrderTrace getTrace(UUID uuid) {
+        var t = alive.get(uuid);
+        if (t == null)
+            synchronized (done) {
+                t = done.get(uuid);
+            }
+        if (t == null)
+            return null;
+        var r = new OrderTrace();
+        r.uuid = t.uuid.toString();
+        r.orderRefs = new LinkedList<>(t.refs);
+        r.hops = new LinkedHashMap<>();
+        var accepted = t.stamps.get(Hop.ACCEPTED.ordinal());
+        for (var h : hops) {
+            var s = t.stamps.get(h.ordinal());
+            if (s != 0)
+                r.hops.put(h.name(), s - accepted);
+        }
+        return r;
+    }
+
+    /**
+     * Get summaries of the time from {@link Hop#ACCEPTED} to each later hop.
+     *
+     * @return list of summaries in the order of hops
+     */
+    @OutTeam
+    public static List<LatencySummary> summarize() {
+        var r = new LinkedList<LatencySummary>();
+        for (int i = 1; i < hops.length; ++i)
+            r.add(histograms[i].summarize(hops[i].name()));
+        return r;
+    }
+
+    /**
+     * Drop all alive traces, for orders that never end like those not traded
+     * at the end of a trading day. Done traces and histograms are kept.
+     */
+    @InTeam
+    public static void clearAlive() {
+        alive.clear();
+        legs.clear();
+    }
+}
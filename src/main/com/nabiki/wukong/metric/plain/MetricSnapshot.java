@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.metric.plain;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Values of all metrics at a time.
+ */
+public class MetricSnapshot {
+    /**
+     * Time of the snapshot, yyyyMMdd_HHmmss.
+     */
+    public String time;
+
+    /**
+     * Counter name -> value. Meters are also counted here.
+     */
+    public Map<String, Long> counters;
+
+    /**
+     * Meter name -> events in the last whole second.
+     */
+    public Map<String, Long> rates;
+
+    /**
+     * Gauge name -> value.
+     */
+    public Map<String, Long> gauges;
+
+    /**
+     * Latency summaries of all stages since the last reset.
+     */
+    public List<LatencySummary> latencies;
+
+    /**
+     * Summaries of the time from accepting an order to each later hop.
+     */
+    public List<LatencySummary> hops;
+
+    public MetricSnapshot() {}
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.risk;
+
+import com.nabiki.ctp4j.jni.flag.TThostFtdcCombOffsetFlagType;
+import com.nabiki.ctp4j.jni.flag.TThostFtdcDirectionType;
+import com.nabiki.ctp4j.jni.struct.CThostFtdcInputOrderField;
+import com.nabiki.ctp4j.jni.struct.CThostFtdcTradingAccountField;
+import com.nabiki.wukong.cfg.plain.InstrumentInfo;
+import com.nabiki.wukong.risk.plain.RiskEstimate;
+import com.nabiki.wukong.tools.InTeam;
+import com.nabiki.wukong.tools.InstrumentRegistry;
+import com.nabiki.wukong.tools.OutTeam;
+
+import java.util.*;
+
+/**
+ * {@code RiskEngine} evaluates margin and commission of orders before they are
+ * sent. The rates of all instruments are copied into primitive arrays when the
+ * engine is built, so evaluation neither locks the config nor touches the CTP
+ * structs.
+ *
+ * <p>The engine is immutable. When instrument information changes, build a new
+ * engine instead.
+ * </p>
+ */
+public class RiskEngine {
+    // Arrays are indexed by instrument handle from InstrumentRegistry.
+    private final InstrumentInfo[] infos;
+    private final boolean[] known;
+    private final int[] multiple;
+    private final double[] longMarginByMoney, longMarginByVolume,
+            shortMarginByMoney, shortMarginByVolume,
+            openCommByMoney, openCommByVolume,
+            closeCommByMoney, closeCommByVolume,
+            closeTodayCommByMoney, closeTodayCommByVolume;
+
+    /**
+     * Build engine from the specified instrument information. Instruments without
+     * complete information, missing instrument, margin or commission, are skipped.
+     *
+     * @param infos instrument information
+     */
+    public RiskEngine(Collection<InstrumentInfo> infos) {
+        var valid = new LinkedList<InstrumentInfo>();
+        for (var i : infos)
+            if (i != null && i.instrument != null && i.margin != null
+                    && i.commission != null)
+                valid.add(i);
+        int n = 0;
+        for (var i : valid)
+            n = Math.max(n, 1 + InstrumentRegistry.getHandle(
+                    i.instrument.InstrumentID));
+        this.infos = new InstrumentInfo[n];
+        this.known = new boolean[n];
+        this.multiple = new int[n];
+        this.longMarginByMoney = new double[n];
+        this.longMarginByVolume = new double[n];
+        this.shortMarginByMoney = new double[n];
+        this.shortMarginByVolume = new double[n];
+        this.openCommByMoney = new double[n];
+        this.openCommByVolume = new double[n];
+        this.closeCommByMoney = new double[n];
+        this.closeCommByVolume = new double[n];
+        this.closeTodayCommByMoney = new double[n];
+        this.closeTodayCommByVolume = new double[n];
+        for (var i : valid) {
+            int idx = InstrumentRegistry.getHandle(i.instrument.InstrumentID);
+            this.infos[idx] = i;
+            this.known[idx] = true;
+            this.multiple[idx] = i.instrument.VolumeMultiple;
+            this.longMarginByMoney[idx] = i.margin.LongMarginRatioByMoney;
+            this.longMarginByVolume[idx] = i.margin.LongMarginRatioByVolume;
+            this.shortMarginByMoney[idx] = i.margin.ShortMarginRatioByMoney;
+            this.shortMarginByVolume[idx] = i.margin.ShortMarginRatioByVolume;
+            this.openCommByMoney[idx] = i.commission.OpenRatioByMoney;
+            this.openCommByVolume[idx] = i.commission.OpenRatioByVolume;
+            this.closeCommByMoney[idx] = i.commission.CloseRatioByMoney;
+            this.closeCommByVolume[idx] = i.commission.CloseRatioByVolume;
+            this.closeTodayCommByMoney[idx] = i.commission.CloseTodayRatioByMoney;
+            this.closeTodayCommByVolume[idx] = i.commission.CloseTodayRatioByVolume;
+        }
+    }
+
+    /**
+     * Calculate margin or commission of 1 volume. If the rate by money is
+     * positive, the rate by money is used, otherwise the rate by volume is used.
+     *
+     * @param byMoney rate by money
+     * @param byVolume rate by volume
+     * @param multiple volume multiple of the instrument
+     * @param price price
+     * @return margin or commission of 1 volume
+     */
+    @InTeam
+    public static double perVolume(double byMoney, double byVolume, int multiple,
+                                   double price) {
+        if (byMoney > 0)
+            return price * multiple * byMoney;
+        else
+            return byVolume;
+    }
+
+    /**
+     * Get handle of the specified instrument if this engine has its rates.
+     *
+     * @param instrID instrument ID
+     * @return handle of the instrument, or {@code -1} if the instrument is unknown
+     */
+    @InTeam
+    public int getIndex(String instrID) {
+        var h = InstrumentRegistry.findHandle(instrID);
+        return isKnown(h) ? h : -1;
+    }
+
+    /**
+     * Check if this engine has rates of the specified instrument handle.
+     *
+     * @param handle instrument handle
+     * @return {@code true} if the engine can evaluate the instrument
+     */
+    @InTeam
+    public boolean isKnown(int handle) {
+        return handle >= 0 && handle < this.known.length && this.known[handle];
+    }
+
+    /**
+     * Get the instrument information the engine is built from. The info is the
+     * same snapshot the rates are copied from, so trades are updated with the
+     * rates their orders were checked with.
+     *
+     * @param idx instrument handle
+     * @return instrument information, or {@code null} if the instrument is
+     * unknown
+     */
+    @InTeam
+    public InstrumentInfo getInfo(int idx) {
+        return isKnown(idx) ? this.infos[idx] : null;
+    }
+
+    /**
+     * Get margin of 1 volume for opening position.
+     *
+     * @param idx instrument handle
+     * @param direction direction of the order
+     * @param price price
+     * @return margin of 1 volume
+     */
+    @InTeam
+    public double getMargin(int idx, char direction, double price) {
+        if (direction == TThostFtdcDirectionType.DIRECTION_BUY)
+            return perVolume(this.longMarginByMoney[idx],
+                    this.longMarginByVolume[idx], this.multiple[idx], price);
+        else
+            return perVolume(this.shortMarginByMoney[idx],
+                    this.shortMarginByVolume[idx], this.multiple[idx], price);
+    }
+
+    /**
+     * Get commission of 1 volume.
+     *
+     * @param idx instrument handle
+     * @param offset offset flag of the order
+     * @param price price
+     * @return commission of 1 volume
+     */
+    @InTeam
+    public double getCommission(int idx, char offset, double price) {
+        if (offset == TThostFtdcCombOffsetFlagType.OFFSET_OPEN)
+            return perVolume(this.openCommByMoney[idx],
+                    this.openCommByVolume[idx], this.multiple[idx], price);
+        else if (offset == TThostFtdcCombOffsetFlagType.OFFSET_CLOSE_TODAY)
+            return perVolume(this.closeTodayCommByMoney[idx],
+                    this.closeTodayCommByVolume[idx], this.multiple[idx], price);
+        else
+            return perVolume(this.closeCommByMoney[idx],
+                    this.closeCommByVolume[idx], this.multiple[idx], price);
+    }
+
+    /**
+     * Evaluate margin and commission of the specified orders in one pass. Open
+     * orders take margin and commission, close orders only take commission. The
+     * orders are checked in the given order against the available money of the
+     * specified account.
+     *
+     * <p>The method only estimates, it doesn't freeze anything. It can be used by
+     * clients to check a basket of orders before sending them.
+     * </p>
+     *
+     * @param account trading account that sends the orders, if {@code null} the
+     *                orders are evaluated without checking available money
+     * @param orders orders to evaluate
+     * @return estimate of the orders
+     * @throws IllegalArgumentException if an order has unknown instrument
+     */
+    @OutTeam
+    public RiskEstimate whatIf(CThostFtdcTradingAccountField account,
+                               List<CThostFtdcInputOrderField> orders) {
+        Objects.requireNonNull(orders, "orders null");
+        var r = new RiskEstimate();
+        r.margin = new double[orders.size()];
+        r.commission = new double[orders.size()];
+        r.available = account == null ? Double.MAX_VALUE : account.Available;
+        int i = 0;
+        for (var o : orders) {
+            var idx = getIndex(o.InstrumentID);
+            if (idx < 0)
+                throw new IllegalArgumentException(
+                        "unknown instrument " + o.InstrumentID);
+            var offset = o.CombOffsetFlag;
+            if (offset == TThostFtdcCombOffsetFlagType.OFFSET_OPEN)
+                r.margin[i] = getMargin(idx, o.Direction, o.LimitPrice)
+                        * o.VolumeTotalOriginal;
+            r.commission[i] = getCommission(idx, offset, o.LimitPrice)
+                    * o.VolumeTotalOriginal;
+            r.totalMargin += r.margin[i];
+            r.totalCommission += r.commission[i];
+            r.available -= r.margin[i] + r.commission[i];
+            if (r.available < 0 && r.firstRejected < 0)
+                r.firstRejected = i;
+            ++i;
+        }
+        return r;
+    }
+
+    /**
+     * Evaluate margin and commission of the specified orders without checking
+     * available money.
+     *
+     * @param orders orders to evaluate
+     * @return estimate of the orders
+     */
+    @OutTeam
+    public RiskEstimate evaluate(List<CThostFtdcInputOrderField> orders) {
+        return whatIf(null, orders);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.risk.plain;
+
+public class RiskEstimate {
+    /**
+     * Margin of each order, in the same order as the evaluated orders. Close
+     * orders don't take margin so their margins are 0.
+     */
+    public double[] margin;
+
+    /**
+     * Commission of each order, in the same order as the evaluated orders.
+     */
+    public double[] commission;
+
+    /**
+     * Sum of margins of all orders.
+     */
+    public double totalMargin;
+
+    /**
+     * Sum of commissions of all orders.
+     */
+    public double totalCommission;
+
+    /**
+     * Available money after all orders are accepted. It is negative if the
+     * account can't afford all the orders.
+     */
+    public double available;
+
+    /**
+     * Index of the first order that the account can't afford, or {@code -1} if
+     * all orders can be accepted.
+     */
+    public int firstRejected = -1;
+
+    public RiskEstimate() {}
+}
@@ -0,0 +1,481 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.sim;
+
+import com.nabiki.ctp4j.jni.flag.TThostFtdcDirectionType;
+import com.nabiki.ctp4j.jni.flag.TThostFtdcOrderStatusType;
+import com.nabiki.ctp4j.jni.flag.TThostFtdcOrderSubmitStatusType;
+import com.nabiki.ctp4j.jni.struct.*;
+import com.nabiki.wukong.tools.CachedClock;
+import com.nabiki.wukong.tools.OP;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code SimExchange} is an in-process market shared by {@link SimTraderApi} and
+ * {@link SimMdApi}. It keeps the last depth of each instrument and matches limit
+ * orders against it.
+ *
+ * <p>A buy order trades at the ask price if its limit price is not lower than
+ * the ask, and a sell order trades at the bid if its limit is not higher than the
+ * bid. An order takes at most the volume shown at the best price, and volume it
+ * takes is gone until the next depth. The rest of the order is queued and matched
+ * again on each new depth in time priority. Positions and money are not checked,
+ * that is the gateway's job.
+ * </p>
+ *
+ * <p>Depths are published by {@link #publish(CThostFtdcDepthMarketDataField)},
+ * replayed from a list, or synthesized as random walks from the instruments'
+ * initial prices.
+ * </p>
+ */
+public class SimExchange {
+    /**
+     * Listener of new depths.
+     */
+    interface DepthListener {
+        void depthPublished(CThostFtdcDepthMarketDataField depth);
+    }
+
+    /**
+     * Owner of orders that receives their updates.
+     */
+    interface OrderOwner {
+        void orderUpdated(CThostFtdcOrderField order);
+
+        void tradeUpdated(CThostFtdcTradeField trade);
+    }
+
+    private static class Book {
+        final CThostFtdcInstrumentField instrument;
+        final CThostFtdcInstrumentMarginRateField margin;
+        final CThostFtdcInstrumentCommissionRateField commission;
+        final List<SimOrder> queue = new LinkedList<>();
+        CThostFtdcDepthMarketDataField depth;
+
+        Book(CThostFtdcInstrumentField instrument,
+             CThostFtdcInstrumentMarginRateField margin,
+             CThostFtdcInstrumentCommissionRateField commission) {
+            this.instrument = instrument;
+            this.margin = margin;
+            this.commission = commission;
+        }
+    }
+
+    private static class SimOrder {
+        final OrderOwner owner;
+        final CThostFtdcOrderField order;
+
+        SimOrder(OrderOwner owner, CThostFtdcOrderField order) {
+            this.owner = owner;
+            this.order = order;
+        }
+    }
+
+    private final String tradingDay;
+    private final Map<String, Book> books = new LinkedHashMap<>();
+    private final Map<String, SimOrder> bySysID = new HashMap<>();
+    // FrontID:SessionID:OrderRef -> order.
+    private final Map<String, SimOrder> byRef = new HashMap<>();
+    private final Map<OrderOwner, List<CThostFtdcTradeField>> trades
+            = new HashMap<>();
+    private final Set<DepthListener> listeners = new HashSet<>();
+    private final Random random = new Random();
+    private final ScheduledExecutorService ticker
+            = Executors.newSingleThreadScheduledExecutor(r -> {
+                var t = new Thread(r, "sim-ticker");
+                t.setDaemon(true);
+                return t;
+            });
+
+    private int sysID = 0, tradeID = 0, sessionID = 0;
+    private ScheduledFuture<?> ticking;
+
+    public SimExchange(String tradingDay) {
+        this.tradingDay = Objects.requireNonNull(tradingDay, "trading day null");
+    }
+
+    public String getTradingDay() {
+        return this.tradingDay;
+    }
+
+    /**
+     * Add an instrument that trades at the specified initial price. The first
+     * depth of the instrument is created at the price with 10 lots on both sides.
+     *
+     * @param instrument instrument
+     * @param margin margin rate returned to queries
+     * @param commission commission rate returned to queries
+     * @param price initial price
+     */
+    public synchronized void addInstrument(
+            CThostFtdcInstrumentField instrument,
+            CThostFtdcInstrumentMarginRateField margin,
+            CThostFtdcInstrumentCommissionRateField commission, double price) {
+        Objects.requireNonNull(instrument, "instrument null");
+        var book = new Book(instrument, margin, commission);
+        var d = new CThostFtdcDepthMarketDataField();
+        d.InstrumentID = instrument.InstrumentID;
+        d.ExchangeID = instrument.ExchangeID;
+        d.TradingDay = this.tradingDay;
+        d.LastPrice = d.PreSettlementPrice = d.PreClosePrice = d.OpenPrice
+                = d.HighestPrice = d.LowestPrice = price;
+        d.UpperLimitPrice = price * 1.1D;
+        d.LowerLimitPrice = price * 0.9D;
+        d.BidPrice1 = price - tick(instrument);
+        d.AskPrice1 = price + tick(instrument);
+        d.BidVolume1 = d.AskVolume1 = 10;
+        book.depth = d;
+        this.books.put(instrument.InstrumentID, book);
+    }
+
+    private static double tick(CThostFtdcInstrumentField instrument) {
+        return instrument.PriceTick > 0 ? instrument.PriceTick : 1.0D;
+    }
+
+    synchronized List<CThostFtdcInstrumentField> getInstruments() {
+        var r = new LinkedList<CThostFtdcInstrumentField>();
+        for (var b : this.books.values())
+            r.add(OP.deepCopy(b.instrument));
+        return r;
+    }
+
+    synchronized boolean hasInstrument(String instrID) {
+        return instrID != null && this.books.containsKey(instrID);
+    }
+
+    synchronized CThostFtdcInstrumentMarginRateField getMargin(String instrID) {
+        var b = this.books.get(instrID);
+        return b == null || b.margin == null ? null : OP.deepCopy(b.margin);
+    }
+
+    synchronized CThostFtdcInstrumentCommissionRateField getCommission(
+            String instrID) {
+        var b = this.books.get(instrID);
+        return b == null || b.commission == null ? null : OP.deepCopy(b.commission);
+    }
+
+    synchronized int nextSessionID() {
+        return ++this.sessionID;
+    }
+
+    synchronized void addListener(DepthListener listener) {
+        this.listeners.add(listener);
+    }
+
+    synchronized void removeListener(DepthListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Publish a new depth of a known instrument. Queued orders of the instrument
+     * are matched against it before it is sent to market data APIs.
+     *
+     * @param depth depth market data
+     */
+    public synchronized void publish(CThostFtdcDepthMarketDataField depth) {
+        var book = this.books.get(depth.InstrumentID);
+        if (book == null)
+            throw new IllegalArgumentException(
+                    "unknown instrument " + depth.InstrumentID);
+        var d = OP.deepCopy(depth);
+        if (d.TradingDay == null)
+            d.TradingDay = this.tradingDay;
+        book.depth = d;
+        var iter = book.queue.iterator();
+        while (iter.hasNext()) {
+            var o = iter.next();
+            match(book, o);
+            if (!isQueueing(o.order))
+                iter.remove();
+        }
+        for (var l : this.listeners)
+            l.depthPublished(OP.deepCopy(d));
+    }
+
+    /**
+     * Publish the specified depths one by one at the specified interval.
+     *
+     * @param depths depths to replay
+     * @param interval interval between depths
+     */
+    public synchronized void replay(List<CThostFtdcDepthMarketDataField> depths,
+                                    Duration interval) {
+        stopTicking();
+        var iter = new ArrayList<>(depths).iterator();
+        this.ticking = this.ticker.scheduleAtFixedRate(() -> {
+            synchronized (this) {
+                if (iter.hasNext())
+                    publish(iter.next());
+                else
+                    stopTicking();
+            }
+        }, 0, interval.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Start synthesizing depths of all instruments at the specified interval.
+     * Prices walk one tick at a time from the last depth.
+     *
+     * @param interval interval between depths of an instrument
+     */
+    public synchronized void startTicking(Duration interval) {
+        stopTicking();
+        this.ticking = this.ticker.scheduleAtFixedRate(this::tickAll, 0,
+                interval.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stop synthesizing or replaying depths.
+     */
+    public synchronized void stopTicking() {
+        if (this.ticking != null) {
+            this.ticking.cancel(false);
+            this.ticking = null;
+        }
+    }
+
+    private synchronized void tickAll() {
+        for (var b : new ArrayList<>(this.books.values()))
+            publish(nextDepth(b));
+    }
+
+    private CThostFtdcDepthMarketDataField nextDepth(Book book) {
+        var d = OP.deepCopy(book.depth);
+        var tick = tick(book.instrument);
+        var price = d.LastPrice + (this.random.nextInt(3) - 1) * tick;
+        price = Math.max(d.LowerLimitPrice, Math.min(d.UpperLimitPrice, price));
+        var volume = 1 + this.random.nextInt(10);
+        d.LastPrice = price;
+        d.HighestPrice = Math.max(d.HighestPrice, price);
+        d.LowestPrice = Math.min(d.LowestPrice, price);
+        d.Volume += volume;
+        d.Turnover += price * volume * Math.max(1, book.instrument.VolumeMultiple);
+        d.BidPrice1 = price - tick;
+        d.AskPrice1 = price + tick;
+        d.BidVolume1 = 1 + this.random.nextInt(20);
+        d.AskVolume1 = 1 + this.random.nextInt(20);
+        var now = CachedClock.now();
+        d.ActionDay = now.dayStr;
+        d.UpdateTime = now.timeStr;
+        d.UpdateMillisec = (int) (System.currentTimeMillis() % 1000);
+        return d;
+    }
+
+    /**
+     * Accept a new order. The order is matched at once against the last depth
+     * and the rest is queued.
+     *
+     * @param owner owner of the order
+     * @param input input order
+     * @param frontID front ID of the owner's session
+     * @param sessionID session ID of the owner
+     * @return error message, or {@code null} if the order is accepted
+     */
+    synchronized String insert(OrderOwner owner, CThostFtdcInputOrderField input,
+                               int frontID, int sessionID) {
+        var book = this.books.get(input.InstrumentID);
+        if (book == null)
+            return "instrument not found";
+        if (input.VolumeTotalOriginal <= 0)
+            return "illegal volume";
+        if (input.LimitPrice > book.depth.UpperLimitPrice
+                || input.LimitPrice < book.depth.LowerLimitPrice)
+            return "price out of limits";
+        var key = frontID + ":" + sessionID + ":" + input.OrderRef;
+        if (this.byRef.containsKey(key))
+            return "duplicate order ref";
+        var o = new SimOrder(owner, toOrder(input, frontID, sessionID));
+        o.order.ExchangeID = book.instrument.ExchangeID;
+        this.byRef.put(key, o);
+        this.bySysID.put(o.order.OrderSysID, o);
+        owner.orderUpdated(OP.deepCopy(o.order));
+        match(book, o);
+        if (isQueueing(o.order))
+            book.queue.add(o);
+        return null;
+    }
+
+    /**
+     * Cancel a queued order. The order is found by its order sys ID first, or by
+     * front ID, session ID and order ref.
+     *
+     * @param action action
+     * @return error message, or {@code null} if the order is canceled
+     */
+    synchronized String cancel(CThostFtdcInputOrderActionField action) {
+        SimOrder o = null;
+        if (action.OrderSysID != null && action.OrderSysID.length() > 0)
+            o = this.bySysID.get(action.OrderSysID);
+        else if (action.OrderRef != null)
+            o = this.byRef.get(action.FrontID + ":" + action.SessionID + ":"
+                    + action.OrderRef);
+        if (o == null)
+            return "order not found";
+        if (!isQueueing(o.order))
+            return "order not queueing";
+        var book = this.books.get(o.order.InstrumentID);
+        book.queue.remove(o);
+        var now = CachedClock.now();
+        o.order.OrderStatus = TThostFtdcOrderStatusType.CANCELED;
+        o.order.OrderSubmitStatus = TThostFtdcOrderSubmitStatusType.ACCEPTED;
+        o.order.CancelTime = now.timeStr;
+        o.order.StatusMsg = "canceled";
+        o.owner.orderUpdated(OP.deepCopy(o.order));
+        return null;
+    }
+
+    synchronized List<CThostFtdcOrderField> queryOrders(OrderOwner owner) {
+        var r = new LinkedList<CThostFtdcOrderField>();
+        for (var o : this.bySysID.values())
+            if (o.owner == owner)
+                r.add(OP.deepCopy(o.order));
+        r.sort(Comparator.comparing(o -> Integer.parseInt(o.OrderSysID.trim())));
+        return r;
+    }
+
+    synchronized List<CThostFtdcTradeField> queryTrades(OrderOwner owner) {
+        var r = new LinkedList<CThostFtdcTradeField>();
+        for (var t : this.trades.getOrDefault(owner, Collections.emptyList()))
+            r.add(OP.deepCopy(t));
+        return r;
+    }
+
+    /**
+     * Stop the ticker thread.
+     */
+    public synchronized void close() {
+        stopTicking();
+        this.ticker.shutdownNow();
+    }
+
+    private static boolean isQueueing(CThostFtdcOrderField order) {
+        return order.OrderStatus == TThostFtdcOrderStatusType.NO_TRADE_QUEUEING
+                || order.OrderStatus == TThostFtdcOrderStatusType.PART_TRADED_QUEUEING;
+    }
+
+    private CThostFtdcOrderField toOrder(CThostFtdcInputOrderField input,
+                                         int frontID, int sessionID) {
+        var now = CachedClock.now();
+        var o = new CThostFtdcOrderField();
+        o.BrokerID = input.BrokerID;
+        o.InvestorID = input.InvestorID;
+        o.UserID = input.UserID;
+        o.InstrumentID = input.InstrumentID;
+        o.OrderRef = input.OrderRef;
+        o.Direction = input.Direction;
+        o.CombOffsetFlag = input.CombOffsetFlag;
+        o.CombHedgeFlag = input.CombHedgeFlag;
+        o.OrderPriceType = input.OrderPriceType;
+        o.LimitPrice = input.LimitPrice;
+        o.VolumeTotalOriginal = input.VolumeTotalOriginal;
+        o.TimeCondition = input.TimeCondition;
+        o.VolumeCondition = input.VolumeCondition;
+        o.ContingentCondition = input.ContingentCondition;
+        o.MinVolume = input.MinVolume;
+        o.RequestID = input.RequestID;
+        o.FrontID = frontID;
+        o.SessionID = sessionID;
+        // Right aligned like exchanges do.
+        o.OrderSysID = String.format("%12d", ++this.sysID);
+        o.TradingDay = this.tradingDay;
+        o.InsertDate = now.dayStr;
+        o.InsertTime = now.timeStr;
+        o.VolumeTraded = 0;
+        o.VolumeTotal = o.VolumeTotalOriginal;
+        o.OrderStatus = TThostFtdcOrderStatusType.NO_TRADE_QUEUEING;
+        o.OrderSubmitStatus = TThostFtdcOrderSubmitStatusType.ACCEPTED;
+        o.StatusMsg = "queueing";
+        return o;
+    }
+
+    private void match(Book book, SimOrder o) {
+        var d = book.depth;
+        var order = o.order;
+        double price;
+        int available;
+        if (order.Direction == TThostFtdcDirectionType.DIRECTION_BUY) {
+            if (d.AskVolume1 <= 0 || order.LimitPrice < d.AskPrice1)
+                return;
+            price = d.AskPrice1;
+            available = d.AskVolume1;
+        } else {
+            if (d.BidVolume1 <= 0 || order.LimitPrice > d.BidPrice1)
+                return;
+            price = d.BidPrice1;
+            available = d.BidVolume1;
+        }
+        var volume = Math.min(available, order.VolumeTotal);
+        if (order.Direction == TThostFtdcDirectionType.DIRECTION_BUY)
+            d.AskVolume1 -= volume;
+        else
+            d.BidVolume1 -= volume;
+        order.VolumeTraded += volume;
+        order.VolumeTotal -= volume;
+        if (order.VolumeTotal == 0) {
+            order.OrderStatus = TThostFtdcOrderStatusType.ALL_TRADED;
+            order.StatusMsg = "all traded";
+        } else {
+            order.OrderStatus = TThostFtdcOrderStatusType.PART_TRADED_QUEUEING;
+            order.StatusMsg = "part traded";
+        }
+        var trade = toTrade(order, price, volume);
+        this.trades.computeIfAbsent(o.owner, k -> new LinkedList<>()).add(trade);
+        o.owner.orderUpdated(OP.deepCopy(order));
+        o.owner.tradeUpdated(OP.deepCopy(trade));
+    }
+
+    private CThostFtdcTradeField toTrade(CThostFtdcOrderField order, double price,
+                                         int volume) {
+        var now = CachedClock.now();
+        var t = new CThostFtdcTradeField();
+        t.BrokerID = order.BrokerID;
+        t.InvestorID = order.InvestorID;
+        t.UserID = order.UserID;
+        t.InstrumentID = order.InstrumentID;
+        t.ExchangeID = order.ExchangeID;
+        t.OrderRef = order.OrderRef;
+        t.OrderSysID = order.OrderSysID;
+        t.TradeID = String.format("%12d", ++this.tradeID);
+        t.Direction = order.Direction;
+        t.OffsetFlag = order.CombOffsetFlag;
+        t.HedgeFlag = order.CombHedgeFlag;
+        t.Price = price;
+        t.Volume = volume;
+        t.TradingDay = this.tradingDay;
+        t.TradeDate = now.dayStr;
+        t.TradeTime = now.timeStr;
+        return t;
+    }
+}
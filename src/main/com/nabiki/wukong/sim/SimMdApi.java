@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.sim;
+
+import com.nabiki.ctp4j.jni.flag.TThostFtdcErrorCode;
+import com.nabiki.ctp4j.jni.struct.*;
+import com.nabiki.ctp4j.md.CThostFtdcMdApi;
+import com.nabiki.ctp4j.md.CThostFtdcMdSpi;
+import com.nabiki.wukong.tools.CachedClock;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Market data API over a {@link SimExchange}, in place of a CTP front. After
+ * login, depths published by the exchange are delivered for subscribed
+ * instruments on a single SPI thread after the configured latency.
+ */
+public class SimMdApi extends CThostFtdcMdApi
+        implements SimExchange.DepthListener {
+    private final SimExchange exchange;
+    private final long latency;
+    private final ScheduledExecutorService spiThread
+            = Executors.newSingleThreadScheduledExecutor(r -> {
+                var t = new Thread(r, "sim-md-spi");
+                t.setDaemon(true);
+                return t;
+            });
+    private final Set<String> subscribed = ConcurrentHashMap.newKeySet();
+
+    private volatile CThostFtdcMdSpi spi;
+    private volatile boolean connected = false, login = false;
+
+    public SimMdApi(SimExchange exchange) {
+        this(exchange, Duration.ZERO);
+    }
+
+    public SimMdApi(SimExchange exchange, Duration latency) {
+        this.exchange = exchange;
+        this.latency = latency.toNanos();
+    }
+
+    private void callback(Runnable task) {
+        if (this.spiThread.isShutdown())
+            return;
+        this.spiThread.schedule(() -> {
+            if (this.spi != null)
+                task.run();
+        }, this.latency, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void depthPublished(CThostFtdcDepthMarketDataField depth) {
+        if (this.login && this.subscribed.contains(depth.InstrumentID))
+            callback(() -> this.spi.OnRtnDepthMarketData(depth));
+    }
+
+    @Override
+    public String GetTradingDay() {
+        return this.login ? this.exchange.getTradingDay() : null;
+    }
+
+    @Override
+    public void Init() {
+        this.connected = true;
+        this.exchange.addListener(this);
+        callback(() -> this.spi.OnFrontConnected());
+    }
+
+    @Override
+    public int Join() {
+        try {
+            while (!this.spiThread.awaitTermination(1, TimeUnit.DAYS));
+            return 0;
+        } catch (InterruptedException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void RegisterFront(String frontAddress) {
+    }
+
+    @Override
+    public void RegisterSpi(CThostFtdcMdSpi spi) {
+        this.spi = spi;
+    }
+
+    @Override
+    public void Release() {
+        this.connected = false;
+        this.login = false;
+        this.exchange.removeListener(this);
+        this.spiThread.shutdownNow();
+    }
+
+    /**
+     * Disconnect the session and notify SPI, as if the front was lost. The
+     * subscription is lost too. Call {@link #Init()} to connect again.
+     *
+     * @param reason reason code passed to SPI
+     */
+    public void disconnect(int reason) {
+        this.connected = false;
+        this.login = false;
+        this.subscribed.clear();
+        this.exchange.removeListener(this);
+        callback(() -> this.spi.OnFrontDisconnected(reason));
+    }
+
+    @Override
+    public int ReqUserLogin(CThostFtdcReqUserLoginField req, int requestID) {
+        if (!this.connected)
+            return -1;
+        this.login = true;
+        var rsp = new CThostFtdcRspUserLoginField();
+        rsp.BrokerID = req.BrokerID;
+        rsp.UserID = req.UserID;
+        rsp.TradingDay = this.exchange.getTradingDay();
+        rsp.LoginTime = CachedClock.getTime();
+        rsp.SystemName = "sim";
+        callback(() -> this.spi.OnRspUserLogin(rsp, SimTraderApi.ok(), requestID,
+                true));
+        return 0;
+    }
+
+    @Override
+    public int ReqUserLogout(CThostFtdcUserLogoutField req, int requestID) {
+        if (!this.connected)
+            return -1;
+        this.login = false;
+        var rsp = new CThostFtdcUserLogoutField();
+        rsp.BrokerID = req.BrokerID;
+        rsp.UserID = req.UserID;
+        callback(() -> this.spi.OnRspUserLogout(rsp, SimTraderApi.ok(), requestID,
+                true));
+        return 0;
+    }
+
+    @Override
+    public int SubscribeMarketData(String[] instrumentIDs, int count) {
+        if (!this.connected)
+            return -1;
+        for (int i = 0; i < count; ++i) {
+            var rsp = new CThostFtdcSpecificInstrumentField();
+            rsp.InstrumentID = instrumentIDs[i];
+            var last = i == count - 1;
+            if (this.exchange.hasInstrument(instrumentIDs[i])) {
+                this.subscribed.add(instrumentIDs[i]);
+                callback(() -> this.spi.OnRspSubMarketData(rsp, SimTraderApi.ok(),
+                        0, last));
+            } else
+                callback(() -> this.spi.OnRspSubMarketData(rsp,
+                        SimTraderApi.rspInfo(
+                                TThostFtdcErrorCode.INCONSISTENT_INFORMATION,
+                                "instrument not found"), 0, last));
+        }
+        return 0;
+    }
+
+    @Override
+    public int UnSubscribeMarketData(String[] instrumentIDs, int count) {
+        if (!this.connected)
+            return -1;
+        for (int i = 0; i < count; ++i) {
+            var rsp = new CThostFtdcSpecificInstrumentField();
+            rsp.InstrumentID = instrumentIDs[i];
+            var last = i == count - 1;
+            this.subscribed.remove(instrumentIDs[i]);
+            callback(() -> this.spi.OnRspUnSubMarketData(rsp, SimTraderApi.ok(),
+                    0, last));
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.sim;
+
+import com.nabiki.ctp4j.jni.flag.TThostFtdcErrorCode;
+import com.nabiki.ctp4j.jni.struct.*;
+import com.nabiki.ctp4j.trader.CThostFtdcTraderApi;
+import com.nabiki.ctp4j.trader.CThostFtdcTraderSpi;
+import com.nabiki.wukong.tools.CachedClock;
+import com.nabiki.wukong.tools.OP;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Trader API over a {@link SimExchange}, in place of a CTP front. Requests are
+ * handled at once and callbacks are delivered to the SPI on a single thread after
+ * the configured latency, in the order they happen, like a real front does.
+ *
+ * <p>Authentication, login and settlement confirm always succeed. Orders go to
+ * the exchange and are matched there. Queries return the exchange's instruments
+ * and rates, and orders and trades of this session.
+ * </p>
+ */
+public class SimTraderApi extends CThostFtdcTraderApi
+        implements SimExchange.OrderOwner {
+    private static final int FRONT_ID = 1;
+
+    private final SimExchange exchange;
+    private final long latency;
+    private final ScheduledExecutorService spiThread
+            = Executors.newSingleThreadScheduledExecutor(r -> {
+                var t = new Thread(r, "sim-trader-spi");
+                t.setDaemon(true);
+                return t;
+            });
+    private final AtomicInteger maxOrderRef = new AtomicInteger(0);
+
+    private volatile CThostFtdcTraderSpi spi;
+    private volatile boolean connected = false, login = false;
+    private volatile int sessionID;
+
+    public SimTraderApi(SimExchange exchange) {
+        this(exchange, Duration.ZERO);
+    }
+
+    public SimTraderApi(SimExchange exchange, Duration latency) {
+        this.exchange = exchange;
+        this.latency = latency.toNanos();
+    }
+
+    private void callback(Runnable task) {
+        if (this.spiThread.isShutdown())
+            return;
+        this.spiThread.schedule(() -> {
+            var s = this.spi;
+            if (s != null)
+                task.run();
+        }, this.latency, TimeUnit.NANOSECONDS);
+    }
+
+    static CThostFtdcRspInfoField rspInfo(int code, String msg) {
+        var r = new CThostFtdcRspInfoField();
+        r.ErrorID = code;
+        r.ErrorMsg = msg;
+        return r;
+    }
+
+    static CThostFtdcRspInfoField ok() {
+        return rspInfo(TThostFtdcErrorCode.NONE, "ok");
+    }
+
+    @Override
+    public void orderUpdated(CThostFtdcOrderField order) {
+        // Returns are lost when disconnected, as on a real front.
+        if (this.connected)
+            callback(() -> this.spi.OnRtnOrder(order));
+    }
+
+    @Override
+    public void tradeUpdated(CThostFtdcTradeField trade) {
+        if (this.connected)
+            callback(() -> this.spi.OnRtnTrade(trade));
+    }
+
+    @Override
+    public String GetApiVersion() {
+        return "sim";
+    }
+
+    @Override
+    public String GetTradingDay() {
+        return this.login ? this.exchange.getTradingDay() : null;
+    }
+
+    @Override
+    public void Init() {
+        this.connected = true;
+        this.sessionID = this.exchange.nextSessionID();
+        callback(() -> this.spi.OnFrontConnected());
+    }
+
+    @Override
+    public int Join() {
+        try {
+            while (!this.spiThread.awaitTermination(1, TimeUnit.DAYS));
+            return 0;
+        } catch (InterruptedException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void RegisterFront(String frontAddress) {
+    }
+
+    @Override
+    public void RegisterSpi(CThostFtdcTraderSpi spi) {
+        this.spi = spi;
+    }
+
+    @Override
+    public void Release() {
+        this.connected = false;
+        this.login = false;
+        this.spiThread.shutdownNow();
+    }
+
+    /**
+     * Disconnect the session and notify SPI, as if the front was lost. Returns
+     * of orders and trades are lost until {@link #Init()} connects again.
+     *
+     * @param reason reason code passed to SPI
+     */
+    public void disconnect(int reason) {
+        this.connected = false;
+        this.login = false;
+        callback(() -> this.spi.OnFrontDisconnected(reason));
+    }
+
+    @Override
+    public void SubscribePrivateTopic(int type) {
+    }
+
+    @Override
+    public void SubscribePublicTopic(int type) {
+    }
+
+    @Override
+    public int ReqAuthenticate(CThostFtdcReqAuthenticateField req, int requestID) {
+        if (!this.connected)
+            return -1;
+        var rsp = new CThostFtdcRspAuthenticateField();
+        rsp.BrokerID = req.BrokerID;
+        rsp.UserID = req.UserID;
+        rsp.AppID = req.AppID;
+        rsp.UserProductInfo = req.UserProductInfo;
+        callback(() -> this.spi.OnRspAuthenticate(rsp, ok(), requestID, true));
+        return 0;
+    }
+
+    @Override
+    public int ReqUserLogin(CThostFtdcReqUserLoginField req, int requestID) {
+        if (!this.connected)
+            return -1;
+        this.login = true;
+        var now = CachedClock.now();
+        var rsp = new CThostFtdcRspUserLoginField();
+        rsp.BrokerID = req.BrokerID;
+        rsp.UserID = req.UserID;
+        rsp.TradingDay = this.exchange.getTradingDay();
+        rsp.LoginTime = now.timeStr;
+        rsp.SystemName = "sim";
+        rsp.FrontID = FRONT_ID;
+        rsp.SessionID = this.sessionID;
+        rsp.MaxOrderRef = String.valueOf(this.maxOrderRef.get());
+        callback(() -> this.spi.OnRspUserLogin(rsp, ok(), requestID, true));
+        return 0;
+    }
+
+    @Override
+    public int ReqUserLogout(CThostFtdcUserLogoutField req, int requestID) {
+        if (!this.connected)
+            return -1;
+        this.login = false;
+        var rsp = new CThostFtdcUserLogoutField();
+        rsp.BrokerID = req.BrokerID;
+        rsp.UserID = req.UserID;
+        callback(() -> this.spi.OnRspUserLogout(rsp, ok(), requestID, true));
+        return 0;
+    }
+
+    @Override
+    public int ReqSettlementInfoConfirm(CThostFtdcSettlementInfoConfirmField req,
+                                        int requestID) {
+        if (!this.connected)
+            return -1;
+        var now = CachedClock.now();
+        var rsp = OP.deepCopy(req);
+        rsp.ConfirmDate = now.dayStr;
+        rsp.ConfirmTime = now.timeStr;
+        callback(() -> this.spi.OnRspSettlementInfoConfirm(rsp, ok(), requestID,
+                true));
+        return 0;
+    }
+
+    @Override
+    public int ReqOrderInsert(CThostFtdcInputOrderField req, int requestID) {
+        if (!this.connected)
+            return -1;
+        var order = OP.deepCopy(req);
+        order.RequestID = requestID;
+        try {
+            this.maxOrderRef.accumulateAndGet(
+                    Integer.parseInt(order.OrderRef.trim()), Math::max);
+        } catch (NumberFormatException | NullPointerException ignored) {
+        }
+        if (!this.login) {
+            callback(() -> this.spi.OnRspOrderInsert(order, rspInfo(
+                    TThostFtdcErrorCode.NOT_INITED, "not login"), requestID,
+                    true));
+            return 0;
+        }
+        var err = this.exchange.insert(this, order, FRONT_ID, this.sessionID);
+        if (err != null)
+            callback(() -> this.spi.OnRspOrderInsert(order, rspInfo(
+                    TThostFtdcErrorCode.INCONSISTENT_INFORMATION, err),
+                    requestID, true));
+        return 0;
+    }
+
+    @Override
+    public int ReqOrderAction(CThostFtdcInputOrderActionField req, int requestID) {
+        if (!this.connected)
+            return -1;
+        var action = OP.deepCopy(req);
+        action.RequestID = requestID;
+        String err;
+        if (!this.login)
+            err = "not login";
+        else
+            err = this.exchange.cancel(action);
+        if (err != null)
+            callback(() -> this.spi.OnRspOrderAction(action, rspInfo(
+                    TThostFtdcErrorCode.ORDER_NOT_FOUND, err), requestID, true));
+        return 0;
+    }
+
+    @Override
+    public int ReqQryInstrument(CThostFtdcQryInstrumentField req, int requestID) {
+        if (!this.connected)
+            return -1;
+        var instruments = this.exchange.getInstruments();
+        if (req.InstrumentID != null && req.InstrumentID.length() > 0)
+            instruments.removeIf(i -> !i.InstrumentID.equals(req.InstrumentID));
+        respond(instruments, (i, last) -> this.spi.OnRspQryInstrument(i, ok(),
+                requestID, last), () -> this.spi.OnRspQryInstrument(null, rspInfo(
+                TThostFtdcErrorCode.INCONSISTENT_INFORMATION,
+                "instrument not found"), requestID, true));
+        return 0;
+    }
+
+    @Override
+    public int ReqQryInstrumentMarginRate(
+            CThostFtdcQryInstrumentMarginRateField req, int requestID) {
+        if (!this.connected)
+            return -1;
+        var margin = this.exchange.getMargin(req.InstrumentID);
+        if (margin != null)
+            callback(() -> this.spi.OnRspQryInstrumentMarginRate(margin, ok(),
+                    requestID, true));
+        else
+            callback(() -> this.spi.OnRspQryInstrumentMarginRate(null, rspInfo(
+                    TThostFtdcErrorCode.INCONSISTENT_INFORMATION,
+                    "margin not found"), requestID, true));
+        return 0;
+    }
+
+    @Override
+    public int ReqQryInstrumentCommissionRate(
+            CThostFtdcQryInstrumentCommissionRateField req, int requestID) {
+        if (!this.connected)
+            return -1;
+        var comm = this.exchange.getCommission(req.InstrumentID);
+        if (comm != null)
+            callback(() -> this.spi.OnRspQryInstrumentCommissionRate(comm, ok(),
+                    requestID, true));
+        else
+            callback(() -> this.spi.OnRspQryInstrumentCommissionRate(null,
+                    rspInfo(TThostFtdcErrorCode.INCONSISTENT_INFORMATION,
+                            "commission not found"), requestID, true));
+        return 0;
+    }
+
+    @Override
+    public int ReqQryOrder(CThostFtdcQryOrderField req, int requestID) {
+        if (!this.connected)
+            return -1;
+        respond(this.exchange.queryOrders(this), (o, last) -> this.spi.OnRspQryOrder(
+                o, ok(), requestID, last), () -> this.spi.OnRspQryOrder(null, ok(),
+                requestID, true));
+        return 0;
+    }
+
+    @Override
+    public int ReqQryTrade(CThostFtdcQryTradeField req, int requestID) {
+        if (!this.connected)
+            return -1;
+        respond(this.exchange.queryTrades(this), (t, last) -> this.spi.OnRspQryTrade(
+                t, ok(), requestID, last), () -> this.spi.OnRspQryTrade(null, ok(),
+                requestID, true));
+        return 0;
+    }
+
+    private interface Responder<T> {
+        void respond(T obj, boolean last);
+    }
+
+    private <T> void respond(List<T> list, Responder<T> responder, Runnable empty) {
+        if (list.isEmpty()) {
+            callback(empty);
+            return;
+        }
+        var iter = list.iterator();
+        while (iter.hasNext()) {
+            var obj = iter.next();
+            var last = !iter.hasNext();
+            callback(() -> responder.respond(obj, last));
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.tools;
+
+import com.nabiki.wukong.metric.Metrics;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Asynchronous log for hot paths. Callers put the parts of a log into a slot of
+ * a pre-allocated ring buffer and return, and a writer thread formats the slot
+ * the same way as {@link OP#formatLog(String, String, String, Integer)} and
+ * publishes it to the underlying {@link Logger}.
+ *
+ * <p>Logging allocates nothing on the caller's thread and never blocks it. If
+ * the buffer is full during a burst, the log is dropped and counted in the
+ * metric counter {@code log.dropped} instead of slowing down the caller.
+ * </p>
+ */
+public class AsyncLog implements Runnable {
+    private static final long NO_CODE = Long.MIN_VALUE;
+    private static final LongAdder allDropped = Metrics.counter("log.dropped");
+
+    private final Logger logger;
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(0);
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    private final StringBuilder buffer = new StringBuilder(256);
+    private long tail = 0;
+    private volatile boolean stopped = false;
+
+    private static class Slot {
+        // Position of the log in the slot plus one when the slot is filled, or
+        // position of the next log to fill the slot.
+        final AtomicLong seq;
+        Level level;
+        long millis, code;
+        String hint, orderRef, errMsg;
+
+        Slot(long seq) {
+            this.seq = new AtomicLong(seq);
+        }
+    }
+
+    /**
+     * Create asynchronous log on the specified logger. The capacity is rounded
+     * up to a power of two.
+     *
+     * @param logger underlying logger
+     * @param capacity max number of logs waiting to be written
+     */
+    public AsyncLog(Logger logger, int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity less than 1");
+        var size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+            size <<= 1;
+        this.logger = logger;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; ++i)
+            this.slots[i] = new Slot(i);
+        this.mask = size - 1;
+        this.writer = Workers.newIoThread("async-log", this);
+        this.writer.start();
+    }
+
+    public void severe(String hint, String orderRef, String errMsg) {
+        put(Level.SEVERE, hint, orderRef, errMsg, NO_CODE);
+    }
+
+    public void severe(String hint, String orderRef, String errMsg, int errCode) {
+        put(Level.SEVERE, hint, orderRef, errMsg, errCode);
+    }
+
+    public void warning(String hint, String orderRef, String errMsg) {
+        put(Level.WARNING, hint, orderRef, errMsg, NO_CODE);
+    }
+
+    public void warning(String hint, String orderRef, String errMsg, int errCode) {
+        put(Level.WARNING, hint, orderRef, errMsg, errCode);
+    }
+
+    public void info(String hint, String orderRef, String errMsg) {
+        put(Level.INFO, hint, orderRef, errMsg, NO_CODE);
+    }
+
+    public void info(String hint, String orderRef, String errMsg, int errCode) {
+        put(Level.INFO, hint, orderRef, errMsg, errCode);
+    }
+
+    private void put(Level level, String hint, String orderRef, String errMsg,
+                     long code) {
+        if (!this.logger.isLoggable(level))
+            return;
+        Slot slot;
+        long pos;
+        while (true) {
+            pos = this.head.get();
+            slot = this.slots[(int) (pos & this.mask)];
+            var diff = slot.seq.get() - pos;
+            if (diff < 0) {
+                // Writer hasn't freed the slot, buffer is full.
+                this.dropped.increment();
+                allDropped.increment();
+                return;
+            } else if (diff == 0 && this.head.compareAndSet(pos, pos + 1))
+                break;
+        }
+        slot.level = level;
+        slot.millis = System.currentTimeMillis();
+        slot.hint = hint;
+        slot.orderRef = orderRef;
+        slot.errMsg = errMsg;
+        slot.code = code;
+        slot.seq.set(pos + 1);
+    }
+
+    @Override
+    public void run() {
+        while (!this.stopped || this.head.get() != this.tail) {
+            if (!drain())
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    // Called by writer thread only.
+    private boolean drain() {
+        boolean any = false;
+        while (true) {
+            var slot = this.slots[(int) (this.tail & this.mask)];
+            if (slot.seq.get() != this.tail + 1)
+                return any;
+            var r = new LogRecord(slot.level, format(slot));
+            r.setInstant(Instant.ofEpochMilli(slot.millis));
+            r.setLoggerName(this.logger.getName());
+            // Release references before freeing the slot.
+            slot.hint = slot.orderRef = slot.errMsg = null;
+            slot.seq.set(this.tail + this.slots.length);
+            ++this.tail;
+            any = true;
+            try {
+                this.logger.log(r);
+            } catch (Throwable ignored) {
+            }
+        }
+    }
+
+    private String format(Slot slot) {
+        // Same as OP.formatLog.
+        this.buffer.setLength(0);
+        this.buffer.append(slot.hint).append('[').append(slot.orderRef)
+                .append(']').append(slot.errMsg).append('(');
+        if (slot.code == NO_CODE)
+            this.buffer.append("null");
+        else
+            this.buffer.append(slot.code);
+        return this.buffer.append(')').toString();
+    }
+
+    /**
+     * Get number of logs dropped because the buffer is full.
+     *
+     * @return number of dropped logs
+     */
+    public long getDropped() {
+        return this.dropped.sum();
+    }
+
+    /**
+     * Write all logs in buffer and stop the writer. Logs after the call are
+     * dropped.
+     *
+     * @throws InterruptedException if interrupted while waiting for the writer
+     */
+    public void close() throws InterruptedException {
+        this.stopped = true;
+        this.writer.join();
+    }
+}
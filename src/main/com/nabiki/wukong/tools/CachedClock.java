@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.tools;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * {@code CachedClock} keeps string representations of the local day and time
+ * that are refreshed at most once a second. Callers on hot paths, like candle
+ * updates and flow writers, read the cached strings instead of formatting
+ * {@code LocalDate.now()} on every call.
+ *
+ * <p>The day string is only rebuilt when the day changes. All fields of a
+ * refresh are published together, so a caller never sees the day of one second
+ * with the time of another.
+ * </p>
+ */
+public class CachedClock {
+    /**
+     * Immutable view of the clock at a whole second.
+     */
+    public static class Tick {
+        public final long epochSecond;
+        public final long epochDay;
+        public final int day, secondOfDay;
+        public final String dayStr, timeStr, stamp;
+
+        Tick(long epochSecond, long epochDay, int day, int secondOfDay,
+             String dayStr, String timeStr) {
+            this.epochSecond = epochSecond;
+            this.epochDay = epochDay;
+            this.day = day;
+            this.secondOfDay = secondOfDay;
+            this.dayStr = dayStr;
+            this.timeStr = timeStr;
+            // yyyyMMdd_HHmmss
+            this.stamp = dayStr + "_" + timeStr.substring(0, 2)
+                    + timeStr.substring(3, 5) + timeStr.substring(6, 8);
+        }
+    }
+
+    private static volatile Tick tick = build(System.currentTimeMillis() / 1000,
+            null);
+
+    private static Tick build(long epochSecond, Tick prev) {
+        var zone = ZoneId.systemDefault();
+        var offset = zone.getRules().getOffset(Instant.ofEpochSecond(epochSecond));
+        var local = LocalDateTime.ofEpochSecond(epochSecond, 0, offset);
+        var epochDay = local.toLocalDate().toEpochDay();
+        int day;
+        String dayStr;
+        if (prev != null && prev.epochDay == epochDay) {
+            day = prev.day;
+            dayStr = prev.dayStr;
+        } else {
+            day = local.getYear() * 10000 + local.getMonthValue() * 100
+                    + local.getDayOfMonth();
+            dayStr = String.valueOf(day);
+        }
+        var sec = local.toLocalTime().toSecondOfDay();
+        return new Tick(epochSecond, epochDay, day, sec, dayStr, timeString(sec));
+    }
+
+    private static String timeString(int secondOfDay) {
+        var h = secondOfDay / 3600;
+        var m = secondOfDay / 60 % 60;
+        var s = secondOfDay % 60;
+        return new String(new char[]{
+                (char) ('0' + h / 10), (char) ('0' + h % 10), ':',
+                (char) ('0' + m / 10), (char) ('0' + m % 10), ':',
+                (char) ('0' + s / 10), (char) ('0' + s % 10)});
+    }
+
+    /**
+     * Get the clock at the specified epoch second. If the second differs from the
+     * cached one, the cache is refreshed.
+     *
+     * @param epochSecond seconds from epoch
+     * @return clock at the second
+     */
+    @OutTeam
+    public static Tick at(long epochSecond) {
+        var t = tick;
+        if (t.epochSecond == epochSecond)
+            return t;
+        // Concurrent refreshes build equal ticks, and the last write wins.
+        t = build(epochSecond, t);
+        tick = t;
+        return t;
+    }
+
+    /**
+     * Get the clock now.
+     *
+     * @return clock now
+     */
+    @OutTeam
+    public static Tick now() {
+        return at(System.currentTimeMillis() / 1000);
+    }
+
+    /**
+     * Get today's string in {@code yyyyMMdd}.
+     *
+     * @return today's string
+     */
+    @OutTeam
+    public static String getDay() {
+        return now().dayStr;
+    }
+
+    /**
+     * Get now's time string in {@code HH:mm:ss}.
+     *
+     * @return time string
+     */
+    @OutTeam
+    public static String getTime() {
+        return now().timeStr;
+    }
+
+    /**
+     * Get today as an integer {@code yyyymmdd}.
+     *
+     * @return today as integer
+     */
+    @OutTeam
+    public static int getDayInt() {
+        return now().day;
+    }
+
+    /**
+     * Get seconds of day now.
+     *
+     * @return seconds of day
+     */
+    @OutTeam
+    public static int getSecondOfDay() {
+        return now().secondOfDay;
+    }
+}
@@ -32,6 +32,7 @@ import java.io.*;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -44,9 +45,18 @@ import java.util.concurrent.ConcurrentHashMap;
  * </p>
  */
 public class EasyFile {
+    // Guard structural changes of all trees, they are rare.
+    private static final Object treeLock = new Object();
+
     private final String path;
     private final Boolean isFile;
     private final Map<String, EasyFile> files = new ConcurrentHashMap<>();
+    // Key -> all objects with the key in this subtree. Sets are replaced, not
+    // modified, so lookups needn't lock.
+    private final Map<String, Set<EasyFile>> flat = new ConcurrentHashMap<>();
+    // Key -> relative path, content of the .index file.
+    private final Map<String, String> index = new LinkedHashMap<>();
+    private EasyFile parent;
 
     /**
      * Construct an file on the specified path.
@@ -86,11 +96,12 @@ public class EasyFile {
                     // touched by this class.
                     return;
                 }
+                this.index.putAll(m);
                 for (var entry : m.entrySet()) {
                     var p = Path.of(this.path, entry.getValue());
                     if (!p.toFile().exists())
                         throw new IOException("file missing " + p.toString());
-                    this.files.put(entry.getKey(),
+                    link(entry.getKey(),
                             new EasyFile(p.toString(), p.toFile().isFile()));
                 }
             }
@@ -135,19 +146,86 @@ public class EasyFile {
         return line;
     }
 
+    /*
+    Rewrite the whole index if the key is new or its path changes. The index is
+    written to a temporary file first, then moved to replace the old one.
+    */
     private void writeIndex(String key, String relPath) throws IOException {
-        var indexPath = Path.of(this.path, ".index");
-        synchronized (this) {
-            try (FileWriter fw
-                         = new FileWriter(indexPath.toFile(), true)) {
-                fw.write(key);
-                fw.write(System.lineSeparator());
-                fw.write(relPath);
-                fw.write(System.lineSeparator());
+        synchronized (this.index) {
+            var old = this.index.put(key, relPath);
+            if (old != null && old.compareTo(relPath) == 0)
+                return;
+            var indexPath = Path.of(this.path, ".index");
+            var tmp = Path.of(this.path, ".index.tmp");
+            try (FileWriter fw = new FileWriter(tmp.toFile(), false)) {
+                for (var e : this.index.entrySet()) {
+                    fw.write(e.getKey());
+                    fw.write(System.lineSeparator());
+                    fw.write(e.getValue());
+                    fw.write(System.lineSeparator());
+                }
+            }
+            Files.move(tmp, indexPath, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /*
+    Put the child under the key, and update flattened index of this object and
+    all its ancestors.
+    */
+    private void link(String key, EasyFile child) {
+        synchronized (treeLock) {
+            var old = this.files.put(key, child);
+            child.parent = this;
+            for (var p = this; p != null; p = p.parent) {
+                if (old != null)
+                    p.unflatten(key, old);
+                p.flatten(key, child);
             }
         }
     }
 
+    private void flatten(String key, EasyFile child) {
+        addFlat(key, Collections.singleton(child));
+        for (var e : child.flat.entrySet())
+            addFlat(e.getKey(), e.getValue());
+    }
+
+    private void unflatten(String key, EasyFile child) {
+        removeFlat(key, Collections.singleton(child));
+        for (var e : child.flat.entrySet())
+            removeFlat(e.getKey(), e.getValue());
+    }
+
+    private void addFlat(String key, Set<EasyFile> objs) {
+        var s = new HashSet<EasyFile>(this.flat.getOrDefault(key,
+                Collections.emptySet()));
+        s.addAll(objs);
+        this.flat.put(key, Collections.unmodifiableSet(s));
+    }
+
+    private void removeFlat(String key, Set<EasyFile> objs) {
+        var s = new HashSet<EasyFile>(this.flat.getOrDefault(key,
+                Collections.emptySet()));
+        s.removeAll(objs);
+        if (s.isEmpty())
+            this.flat.remove(key);
+        else
+            this.flat.put(key, Collections.unmodifiableSet(s));
+    }
+
+    /*
+    Get the child under the key if it is already the specified path and type.
+    */
+    private EasyFile existing(String key, String absPath, boolean isFile) {
+        var f = this.files.get(key);
+        if (f != null && f.isFile == isFile && f.path.compareTo(absPath) == 0)
+            return f;
+        else
+            return null;
+    }
+
     private String concatPath(String... ps) {
         String r = "";
         switch (ps.length) {
@@ -179,10 +257,18 @@ public class EasyFile {
      */
     @OutTeam
     public EasyFile setDirectory(String key, String... relPath) throws IOException {
+        return set(key, false, relPath);
+    }
+
+    private EasyFile set(String key, boolean isFile, String... relPath)
+            throws IOException {
         checkDir();
-        this.files.put(key, new EasyFile(
-                Path.of(this.path, relPath).toAbsolutePath().toString(),
-                false));
+        var absPath = Path.of(this.path, relPath).toAbsolutePath().toString();
+        // Already registered, don't scan the disk again.
+        if (existing(key, absPath, isFile) != null
+                && Files.exists(Path.of(absPath)))
+            return this;
+        link(key, new EasyFile(absPath, isFile));
         writeIndex(key, concatPath(relPath));
         return this;
     }
@@ -199,12 +285,7 @@ public class EasyFile {
      */
     @OutTeam
     public EasyFile setFile(String key, String... relPath) throws IOException {
-        checkDir();
-        this.files.put(key, new EasyFile(
-                Path.of(this.path, relPath).toAbsolutePath().toString(),
-                true));
-        writeIndex(key, concatPath(relPath));
-        return this;
+        return set(key, true, relPath);
     }
 
     /**
@@ -220,21 +301,15 @@ public class EasyFile {
     }
 
     /**
-     * Search for object with the specified key recursively.
+     * Search for object with the specified key recursively. The lookup reads the
+     * flattened index kept in memory and doesn't walk the tree.
      *
      * @param key key of the object
      * @return {@link Collection} of {@link EasyFile} objects with the specified key
      */
     @OutTeam
     public Collection<EasyFile> recursiveGet(String key) {
-        var r = new HashSet<EasyFile>();
-        var f0 = this.files.get(key);
-        if (f0 != null)
-            r.add(f0);
-        for (var v : this.files.values())
-            if (!v.isFile())
-                r.addAll(v.recursiveGet(key));
-        return r;
+        return new HashSet<>(this.flat.getOrDefault(key, Collections.emptySet()));
     }
 
     /**
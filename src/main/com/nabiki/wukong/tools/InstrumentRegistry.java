@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.tools;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * {@code InstrumentRegistry} interns instrument IDs into dense integer handles.
+ * A handle is assigned on the first sight of an instrument and never changes
+ * until the process exits, so subsystems can keep instrument data in arrays
+ * indexed by handle instead of hashing strings on every tick.
+ *
+ * <p>Product ID of each instrument is computed once on registration.
+ * </p>
+ */
+public class InstrumentRegistry {
+    private static final Pattern productPattern = Pattern.compile("[a-zA-Z]+");
+    private static final Map<String, Integer> handles = new ConcurrentHashMap<>();
+
+    // Arrays are replaced on growth, and always written before the handle is
+    // published in the map, so a reader holding a handle sees its slot.
+    private static volatile String[] instrIDs = new String[256];
+    private static volatile String[] productIDs = new String[256];
+    private static int count = 0;
+
+    /**
+     * Get handle of the specified instrument. If the instrument is not registered,
+     * register it and assign a new handle.
+     *
+     * @param instrID instrument ID
+     * @return handle of the instrument
+     */
+    @OutTeam
+    public static int getHandle(String instrID) {
+        if (instrID == null)
+            throw new NullPointerException("instrument ID null");
+        var h = handles.get(instrID);
+        if (h != null)
+            return h;
+        synchronized (handles) {
+            h = handles.get(instrID);
+            if (h != null)
+                return h;
+            if (count >= instrIDs.length) {
+                var newLen = instrIDs.length << 1;
+                productIDs = Arrays.copyOf(productIDs, newLen);
+                instrIDs = Arrays.copyOf(instrIDs, newLen);
+            }
+            var product = parseProductID(instrID);
+            var products = productIDs;
+            var instruments = instrIDs;
+            products[count] = product;
+            instruments[count] = instrID;
+            // Publish arrays again so readers see the new slot.
+            productIDs = products;
+            instrIDs = instruments;
+            handles.put(instrID, count);
+            return count++;
+        }
+    }
+
+    /**
+     * Find handle of the specified instrument without registering it.
+     *
+     * @param instrID instrument ID
+     * @return handle of the instrument, or {@code -1} if it is not registered
+     */
+    @OutTeam
+    public static int findHandle(String instrID) {
+        if (instrID == null)
+            return -1;
+        var h = handles.get(instrID);
+        return h == null ? -1 : h;
+    }
+
+    /**
+     * Get instrument ID of the specified handle.
+     *
+     * @param handle handle of instrument
+     * @return instrument ID, or {@code null} if the handle is not assigned
+     */
+    @OutTeam
+    public static String getInstrID(int handle) {
+        var a = instrIDs;
+        return handle >= 0 && handle < a.length ? a[handle] : null;
+    }
+
+    /**
+     * Get product ID of the specified handle.
+     *
+     * @param handle handle of instrument
+     * @return product ID in lower case, or {@code null} if the handle is not
+     * assigned or the instrument ID has no product part
+     */
+    @OutTeam
+    public static String getProductID(int handle) {
+        var a = productIDs;
+        return handle >= 0 && handle < a.length ? a[handle] : null;
+    }
+
+    /**
+     * Get number of registered instruments. All handles are less than the number.
+     *
+     * @return number of registered instruments
+     */
+    @OutTeam
+    public static int size() {
+        synchronized (handles) {
+            return count;
+        }
+    }
+
+    private static String parseProductID(String instrID) {
+        var m = productPattern.matcher(instrID);
+        if (m.find())
+            return instrID.substring(m.start(), m.end()).toLowerCase();
+        else
+            return null;
+    }
+}
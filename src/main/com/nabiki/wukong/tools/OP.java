@@ -38,9 +38,10 @@ import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.regex.Pattern;
 
 public class OP {
     /**
@@ -89,17 +90,18 @@ public class OP {
             return Duration.ZERO;
     }
 
-    // Instrument product ID pattern.
-    private static final Pattern productPattern = Pattern.compile("[a-zA-Z]+");
-
     // GSON.
-    private final static Gson gson;
+    private final static Gson gson, compactGson;
     static {
         gson = new GsonBuilder()
                 .setFieldNamingPolicy(FieldNamingPolicy.IDENTITY)
                 .serializeNulls()
                 .setPrettyPrinting()
                 .create();
+        compactGson = new GsonBuilder()
+                .setFieldNamingPolicy(FieldNamingPolicy.IDENTITY)
+                .serializeNulls()
+                .create();
     }
 
     // Day and time.
@@ -109,6 +111,8 @@ public class OP {
             .ofPattern(dayPatternStr);
     private static final DateTimeFormatter timePattern = DateTimeFormatter
             .ofPattern(timePatternStr);
+    private static final Map<String, DateTimeFormatter> formatters
+            = new ConcurrentHashMap<>();
 
     /**
      * Parse the specified JSON string to object of the specified {@link Class}.
@@ -128,6 +132,27 @@ public class OP {
         }
     }
 
+    /**
+     * Parse JSON from the specified reader to object of the specified
+     * {@link Class}. The content is parsed as a stream, without reading it into
+     * a string first.
+     *
+     * @param reader reader of JSON content
+     * @param clz {@link Class} of the object
+     * @param <T> generic type of the object
+     * @return object parsed from the reader
+     * @throws IOException fail reading or parsing JSON
+     */
+    @OutTeam
+    public static <T> T fromJson(Reader reader, Class<T> clz) throws IOException {
+        try {
+            return compactGson.fromJson(reader, clz);
+        } catch (com.google.gson.JsonSyntaxException
+                | com.google.gson.JsonIOException e) {
+            throw new IOException("parse JSON stream", e);
+        }
+    }
+
     /**
      * Encode the specified object into JSON string.
      *
@@ -139,6 +164,18 @@ public class OP {
         return gson.toJson(obj);
     }
 
+    /**
+     * Encode the specified object into JSON string without any whitespace or line
+     * break, so the result always fits in a single line.
+     *
+     * @param obj object
+     * @return single-line JSON string representing the specified object
+     */
+    @OutTeam
+    public static String toCompactJson(Object obj) {
+        return compactGson.toJson(obj);
+    }
+
     /**
      * Read from the specified file and parse and content into a string using the
      * specified charset.
@@ -223,11 +260,8 @@ public class OP {
      */
     @OutTeam
     public static String getProductID(String instrID) {
-        var m = productPattern.matcher(instrID);
-        if (m.find())
-            return instrID.substring(m.start(), m.end()).toLowerCase();
-        else
-            return null;
+        return InstrumentRegistry.getProductID(
+                InstrumentRegistry.getHandle(instrID));
     }
 
     /**
@@ -247,7 +281,7 @@ public class OP {
         if (pattern.compareTo(dayPatternStr) == 0)
             return day.format(dayPattern);
         else
-            return day.format(DateTimeFormatter.ofPattern(pattern));
+            return day.format(getFormatter(pattern));
     }
 
     /**
@@ -267,7 +301,7 @@ public class OP {
         if (pattern.compareTo(timePatternStr) == 0)
             return time.format(timePattern);
         else
-            return time.format(DateTimeFormatter.ofPattern(pattern));
+            return time.format(getFormatter(pattern));
     }
 
     /**
@@ -287,7 +321,7 @@ public class OP {
         if (pattern.compareTo(dayPatternStr) == 0)
             return LocalDate.parse(day, dayPattern);
         else
-            return LocalDate.parse(day, DateTimeFormatter.ofPattern(pattern));
+            return LocalDate.parse(day, getFormatter(pattern));
     }
 
     /**
@@ -307,6 +341,61 @@ public class OP {
         if (pattern.compareTo(timePatternStr) == 0)
             return LocalTime.parse(time, timePattern);
         else
-            return LocalTime.parse(time, DateTimeFormatter.ofPattern(pattern));
+            return LocalTime.parse(time, getFormatter(pattern));
+    }
+
+    private static DateTimeFormatter getFormatter(String pattern) {
+        return formatters.computeIfAbsent(pattern, DateTimeFormatter::ofPattern);
+    }
+
+    /**
+     * Parse the specified day in {@code yyyyMMdd} to an integer {@code yyyymmdd}
+     * without allocating objects. The method doesn't validate the calendar, and
+     * is meant for day fields of CTP structs.
+     *
+     * @param day string representation of a day
+     * @return integer representation of the day, or {@code -1} if the string is
+     * not 8 digits
+     */
+    @OutTeam
+    public static int parseDayInt(CharSequence day) {
+        if (day == null || day.length() != 8)
+            return -1;
+        int r = 0;
+        for (int i = 0; i < 8; ++i) {
+            var c = day.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            r = r * 10 + (c - '0');
+        }
+        return r;
+    }
+
+    /**
+     * Parse the specified time in {@code HH:mm:ss} to seconds of day without
+     * allocating objects. The method is meant for time fields of CTP structs.
+     *
+     * @param time string representation of time
+     * @return seconds of day, or {@code -1} if the string is malformed
+     */
+    @OutTeam
+    public static int parseSecondOfDay(CharSequence time) {
+        if (time == null || time.length() != 8
+                || time.charAt(2) != ':' || time.charAt(5) != ':')
+            return -1;
+        var h = twoDigits(time, 0);
+        var m = twoDigits(time, 3);
+        var s = twoDigits(time, 6);
+        if (h < 0 || h > 23 || m < 0 || m > 59 || s < 0 || s > 59)
+            return -1;
+        return h * 3600 + m * 60 + s;
+    }
+
+    private static int twoDigits(CharSequence s, int from) {
+        var c0 = s.charAt(from);
+        var c1 = s.charAt(from + 1);
+        if (c0 < '0' || c0 > '9' || c1 < '0' || c1 > '9')
+            return -1;
+        return (c0 - '0') * 10 + (c1 - '0');
     }
 }
@@ -30,6 +30,7 @@ package com.nabiki.wukong.tools;
 
 import com.nabiki.ctp4j.jni.struct.CThostFtdcInputOrderField;
 import com.nabiki.ctp4j.jni.struct.CThostFtdcOrderField;
+import com.nabiki.ctp4j.jni.struct.CThostFtdcTradeField;
 import com.nabiki.wukong.active.ActiveRequest;
 
 import java.util.*;
@@ -45,6 +46,10 @@ public class OrderMapper {
             detRef2Rtn = new HashMap<>();   // Detail ref -> detail rtn order
     private final Map<String, CThostFtdcInputOrderField>
             detRef2Det = new HashMap<>();   // Detail ref -> detail order
+    private final Set<String>
+            tradeKeys = new HashSet<>();    // Keys of registered trades
+    private final Map<String, Long>
+            detRef2Session = new HashMap<>(); // Detail ref -> front and session
 
     public OrderMapper() {
     }
@@ -66,6 +71,30 @@ public class OrderMapper {
 
     }
 
+    /**
+     * Remove mappings of the detailed order, like when it fails to be sent.
+     *
+     * @param order detailed order
+     */
+    @InTeam
+    public void unregister(CThostFtdcInputOrderField order) {
+        var uuid = this.detRef2Uuid.remove(order.OrderRef);
+        this.detRef2Det.remove(order.OrderRef);
+        synchronized (this.detRef2Session) {
+            this.detRef2Session.remove(order.OrderRef);
+        }
+        if (uuid == null)
+            return;
+        var refs = this.uuid2DetRef.get(uuid);
+        if (refs != null) {
+            refs.remove(order.OrderRef);
+            if (refs.isEmpty()) {
+                this.uuid2DetRef.remove(uuid);
+                this.uuid2Active.remove(uuid);
+            }
+        }
+    }
+
     /**
      * Register return order and create mapping.
      *
@@ -76,6 +105,82 @@ public class OrderMapper {
         this.detRef2Rtn.put(rtn.OrderRef, rtn);
     }
 
+    /**
+     * Register the trade and return {@code true} if it isn't registered before.
+     * A trade is identified by its exchange ID, trade ID and direction, so the
+     * same trade returned again after reconnect is only registered once.
+     *
+     * @param trade return trade
+     * @return {@code true} if the trade is new, {@code false} otherwise
+     */
+    @InTeam
+    public boolean register(CThostFtdcTradeField trade) {
+        synchronized (this.tradeKeys) {
+            return this.tradeKeys.add(trade.ExchangeID + "." + trade.TradeID
+                    + "." + trade.Direction);
+        }
+    }
+
+    /**
+     * Clear registered trades. Trade IDs are unique only in a trading day, so
+     * trades of the last trading day are cleared when a new day begins.
+     */
+    @InTeam
+    public void clearTrades() {
+        synchronized (this.tradeKeys) {
+            this.tradeKeys.clear();
+        }
+    }
+
+    /**
+     * Clear sessions of the sent detail orders. Orders of the last trading day
+     * are not returned by queries of a new day.
+     */
+    @InTeam
+    public void clearSessions() {
+        synchronized (this.detRef2Session) {
+            this.detRef2Session.clear();
+        }
+    }
+
+    /**
+     * Register the front and session that the detail order is sent in.
+     *
+     * @param detailRef ref of the detail order
+     * @param frontID front ID of the session
+     * @param sessionID session ID
+     */
+    @InTeam
+    public void register(String detailRef, int frontID, int sessionID) {
+        synchronized (this.detRef2Session) {
+            this.detRef2Session.put(detailRef, sessionKey(frontID, sessionID));
+        }
+    }
+
+    /**
+     * Check if the detail order of the specified ref is sent in the specified
+     * front and session. Order refs are unique only in a session, so an order
+     * of another session may have the same ref.
+     *
+     * @param detailRef ref of the detail order
+     * @param frontID front ID of the session
+     * @param sessionID session ID
+     * @return {@code true} if the detail order is sent in the session,
+     * {@code false} otherwise
+     */
+    @InTeam
+    public boolean isSentIn(String detailRef, int frontID, int sessionID) {
+        Long key;
+        synchronized (this.detRef2Session) {
+            key = this.detRef2Session.get(detailRef);
+        }
+        return key != null && key == sessionKey(frontID, sessionID);
+    }
+
+    private static long sessionKey(int frontID, int sessionID) {
+        return ((long) frontID << 32) | (sessionID & 0xFFFFFFFFL);
+    }
+
     /**
      * Get the specified return order of the detail ref. If no order has the UUID,
      * return {@code null}.
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.tools;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads and executors of the application, so every component runs its work
+ * on the kind of thread that suits it.
+ *
+ * <ul>
+ * <li>Critical threads are dedicated platform threads for latency-critical
+ * loops, like sending orders and routing market data.</li>
+ * <li>I/O threads and executors run blocking work, like database writes,
+ * queries and per-session sends. They are virtual threads when the JVM has them
+ * and they are enabled, otherwise daemon platform threads.</li>
+ * <li>Scheduled tasks share one timer thread and must be short. Blocking
+ * periodic tasks are scheduled with
+ * {@link #scheduleIo(Runnable, long, long)}, so they run on I/O threads.</li>
+ * </ul>
+ *
+ * <p>Virtual threads are looked up by reflection because the code targets Java
+ * 11. They are used by default if available, and disabled by system property
+ * {@code wukong.threads=platform}.
+ * </p>
+ */
+public class Workers {
+    public static final String PROPERTY = "wukong.threads";
+
+    private static final Method ofVirtual, builderName, builderNamePrefix,
+            builderUnstarted, builderFactory, newPerTaskExecutor;
+    private static final boolean virtual;
+    private static final ScheduledExecutorService timer
+            = Executors.newSingleThreadScheduledExecutor(r -> {
+                var t = new Thread(r, "wukong-timer");
+                t.setDaemon(true);
+                return t;
+            });
+    private static volatile ExecutorService sharedIo;
+
+    static {
+        Method m0 = null, m1 = null, m2 = null, m3 = null, m4 = null, m5 = null;
+        boolean ok = false;
+        if (!"platform".equalsIgnoreCase(System.getProperty(PROPERTY))) {
+            try {
+                var builder = Class.forName("java.lang.Thread$Builder");
+                m0 = Thread.class.getMethod("ofVirtual");
+                m1 = builder.getMethod("name", String.class);
+                m2 = builder.getMethod("name", String.class, long.class);
+                m3 = builder.getMethod("unstarted", Runnable.class);
+                m4 = builder.getMethod("factory");
+                m5 = Executors.class.getMethod("newThreadPerTaskExecutor",
+                        ThreadFactory.class);
+                // Preview JDKs throw here if preview isn't enabled.
+                m3.invoke(m0.invoke(null), (Runnable) () -> {});
+                ok = true;
+            } catch (Throwable ignored) {
+            }
+        }
+        virtual = ok;
+        ofVirtual = m0;
+        builderName = m1;
+        builderNamePrefix = m2;
+        builderUnstarted = m3;
+        builderFactory = m4;
+        newPerTaskExecutor = m5;
+    }
+
+    /**
+     * Check if I/O threads are virtual threads.
+     *
+     * @return {@code true} if I/O threads are virtual threads
+     */
+    @InTeam
+    public static boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Create an unstarted platform thread for a latency-critical loop. The
+     * thread is a daemon and the owner stops it explicitly.
+     *
+     * @param name thread name
+     * @param task loop
+     * @return unstarted thread
+     */
+    @InTeam
+    public static Thread newCriticalThread(String name, Runnable task) {
+        var t = new Thread(task, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    /**
+     * Create an unstarted thread for blocking work. It is a virtual thread if
+     * enabled, otherwise a daemon platform thread.
+     *
+     * @param name thread name
+     * @param task work
+     * @return unstarted thread
+     */
+    @InTeam
+    public static Thread newIoThread(String name, Runnable task) {
+        if (virtual) {
+            try {
+                var b = builderName.invoke(ofVirtual.invoke(null), name);
+                return (Thread) builderUnstarted.invoke(b, task);
+            } catch (IllegalAccessException | InvocationTargetException ignored) {
+            }
+        }
+        return newCriticalThread(name, task);
+    }
+
+    /**
+     * Create an executor for blocking work. It starts a virtual thread per task
+     * if enabled, otherwise runs tasks on a fixed number of daemon platform
+     * threads.
+     *
+     * @param name thread name prefix
+     * @param platformThreads number of platform threads if virtual threads are
+     *                        disabled
+     * @return executor
+     */
+    @InTeam
+    public static ExecutorService newIoExecutor(String name, int platformThreads) {
+        if (virtual) {
+            try {
+                var b = builderNamePrefix.invoke(ofVirtual.invoke(null),
+                        name + "-", 0L);
+                return (ExecutorService) newPerTaskExecutor.invoke(null,
+                        builderFactory.invoke(b));
+            } catch (IllegalAccessException | InvocationTargetException ignored) {
+            }
+        }
+        var count = new AtomicInteger(0);
+        return Executors.newFixedThreadPool(platformThreads,
+                r -> newCriticalThread(name + "-" + count.getAndIncrement(), r));
+    }
+
+    /**
+     * Get the executor for blocking work shared by the application.
+     *
+     * @return shared executor
+     */
+    @InTeam
+    public static ExecutorService io() {
+        if (sharedIo == null) {
+            synchronized (Workers.class) {
+                if (sharedIo == null)
+                    sharedIo = newIoExecutor("wukong-io",
+                            Math.max(2, Runtime.getRuntime().availableProcessors()));
+            }
+        }
+        return sharedIo;
+    }
+
+    /**
+     * Run the short task at fixed rate on the shared timer thread.
+     *
+     * @param task short task
+     * @param delayMillis delay before the first run
+     * @param periodMillis period between runs
+     * @return future to cancel the task
+     */
+    @InTeam
+    public static ScheduledFuture<?> schedule(Runnable task, long delayMillis,
+                                              long periodMillis) {
+        return timer.scheduleAtFixedRate(guard(task), delayMillis, periodMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run the blocking task at fixed rate on the shared I/O executor. A run is
+     * skipped if the last run hasn't finished.
+     *
+     * @param task blocking task
+     * @param delayMillis delay before the first run
+     * @param periodMillis period between runs
+     * @return future to cancel the task
+     */
+    @InTeam
+    public static ScheduledFuture<?> scheduleIo(Runnable task, long delayMillis,
+                                                long periodMillis) {
+        var running = new AtomicBoolean(false);
+        Runnable run = () -> {
+            try {
+                task.run();
+            } finally {
+                running.set(false);
+            }
+        };
+        return timer.scheduleAtFixedRate(() -> {
+            if (running.compareAndSet(false, true)) {
+                try {
+                    io().execute(run);
+                } catch (RejectedExecutionException e) {
+                    running.set(false);
+                }
+            }
+        }, delayMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Exception cancels the periodic task, so catch it.
+    private static Runnable guard(Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (Throwable ignored) {
+            }
+        };
+    }
+}
@@ -92,7 +92,7 @@ public class FrozenAccount {
             throw new IllegalArgumentException("negative traded share count");
         if (getFrozenVolume() < trade.Volume)
             throw new IllegalStateException("not enough frozen shares");
-        this.tradedShareCount -= trade.Volume;
+        this.tradedShareCount += trade.Volume;
         // Update parent.
         this.parent.addShareCommission(trade, instr, comm);
     }
@@ -93,7 +93,7 @@ public class FrozenPositionDetail {
             throw new IllegalArgumentException("negative traded share count");
         if (getFrozenShareCount() < trade.Volume)
             throw new IllegalStateException("not enough frozen shares");
-        this.tradedShareCount -= trade.Volume;
+        this.tradedShareCount += trade.Volume;
         // Update parent.
         var share = toPositionShare(this.frozenSharePD, trade, instr);
         this.parent.closePosition(share, trade.Volume);
@@ -146,7 +146,7 @@ public class FrozenPositionDetail {
             token = -1.0D;  // Short position.
         r.CloseProfitByTrade = token * (trade.Price - p.OpenPrice)
                 * instr.VolumeMultiple;
-        if (p.TradingDay.compareTo(trade.TradingDay) == 0)
+        if (p.TradingDay.equals(trade.TradingDay))
             // Today's position.
             r.CloseProfitByDate = r.CloseProfitByTrade;
         else
@@ -29,8 +29,8 @@
 package com.nabiki.wukong.user.core;
 
 import com.nabiki.ctp4j.jni.flag.TThostFtdcCombOffsetFlagType;
-import com.nabiki.ctp4j.jni.flag.TThostFtdcDirectionType;
 import com.nabiki.ctp4j.jni.struct.*;
+import com.nabiki.wukong.risk.RiskEngine;
 import com.nabiki.wukong.tools.InTeam;
 import com.nabiki.wukong.tools.OP;
 
@@ -109,34 +109,23 @@ public class UserAccount {
         this.frozenAcc.add(frz);
     }
 
+    /**
+     * Calculate the frozen account of the specified open order with the rates in
+     * risk engine. If available money is not enough, return {@code null}.
+     *
+     * @param order input order, must be open order
+     * @param engine risk engine
+     * @param idx instrument handle known to the engine
+     * @return frozen account, or {@code null} if money is not enough
+     */
     @InTeam
-    public FrozenAccount getOpenFrozen(
-            CThostFtdcInputOrderField order, CThostFtdcInstrumentField instr,
-            CThostFtdcInstrumentMarginRateField margin,
-            CThostFtdcInstrumentCommissionRateField comm) {
-        Objects.requireNonNull(instr, "instrument null");
-        Objects.requireNonNull(margin, "margin null");
-        Objects.requireNonNull(comm, "commission null");
+    public FrozenAccount getOpenFrozen(CThostFtdcInputOrderField order,
+                                       RiskEngine engine, int idx) {
         // Calculate commission, cash.
         var c = new CThostFtdcTradingAccountField();
-        if (order.Direction == TThostFtdcDirectionType.DIRECTION_BUY) {
-            if (margin.LongMarginRatioByMoney > 0)
-                c.FrozenCash = order.LimitPrice * instr.VolumeMultiple
-                        * margin.LongMarginRatioByMoney;
-            else
-                c.FrozenCash = margin.LongMarginRatioByVolume;
-        } else {
-            if (margin.ShortMarginRatioByMoney > 0)
-                c.FrozenCash = order.LimitPrice * instr.VolumeMultiple
-                        * margin.ShortMarginRatioByMoney;
-            else
-                c.FrozenCash = margin.ShortMarginRatioByVolume;
-        }
-        if (comm.OpenRatioByMoney > 0)
-            c.FrozenCommission = order.LimitPrice * instr.VolumeMultiple
-                    * comm.OpenRatioByMoney;
-        else
-            c.FrozenCommission = comm.OpenRatioByVolume;
+        c.FrozenCash = engine.getMargin(idx, order.Direction, order.LimitPrice);
+        c.FrozenCommission = engine.getCommission(idx,
+                TThostFtdcCombOffsetFlagType.OFFSET_OPEN, order.LimitPrice);
         // Check if available money is enough.
         var needMoney = c.FrozenCash + c.FrozenCommission;
         var account = this.parent.getTradingAccount();
@@ -168,29 +157,20 @@ public class UserAccount {
         Objects.requireNonNull(comm, "commission null");
         Objects.requireNonNull(instr, "instrument null");
         var r = new CThostFtdcTradingAccountField();
-        if (trade.OffsetFlag == TThostFtdcCombOffsetFlagType.OFFSET_OPEN) {
-            if (comm.OpenRatioByMoney > 0)
-                r.Commission = comm.OpenRatioByMoney * instr.VolumeMultiple
-                        * trade.Price * trade.Volume;
-            else
-                r.Commission = comm.OpenRatioByVolume * trade.Volume;
-        } else {
-            if (trade.OffsetFlag ==
-                    TThostFtdcCombOffsetFlagType.OFFSET_CLOSE_TODAY) {
-                if (comm.CloseRatioByMoney > 0)
-                    r.Commission = comm.CloseTodayRatioByMoney
-                            * instr.VolumeMultiple * trade.Price * trade.Volume;
-                else
-                    r.Commission = comm.CloseTodayRatioByVolume * trade.Volume;
-            } else {
-                // close = close yesterday
-                if (comm.CloseRatioByMoney > 0)
-                    r.Commission = comm.CloseRatioByMoney
-                            * instr.VolumeMultiple * trade.Price * trade.Volume;
-                else
-                    r.Commission = comm.CloseRatioByVolume * trade.Volume;
-            }
-        }
+        double perVolume;
+        if (trade.OffsetFlag == TThostFtdcCombOffsetFlagType.OFFSET_OPEN)
+            perVolume = RiskEngine.perVolume(comm.OpenRatioByMoney,
+                    comm.OpenRatioByVolume, instr.VolumeMultiple, trade.Price);
+        else if (trade.OffsetFlag ==
+                TThostFtdcCombOffsetFlagType.OFFSET_CLOSE_TODAY)
+            perVolume = RiskEngine.perVolume(comm.CloseTodayRatioByMoney,
+                    comm.CloseTodayRatioByVolume, instr.VolumeMultiple,
+                    trade.Price);
+        else
+            // close = close yesterday
+            perVolume = RiskEngine.perVolume(comm.CloseRatioByMoney,
+                    comm.CloseRatioByVolume, instr.VolumeMultiple, trade.Price);
+        r.Commission = perVolume * trade.Volume;
         return r;
     }
 }
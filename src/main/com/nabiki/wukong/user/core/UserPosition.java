@@ -28,8 +28,10 @@
 
 package com.nabiki.wukong.user.core;
 
+import com.nabiki.ctp4j.jni.flag.TThostFtdcCombOffsetFlagType;
 import com.nabiki.ctp4j.jni.flag.TThostFtdcDirectionType;
 import com.nabiki.ctp4j.jni.struct.*;
+import com.nabiki.wukong.risk.RiskEngine;
 import com.nabiki.wukong.tools.InTeam;
 import com.nabiki.wukong.tools.OP;
 import com.nabiki.wukong.user.plain.InstrumentInfoSet;
@@ -106,8 +108,10 @@ public class UserPosition {
                                 CThostFtdcInstrumentMarginRateField margin,
                                 CThostFtdcInstrumentCommissionRateField comm,
                                 double preSettlementPrice) {
-        getUserPD(trade.InstrumentID).add(toUserPosition(trade, instr, margin, comm,
-                preSettlementPrice));
+        // First open of the instrument has no details yet.
+        this.userPD.computeIfAbsent(trade.InstrumentID, k -> new LinkedList<>())
+                .add(toUserPosition(trade, instr, margin, comm,
+                        preSettlementPrice));
     }
 
     /**
@@ -116,15 +120,15 @@ public class UserPosition {
      * frozen position is added to the frozen list.
      *
      * @param order input order, must be close order
-     * @param instr instrument
-     * @param comm commission
+     * @param engine risk engine
+     * @param idx instrument handle known to the engine
      * @param tradingDay trading day
      * @return list of frozen position detail if the order is sent successfully
      */
     @InTeam
     public List<FrozenPositionDetail> peakCloseFrozen(
-            CThostFtdcInputOrderField order, CThostFtdcInstrumentField instr,
-            CThostFtdcInstrumentCommissionRateField comm, String tradingDay) {
+            CThostFtdcInputOrderField order, RiskEngine engine, int idx,
+            String tradingDay) {
         // Get position details.
         var avail = getUserPD(order.InstrumentID);
         Objects.requireNonNull(avail, "user position null");
@@ -144,21 +148,16 @@ public class UserPosition {
             sharePos.CloseVolume = 1;
             // Commission.
             var shareCash = new CThostFtdcTradingAccountField();
-            if (sharePos.TradingDay.compareTo(tradingDay) == 0) {
+            if (sharePos.TradingDay.equals(tradingDay))
                 // Today position.
-                if (comm.CloseTodayRatioByMoney > 0)
-                    shareCash.FrozenCommission = order.LimitPrice
-                            * instr.VolumeMultiple * comm.CloseTodayRatioByMoney;
-                else
-                    shareCash.FrozenCommission = comm.CloseTodayRatioByVolume;
-            } else {
+                shareCash.FrozenCommission = engine.getCommission(idx,
+                        TThostFtdcCombOffsetFlagType.OFFSET_CLOSE_TODAY,
+                        order.LimitPrice);
+            else
                 // YD position.
-                if (comm.CloseRatioByMoney > 0)
-                    shareCash.FrozenCommission = order.LimitPrice
-                            * instr.VolumeMultiple * comm.CloseRatioByMoney;
-                else
-                    shareCash.FrozenCommission = comm.CloseRatioByVolume;
-            }
+                shareCash.FrozenCommission = engine.getCommission(idx,
+                        TThostFtdcCombOffsetFlagType.OFFSET_CLOSE,
+                        order.LimitPrice);
             // Keep frozen position.
             var frz = new FrozenPositionDetail(a, sharePos, shareCash, vol);
             r.add(frz);
@@ -248,20 +247,18 @@ public class UserPosition {
             double token;
             if (origin.Direction == TThostFtdcDirectionType.DIRECTION_BUY) {
                 // Margin.
-                if (margin.LongMarginRatioByMoney > 0)
-                    origin.Margin = origin.Volume * settlementPrice
-                            * instr.VolumeMultiple * margin.LongMarginRatioByMoney;
-                else
-                    origin.Margin = origin.Volume * margin.LongMarginRatioByVolume;
+                origin.Margin = origin.Volume * RiskEngine.perVolume(
+                        margin.LongMarginRatioByMoney,
+                        margin.LongMarginRatioByVolume, instr.VolumeMultiple,
+                        settlementPrice);
                 // Long position, token is positive.
                 token = 1.0D;
             } else {
                 // Margin.
-                if (margin.ShortMarginRatioByMoney > 0)
-                    origin.Margin = origin.Volume * settlementPrice
-                            * instr.VolumeMultiple * margin.ShortMarginRatioByMoney;
-                else
-                    origin.Margin = origin.Volume * margin.ShortMarginRatioByVolume;
+                origin.Margin = origin.Volume * RiskEngine.perVolume(
+                        margin.ShortMarginRatioByMoney,
+                        margin.ShortMarginRatioByVolume, instr.VolumeMultiple,
+                        settlementPrice);
                 // Short position, token is negative.
                 token = -1.0D;
             }
@@ -271,7 +268,7 @@ public class UserPosition {
             origin.PositionProfitByTrade = token * origin.Volume *
                     (origin.SettlementPrice - origin.OpenPrice)
                     * instr.VolumeMultiple;
-            if (origin.TradingDay.compareTo(tradingDay) == 0)
+            if (origin.TradingDay.equals(tradingDay))
                 // Today position, open price is real open price.
                 origin.PositionProfitByDate = origin.PositionProfitByTrade;
             else
@@ -317,11 +314,8 @@ public class UserPosition {
         }
         // Calculate margin.
         d.LastSettlementPrice = preSettlementPrice;
-        if (d.MarginRateByMoney > 0)
-            d.Margin = d.Volume * instr.VolumeMultiple
-                    * d.LastSettlementPrice * d.MarginRateByMoney;
-        else
-            d.Margin = d.Volume * d.MarginRateByVolume;
+        d.Margin = d.Volume * RiskEngine.perVolume(d.MarginRateByMoney,
+                d.MarginRateByVolume, instr.VolumeMultiple, d.LastSettlementPrice);
         // Default values.
         d.CloseVolume = 0;
         d.CloseAmount = 0.0D;
@@ -148,7 +148,7 @@ public class UserPositionDetail {
         }
         r.CloseVolume = this.total.CloseVolume;
         r.Position = this.total.Volume - this.total.CloseVolume;
-        if (this.total.TradingDay.compareTo(tradingDay) != 0)
+        if (!this.total.TradingDay.equals(tradingDay))
             r.YdPosition = this.total.Volume;
         else
             r.TodayPosition = r.Position;
@@ -103,6 +103,18 @@ public class ConfigTest {
         }
     }
 
+    @Test
+    public void reload() throws IOException {
+        var root = config.getRootDirectory();
+        var version = config.getVersion();
+        ConfigLoader.load();
+        Assert.assertEquals(version + 1, config.getVersion());
+        Assert.assertSame("reload should keep root directory",
+                root, config.getRootDirectory());
+        Assert.assertSame("reload should keep registered directories",
+                root.get("dir.cfg"), config.getRootDirectory().get("dir.cfg"));
+    }
+
     @Test
     public void log() {
         var logs = config.getRootDirectory().recursiveGet("dir.log");
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.cfg;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.LinkedList;
+
+public class TradingCalendarTest {
+    // National day of 2020, Oct 1 - Oct 8.
+    TradingCalendar calendar() {
+        var holidays = new LinkedList<LocalDate>();
+        for (int d : new int[] {1, 2, 5, 6, 7, 8})
+            holidays.add(LocalDate.of(2020, 10, d));
+        return new TradingCalendar(holidays);
+    }
+
+    @Test
+    public void tradingDay() {
+        var c = calendar();
+        Assert.assertFalse("holiday shouldn't be trading day",
+                c.isTradingDay(LocalDate.of(2020, 10, 1)));
+        Assert.assertFalse("weekend shouldn't be trading day",
+                c.isTradingDay(LocalDate.of(2020, 9, 26)));
+        Assert.assertTrue("workday should be trading day",
+                c.isTradingDay(LocalDate.of(2020, 9, 30)));
+        Assert.assertEquals("next trading day should skip holidays",
+                LocalDate.of(2020, 10, 9),
+                c.getNextTradingDay(LocalDate.of(2020, 9, 30)));
+        Assert.assertEquals("previous trading day should skip holidays",
+                LocalDate.of(2020, 9, 30),
+                c.getPrevTradingDay(LocalDate.of(2020, 10, 9)));
+        Assert.assertEquals("next trading day of friday should be monday",
+                LocalDate.of(2020, 9, 28),
+                c.getNextTradingDay(LocalDate.of(2020, 9, 25)));
+    }
+
+    @Test
+    public void nightSession() {
+        var c = calendar();
+        Assert.assertTrue("friday should have night session",
+                c.hasNightSession(LocalDate.of(2020, 9, 25)));
+        Assert.assertFalse("day before holiday shouldn't have night session",
+                c.hasNightSession(LocalDate.of(2020, 9, 30)));
+        Assert.assertFalse("saturday shouldn't have night session",
+                c.hasNightSession(LocalDate.of(2020, 9, 26)));
+        Assert.assertEquals("friday night should belong to monday",
+                LocalDate.of(2020, 9, 28),
+                c.getTradingDay(LocalDateTime.of(2020, 9, 25, 22, 0)));
+        Assert.assertEquals("saturday morning should belong to monday",
+                LocalDate.of(2020, 9, 28),
+                c.getTradingDay(LocalDateTime.of(2020, 9, 26, 1, 0)));
+        Assert.assertEquals("day session should belong to today",
+                LocalDate.of(2020, 9, 29),
+                c.getTradingDay(LocalDateTime.of(2020, 9, 29, 10, 0)));
+    }
+
+    @Test
+    public void over() {
+        var c = calendar();
+        var hour = new TradingHourKeeper(
+                new TradingHourKeeper.TradingHour(LocalTime.of(21, 0),
+                        LocalTime.of(23, 0)),
+                new TradingHourKeeper.TradingHour(LocalTime.of(9, 0),
+                        LocalTime.of(15, 0)));
+        Assert.assertTrue("night before holiday should be over",
+                c.isOver(LocalDateTime.of(2020, 9, 30, 22, 0), hour));
+        Assert.assertFalse("night before workday shouldn't be over",
+                c.isOver(LocalDateTime.of(2020, 9, 29, 22, 0), hour));
+        Assert.assertTrue("holiday should be over",
+                c.isOver(LocalDateTime.of(2020, 10, 5, 10, 0), hour));
+        Assert.assertFalse("trading hour shouldn't be over",
+                c.isOver(LocalDateTime.of(2020, 9, 29, 10, 0), hour));
+        Assert.assertTrue("after close should be over",
+                c.isOver(LocalDateTime.of(2020, 9, 29, 16, 0), hour));
+    }
+
+    @Test
+    public void overDayOnly() {
+        var c = calendar();
+        // Like IF, no night session.
+        var hour = new TradingHourKeeper(
+                new TradingHourKeeper.TradingHour(LocalTime.of(9, 30),
+                        LocalTime.of(11, 30)),
+                new TradingHourKeeper.TradingHour(LocalTime.of(13, 0),
+                        LocalTime.of(15, 0)));
+        Assert.assertFalse(hour.hasNightSession());
+        Assert.assertTrue("day-only product should be over at night",
+                c.isOver(LocalDateTime.of(2020, 9, 29, 21, 30), hour));
+        Assert.assertTrue("day-only product should be over after midnight",
+                c.isOver(LocalDateTime.of(2020, 9, 30, 1, 0), hour));
+        Assert.assertFalse("day-only product shouldn't be over at noon",
+                c.isOver(LocalDateTime.of(2020, 9, 29, 12, 0), hour));
+    }
+}
@@ -393,4 +393,37 @@ public class TradingHourKeeperTest  {
             Assert.assertTrue(s + " should contain or hour",
                     keeper.contains(Duration.ofMinutes(30), time(s)));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void fraction() {
+        var keeper = new TradingHourKeeper(hour("21:00", "02:30"),
+                hour("09:00", "10:15"));
+        keeper.sample(Duration.ofMinutes(1));
+
+        Assert.assertFalse("21:00:00 shouldn't contain",
+                keeper.contains(LocalTime.of(21, 0)));
+        Assert.assertTrue("21:00:00.001 should contain",
+                keeper.contains(LocalTime.of(21, 0, 0, 1000000)));
+        Assert.assertTrue("23:59:59.5 should contain",
+                keeper.contains(LocalTime.of(23, 59, 59, 500000000)));
+        Assert.assertTrue("02:29:59.9 should contain",
+                keeper.contains(LocalTime.of(2, 29, 59, 900000000)));
+        Assert.assertFalse("02:30:00.1 shouldn't contain",
+                keeper.contains(LocalTime.of(2, 30, 0, 100000000)));
+        Assert.assertFalse("10:15:00.5 shouldn't contain",
+                keeper.contains(LocalTime.of(10, 15, 0, 500000000)));
+
+        Assert.assertEquals("night session should be 0",
+                0, keeper.getSession(LocalTime.of(0, 30)));
+        Assert.assertEquals("morning session should be 1",
+                1, keeper.getSession(LocalTime.of(9, 30)));
+        Assert.assertEquals("closed should be -1",
+                -1, keeper.getSession(LocalTime.of(12, 0)));
+
+        Assert.assertTrue("00:00:00 should contain for minute",
+                keeper.contains(Duration.ofMinutes(1), LocalTime.MIDNIGHT));
+        Assert.assertFalse("09:01:00.2 shouldn't contain for minute",
+                keeper.contains(Duration.ofMinutes(1),
+                        LocalTime.of(9, 1, 0, 200000000)));
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.ctp;
+
+import com.nabiki.ctp4j.jni.flag.TThostFtdcCombOffsetFlagType;
+import com.nabiki.ctp4j.jni.flag.TThostFtdcDirectionType;
+import com.nabiki.ctp4j.jni.struct.*;
+import com.nabiki.ctp4j.trader.CThostFtdcTraderApi;
+import com.nabiki.wukong.active.ActiveUser;
+import com.nabiki.wukong.cfg.Config;
+import com.nabiki.wukong.cfg.ConfigLoader;
+import com.nabiki.wukong.cfg.plain.LoginConfig;
+import com.nabiki.wukong.cfg.plain.TradingHourConfig;
+import com.nabiki.wukong.ctp.ReconnectSupervisor.Link;
+import com.nabiki.wukong.sim.SimExchange;
+import com.nabiki.wukong.sim.SimTraderApi;
+import com.nabiki.wukong.tools.OP;
+import com.nabiki.wukong.user.core.User;
+import com.nabiki.wukong.user.core.UserAccount;
+import com.nabiki.wukong.user.core.UserPosition;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+public class OrderProviderTest {
+    static final String INSTR = "c2101", DAY = "20200612";
+    static Config config;
+
+    static {
+        try {
+            var root = Files.createTempDirectory("wukong-test");
+            writeConfig(root);
+            ConfigLoader.rootPath = root.toAbsolutePath().toString();
+            config = ConfigLoader.load();
+            ConfigLoader.setTradingDay(DAY);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    static void writeConfig(Path root) throws IOException {
+        var login = new LoginConfig();
+        login.name = "trader";
+        login.frontAddresses = new LinkedList<>();
+        login.brokerID = "9999";
+        login.userID = "test";
+        write(Path.of(root.toString(), ".cfg", ".login"), "trader.json", login);
+        // Trade all day so the test doesn't depend on the wall clock.
+        var hour = new TradingHourConfig();
+        hour.name = "c";
+        hour.productID = List.of("c");
+        var h = hour.new SingleTradingHour();
+        h.from = LocalTime.MIDNIGHT;
+        h.to = LocalTime.of(23, 59, 59);
+        hour.tradingHour = new LinkedList<>();
+        hour.tradingHour.add(h);
+        write(Path.of(root.toString(), ".cfg", ".hour"), "c.json", hour);
+    }
+
+    static void write(Path dir, String name, Object cfg) throws IOException {
+        Files.createDirectories(dir);
+        OP.writeText(OP.toJson(cfg), Path.of(dir.toString(), name).toFile(),
+                StandardCharsets.UTF_8, false);
+    }
+
+    static class TestProvider extends OrderProvider {
+        TestProvider(CThostFtdcTraderApi api, Config cfg) {
+            super(api, cfg);
+        }
+
+        @Override
+        protected boolean isOver(String instrID) {
+            return false;
+        }
+    }
+
+    // Records the link of provider and orders not mapped yet when an order
+    // arrives, and all trades even if they are lost.
+    static class RecordingApi extends SimTraderApi {
+        final List<Link> links = new CopyOnWriteArrayList<>();
+        final List<CThostFtdcTradeField> trades = new CopyOnWriteArrayList<>();
+        final AtomicInteger unmapped = new AtomicInteger(0);
+        volatile OrderProvider provider;
+
+        RecordingApi(SimExchange exchange) {
+            super(exchange);
+        }
+
+        @Override
+        public int ReqOrderInsert(CThostFtdcInputOrderField req,
+                                  int requestID) {
+            this.links.add(this.provider.getSupervisor().getLink());
+            // Return may come before this method returns.
+            if (this.provider.getMapper().getActiveOrder(req.OrderRef) == null)
+                this.unmapped.incrementAndGet();
+            return super.ReqOrderInsert(req, requestID);
+        }
+
+        @Override
+        public void tradeUpdated(CThostFtdcTradeField trade) {
+            this.trades.add(OP.deepCopy(trade));
+            super.tradeUpdated(trade);
+        }
+    }
+
+    SimExchange exchange() {
+        var instr = new CThostFtdcInstrumentField();
+        instr.InstrumentID = INSTR;
+        instr.ExchangeID = "DCE";
+        instr.PriceTick = 1.0D;
+        instr.VolumeMultiple = 10;
+        var margin = new CThostFtdcInstrumentMarginRateField();
+        margin.InstrumentID = INSTR;
+        margin.LongMarginRatioByMoney = margin.ShortMarginRatioByMoney = 0.1D;
+        var comm = new CThostFtdcInstrumentCommissionRateField();
+        comm.InstrumentID = INSTR;
+        comm.OpenRatioByVolume = comm.CloseRatioByVolume
+                = comm.CloseTodayRatioByVolume = 1.0D;
+        ConfigLoader.setInstrConfig(instr);
+        ConfigLoader.setInstrConfig(margin);
+        ConfigLoader.setInstrConfig(comm);
+        var ex = new SimExchange(DAY);
+        // Bid 1999 and ask 2001.
+        ex.addInstrument(instr, margin, comm, 2000.0D);
+        ConfigLoader.setDepthMarketData(depth(1999.0D, 2001.0D));
+        return ex;
+    }
+
+    static CThostFtdcDepthMarketDataField depth(double bid, double ask) {
+        var d = new CThostFtdcDepthMarketDataField();
+        d.InstrumentID = INSTR;
+        d.TradingDay = DAY;
+        d.LastPrice = d.PreSettlementPrice = 2000.0D;
+        d.BidPrice1 = bid;
+        d.AskPrice1 = ask;
+        d.BidVolume1 = d.AskVolume1 = 10;
+        d.UpperLimitPrice = 2200.0D;
+        d.LowerLimitPrice = 1800.0D;
+        return d;
+    }
+
+    static User user() {
+        var user = new User();
+        var total = new CThostFtdcTradingAccountField();
+        total.PreBalance = 1.0E6D;
+        user.setAccount(new UserAccount(total, user));
+        user.setPosition(new UserPosition(new HashMap<>(), user));
+        return user;
+    }
+
+    static CThostFtdcInputOrderField buyOpen(double price, int volume) {
+        var o = new CThostFtdcInputOrderField();
+        o.InstrumentID = INSTR;
+        o.UserID = "test";
+        o.LimitPrice = price;
+        o.VolumeTotalOriginal = volume;
+        o.Direction = TThostFtdcDirectionType.DIRECTION_BUY;
+        o.CombOffsetFlag = TThostFtdcCombOffsetFlagType.OFFSET_OPEN;
+        return o;
+    }
+
+    static void await(String msg, BooleanSupplier cond)
+            throws InterruptedException {
+        var until = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (!cond.getAsBoolean() && System.currentTimeMillis() < until)
+            Thread.sleep(10);
+        Assert.assertTrue(msg, cond.getAsBoolean());
+    }
+
+    static int position(ActiveUser user) {
+        int r = 0;
+        for (var p : user.getPosition(INSTR))
+            r += p.Position;
+        return r;
+    }
+
+    @Test
+    public void resync() throws InterruptedException {
+        var ex = exchange();
+        var api = new RecordingApi(ex);
+        var provider = new TestProvider(api, config);
+        var link = provider.getSupervisor();
+        api.provider = provider;
+        provider.initialize();
+        await("should connect", () -> link.getLink() == Link.CONNECTED);
+        provider.login();
+        Assert.assertTrue("should be ready",
+                link.awaitReady(5, TimeUnit.SECONDS));
+
+        var user = new ActiveUser(user(), provider, config);
+        var mapper = provider.getMapper();
+        // Order in flight, queued at the exchange.
+        var a = user.insertOrder(buyOpen(2000.0D, 2));
+        Assert.assertEquals(0, user.getExecRsp(a).ErrorID);
+        await("should send order", () -> user.getDetailOrder(a).size() == 1);
+        var refA = user.getDetailOrder(a).iterator().next().OrderRef;
+        await("should return order", () -> mapper.getRtnOrder(refA) != null);
+        var frozenA = user.getTradingAccount().FrozenCash;
+        Assert.assertTrue(frozenA > 0);
+
+        // Front lost, order queued in the outage and the first order is partly
+        // filled, so a replayed trade is still covered by its frozen money.
+        api.disconnect(0);
+        await("should disconnect",
+                () -> link.getLink() == Link.DISCONNECTED);
+        var b = user.insertOrder(buyOpen(1990.0D, 1));
+        Assert.assertEquals(0, user.getExecRsp(b).ErrorID);
+        var frozenB = user.getTradingAccount().FrozenCash - frozenA;
+        Assert.assertTrue(frozenB > 0);
+        var fill = depth(1999.0D, 2000.0D);
+        fill.AskVolume1 = 1;
+        ex.publish(fill);
+        await("should fill order", () -> api.trades.size() == 1);
+        Thread.sleep(100);
+        Assert.assertEquals("order shouldn't be sent in outage",
+                1, api.links.size());
+        Assert.assertEquals(0, position(user));
+
+        // Reconnect, catch up the fill, then send the queued order.
+        api.Init();
+        Assert.assertTrue("should resync",
+                link.awaitReady(5, TimeUnit.SECONDS));
+        await("should send queued order", () -> api.links.size() == 2);
+        Assert.assertEquals(Link.READY, api.links.get(1));
+        Assert.assertEquals("order should be mapped before sent",
+                0, api.unmapped.get());
+        await("should apply trade", () -> position(user) == 1);
+        var account = user.getTradingAccount();
+        Assert.assertEquals(frozenA / 2 + frozenB, account.FrozenCash, 1.0E-6D);
+        Assert.assertEquals(1.0D, account.Commission, 1.0E-6D);
+
+        // Front replays the returns missed in the outage.
+        provider.OnRtnOrder(OP.deepCopy(mapper.getRtnOrder(refA)));
+        provider.OnRtnTrade(OP.deepCopy(api.trades.get(0)));
+        Assert.assertEquals(1, position(user));
+        account = user.getTradingAccount();
+        Assert.assertEquals(frozenA / 2 + frozenB, account.FrozenCash, 1.0E-6D);
+        Assert.assertEquals(1.0D, account.Commission, 1.0E-6D);
+
+        provider.release();
+        ex.close();
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.ctp;
+
+import com.nabiki.ctp4j.jni.struct.CThostFtdcInputOrderField;
+import com.nabiki.ctp4j.jni.struct.CThostFtdcTradeField;
+import com.nabiki.wukong.ctp.ReconnectSupervisor.Link;
+import com.nabiki.wukong.tools.OrderMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ReconnectSupervisorTest {
+    private void login(ReconnectSupervisor s) {
+        Assert.assertTrue(s.moveTo(Link.CONNECTED));
+        Assert.assertTrue(s.moveTo(Link.AUTHENTICATED));
+        Assert.assertTrue(s.moveTo(Link.LOGGED_IN));
+        Assert.assertTrue(s.moveTo(Link.CONFIRMED));
+        Assert.assertTrue(s.moveTo(Link.SYNCING));
+        Assert.assertTrue(s.moveTo(Link.READY));
+    }
+
+    @Test
+    public void testReconnect() {
+        var s = new ReconnectSupervisor("test.reconnect");
+        Assert.assertEquals(Link.DISCONNECTED, s.getLink());
+        login(s);
+        Assert.assertTrue(s.isReady());
+        Assert.assertEquals(0, s.getReconnectCount());
+
+        Assert.assertTrue(s.moveTo(Link.DISCONNECTED));
+        Assert.assertFalse(s.isReady());
+        // Late response of the lost session.
+        Assert.assertFalse(s.moveTo(Link.READY));
+        Assert.assertEquals(Link.DISCONNECTED, s.getLink());
+
+        login(s);
+        Assert.assertEquals(1, s.getReconnectCount());
+
+        // Logout and login again isn't reconnect.
+        Assert.assertTrue(s.moveTo(Link.CONNECTED));
+        login(s);
+        Assert.assertEquals(1, s.getReconnectCount());
+    }
+
+    @Test
+    public void testAwaitReady() throws InterruptedException {
+        var s = new ReconnectSupervisor("test.await");
+        Assert.assertFalse(s.awaitReady(10, TimeUnit.MILLISECONDS));
+
+        var done = new CountDownLatch(1);
+        var t = new Thread(() -> {
+            try {
+                s.awaitReady();
+                done.countDown();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        t.start();
+        s.moveTo(Link.CONNECTED);
+        s.moveTo(Link.SYNCING);
+        Assert.assertFalse(done.await(50, TimeUnit.MILLISECONDS));
+        s.moveTo(Link.READY);
+        Assert.assertTrue(done.await(1, TimeUnit.SECONDS));
+        Assert.assertTrue(s.awaitReady(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testShouldResume() {
+        Assert.assertTrue(ReconnectSupervisor.shouldResume(
+                WorkingState.STARTING));
+        Assert.assertTrue(ReconnectSupervisor.shouldResume(
+                WorkingState.STARTED));
+        Assert.assertFalse(ReconnectSupervisor.shouldResume(
+                WorkingState.STOPPING));
+        Assert.assertFalse(ReconnectSupervisor.shouldResume(
+                WorkingState.STOPPED));
+    }
+
+    @Test
+    public void testReplayedTrade() {
+        var mapper = new OrderMapper();
+        var trade = new CThostFtdcTradeField();
+        trade.ExchangeID = "SHFE";
+        trade.TradeID = "      100001";
+        trade.Direction = '0';
+        Assert.assertTrue(mapper.register(trade));
+        Assert.assertFalse(mapper.register(trade));
+        // Both sides of a trade have the same trade ID.
+        var other = new CThostFtdcTradeField();
+        other.ExchangeID = "SHFE";
+        other.TradeID = "      100001";
+        other.Direction = '1';
+        Assert.assertTrue(mapper.register(other));
+        // Trade IDs restart on a new trading day.
+        mapper.clearTrades();
+        Assert.assertTrue(mapper.register(trade));
+    }
+
+    @Test
+    public void testOrderSession() {
+        var mapper = new OrderMapper();
+        mapper.register("1", 1, 100);
+        Assert.assertTrue(mapper.isSentIn("1", 1, 100));
+        // Same ref from another session isn't ours.
+        Assert.assertFalse(mapper.isSentIn("1", 1, 101));
+        Assert.assertFalse(mapper.isSentIn("1", 2, 100));
+        Assert.assertFalse(mapper.isSentIn("2", 1, 100));
+        // Sessions of the last trading day are cleared.
+        mapper.clearSessions();
+        Assert.assertFalse(mapper.isSentIn("1", 1, 100));
+    }
+
+    @Test
+    public void testUnregister() {
+        var mapper = new OrderMapper();
+        var order = new CThostFtdcInputOrderField();
+        order.OrderRef = "1";
+        mapper.register("1", 1, 100);
+        mapper.unregister(order);
+        Assert.assertNull(mapper.getDetailOrder("1"));
+        Assert.assertNull(mapper.getActiveOrder("1"));
+        Assert.assertFalse(mapper.isSentIn("1", 1, 100));
+    }
+}
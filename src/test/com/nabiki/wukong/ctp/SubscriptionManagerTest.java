@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.ctp;
+
+import com.nabiki.ctp4j.jni.struct.*;
+import com.nabiki.ctp4j.md.CThostFtdcMdSpi;
+import com.nabiki.wukong.sim.SimExchange;
+import com.nabiki.wukong.sim.SimMdApi;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class SubscriptionManagerTest {
+    static class Spi extends CThostFtdcMdSpi {
+        final SimMdApi api;
+        final SubscriptionManager manager;
+        final Set<String> ticks = ConcurrentHashMap.newKeySet();
+
+        Spi(SimMdApi api) {
+            this.api = api;
+            this.manager = new SubscriptionManager(api);
+        }
+
+        @Override
+        public void OnFrontConnected() {
+            this.api.ReqUserLogin(new CThostFtdcReqUserLoginField(), 1);
+        }
+
+        @Override
+        public void OnFrontDisconnected(int reason) {
+            this.manager.onLogout();
+        }
+
+        @Override
+        public void OnRspUserLogin(CThostFtdcRspUserLoginField rspUserLogin,
+                                   CThostFtdcRspInfoField rspInfo, int requestId,
+                                   boolean isLast) {
+            this.manager.onLogin();
+        }
+
+        @Override
+        public void OnRspSubMarketData(
+                CThostFtdcSpecificInstrumentField specificInstrument,
+                CThostFtdcRspInfoField rspInfo, int requestId, boolean isLast) {
+            this.manager.onRsp(specificInstrument.InstrumentID, rspInfo);
+        }
+
+        @Override
+        public void OnRtnDepthMarketData(
+                CThostFtdcDepthMarketDataField depthMarketData) {
+            this.ticks.add(depthMarketData.InstrumentID);
+        }
+    }
+
+    SimExchange exchange(List<String> instruments) {
+        var ex = new SimExchange("20200612");
+        for (var id : instruments) {
+            var instr = new CThostFtdcInstrumentField();
+            instr.InstrumentID = id;
+            instr.ExchangeID = "DCE";
+            instr.PriceTick = 1.0D;
+            instr.VolumeMultiple = 10;
+            ex.addInstrument(instr, null, null, 2000.0D);
+        }
+        return ex;
+    }
+
+    List<String> instruments(int count) {
+        var r = new LinkedList<String>();
+        for (int i = 0; i < count; ++i)
+            r.add("c" + (2101 + i));
+        return r;
+    }
+
+    CThostFtdcDepthMarketDataField depth(String instrID) {
+        var d = new CThostFtdcDepthMarketDataField();
+        d.InstrumentID = instrID;
+        d.LastPrice = d.BidPrice1 = d.AskPrice1 = 2000.0D;
+        d.BidVolume1 = d.AskVolume1 = 10;
+        d.UpperLimitPrice = 2200.0D;
+        d.LowerLimitPrice = 1800.0D;
+        return d;
+    }
+
+    Spi connect(SimExchange ex) {
+        var api = new SimMdApi(ex);
+        var spi = new Spi(api);
+        api.RegisterSpi(spi);
+        api.Init();
+        return spi;
+    }
+
+    @Test
+    public void batches() throws Exception {
+        // Not a multiple of batch size, so the last batch is partial.
+        var ins = instruments(SubscriptionManager.BATCH_SIZE * 2 + 50);
+        var ex = exchange(ins);
+        var spi = connect(ex);
+        spi.manager.subscribe(ins).get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(ins.size(), spi.manager.getSubscribed().size());
+        spi.manager.stop();
+        spi.api.Release();
+        ex.close();
+    }
+
+    @Test
+    public void resubscribe() throws Exception {
+        var ins = instruments(3);
+        var ex = exchange(ins);
+        var spi = connect(ex);
+        spi.manager.subscribe(ins).get(5, TimeUnit.SECONDS);
+        spi.api.disconnect(0);
+        Thread.sleep(50);
+        // Login again.
+        spi.api.Init();
+        var until = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (spi.ticks.size() < ins.size()
+                && System.currentTimeMillis() < until) {
+            for (var id : ins)
+                ex.publish(depth(id));
+            Thread.sleep(50);
+        }
+        Assert.assertEquals("should get ticks after login again",
+                ins.size(), spi.ticks.size());
+        spi.manager.stop();
+        spi.api.Release();
+        ex.close();
+    }
+
+    @Test
+    public void failed() throws Exception {
+        var ins = instruments(2);
+        var ex = exchange(ins.subList(0, 1));
+        var spi = connect(ex);
+        var f = spi.manager.subscribe(ins);
+        try {
+            f.get(10, TimeUnit.SECONDS);
+            Assert.fail("unknown instrument should fail");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause().getMessage().contains(ins.get(1)));
+        } catch (TimeoutException e) {
+            Assert.fail("should fail after retries");
+        }
+        Assert.assertEquals(Set.of(ins.get(0)), spi.manager.getSubscribed());
+        spi.manager.stop();
+        spi.api.Release();
+        ex.close();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.iop;
+
+import com.nabiki.ctp4j.jni.struct.CThostFtdcDepthMarketDataField;
+import com.nabiki.wukong.iop.frame.MessageType;
+import com.nabiki.wukong.md.SharedMemoryFeed;
+import com.nabiki.wukong.md.SharedMemoryReader;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class FlowEncoderTest {
+    CThostFtdcDepthMarketDataField depth(double price) {
+        var d = new CThostFtdcDepthMarketDataField();
+        d.InstrumentID = "rb2010";
+        d.LastPrice = price;
+        return d;
+    }
+
+    @Test
+    public void sameEvent() {
+        var d = depth(3500.0D);
+        var b1 = FlowEncoder.encode(d, MessageType.FLOW_DEPTH);
+        var b2 = FlowEncoder.encode(d, MessageType.FLOW_DEPTH);
+        Assert.assertSame("same event should be encoded once", b1, b2);
+        var b3 = FlowEncoder.encode(depth(3500.0D), MessageType.FLOW_DEPTH);
+        Assert.assertNotSame("other object should be encoded", b1, b3);
+    }
+
+    @Test
+    public void reusedObject() {
+        try {
+            var file = Path.of(Files.createTempDirectory("shm").toString(),
+                    SharedMemoryFeed.FILE_NAME);
+            try (var feed = new SharedMemoryFeed(file, 16);
+                 var reader = new SharedMemoryReader(file)) {
+                var session = new OutboundQueueTest.StubSession();
+                var recv = new ClientMarketDataReceiver(session, null,
+                        new OutboundQueue(session, Runnable::run, 16,
+                                OutboundQueue.Policy.CONFLATE));
+                feed.depthReceived(depth(3500.0D));
+                feed.depthReceived(depth(3501.0D));
+                // Reader passes one object with changed fields.
+                Assert.assertEquals(2, reader.poll(recv, 10));
+                Assert.assertEquals(2, session.sent.size());
+                Assert.assertTrue("first body should have first price",
+                        session.sent.get(0).Json.contains("3500.0"));
+                Assert.assertTrue("second body should have new price",
+                        session.sent.get(1).Json.contains("3501.0"));
+            }
+        } catch (IOException e) {
+            Assert.fail(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.iop;
+
+import com.nabiki.wukong.iop.frame.Body;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class OutboundQueueTest {
+    static class StubSession implements IOPSession {
+        final List<Body> sent = new CopyOnWriteArrayList<>();
+        volatile boolean closed = false, failNext = false;
+        volatile int fixed = 0;
+
+        @Override
+        public void sendResponse(Body b) throws IOException {
+            if (this.failNext) {
+                this.failNext = false;
+                throw new IOException("stub failure");
+            }
+            this.sent.add(b);
+        }
+
+        @Override
+        public boolean isClosed() {
+            return this.closed;
+        }
+
+        @Override
+        public void fix() {
+            ++this.fixed;
+        }
+
+        @Override
+        public void close() {
+            this.closed = true;
+        }
+    }
+
+    // Runs drain tasks only when asked.
+    static class ManualExecutor implements Executor {
+        final List<Runnable> tasks = new LinkedList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            this.tasks.add(command);
+        }
+
+        int runAll() {
+            int n = 0;
+            while (!this.tasks.isEmpty()) {
+                this.tasks.remove(0).run();
+                ++n;
+            }
+            return n;
+        }
+    }
+
+    static Body body(String json) {
+        var b = new Body();
+        b.Json = json;
+        return b;
+    }
+
+    @Test
+    public void conflate() {
+        var session = new StubSession();
+        var exec = new ManualExecutor();
+        var q = new OutboundQueue(session, exec, 16,
+                OutboundQueue.Policy.CONFLATE);
+        q.offerDepth(1, body("a1"));
+        q.offer(body("m"));
+        q.offerDepth(2, body("b1"));
+        q.offerDepth(1, body("a2"));
+        q.offerDepth(1, body("a3"));
+        Assert.assertEquals(3, q.size());
+        Assert.assertEquals(2, q.getConflatedCount());
+        Assert.assertEquals(1, exec.runAll());
+        // Latest depth keeps the place of the first one.
+        Assert.assertEquals(3, session.sent.size());
+        Assert.assertEquals("a3", session.sent.get(0).Json);
+        Assert.assertEquals("m", session.sent.get(1).Json);
+        Assert.assertEquals("b1", session.sent.get(2).Json);
+        // Depth sent is not conflated again.
+        q.offerDepth(1, body("a4"));
+        Assert.assertEquals(1, q.size());
+        exec.runAll();
+        Assert.assertEquals("a4", session.sent.get(3).Json);
+        Assert.assertEquals(4, q.getSentCount());
+    }
+
+    @Test
+    public void overflowConflate() {
+        var session = new StubSession();
+        var exec = new ManualExecutor();
+        var q = new OutboundQueue(session, exec, 2,
+                OutboundQueue.Policy.CONFLATE);
+        q.offer(body("1"));
+        q.offer(body("2"));
+        q.offer(body("3"));
+        // Full queue still conflates queued depths.
+        q.offerDepth(1, body("d"));
+        Assert.assertEquals(2, q.size());
+        Assert.assertEquals(2, q.getDroppedCount());
+        Assert.assertFalse(session.isClosed());
+        exec.runAll();
+        Assert.assertEquals(2, session.sent.size());
+        Assert.assertEquals(2, q.getHighWaterMark());
+    }
+
+    @Test
+    public void overflowDrop() {
+        var session = new StubSession();
+        var exec = new ManualExecutor();
+        var q = new OutboundQueue(session, exec, 2, OutboundQueue.Policy.DROP);
+        q.offerDepth(1, body("a1"));
+        q.offerDepth(1, body("a2"));
+        q.offerDepth(1, body("a3"));
+        Assert.assertEquals(0, q.getConflatedCount());
+        Assert.assertEquals(1, q.getDroppedCount());
+        exec.runAll();
+        Assert.assertEquals("a1", session.sent.get(0).Json);
+        Assert.assertEquals("a2", session.sent.get(1).Json);
+        Assert.assertFalse(session.isClosed());
+    }
+
+    @Test
+    public void overflowDisconnect() {
+        var session = new StubSession();
+        var exec = new ManualExecutor();
+        var q = new OutboundQueue(session, exec, 1,
+                OutboundQueue.Policy.DISCONNECT);
+        q.offerDepth(1, body("a1"));
+        q.offerDepth(1, body("a2"));
+        Assert.assertFalse(session.isClosed());
+        q.offer(body("m"));
+        Assert.assertTrue(session.isClosed());
+        Assert.assertEquals(1, q.getDroppedCount());
+        // Closed session gets nothing, and queued messages are discarded.
+        exec.runAll();
+        Assert.assertEquals(0, session.sent.size());
+        Assert.assertEquals(0, q.size());
+        Assert.assertEquals(2, q.getDroppedCount());
+    }
+
+    @Test
+    public void reschedule() {
+        var session = new StubSession();
+        var exec = new ManualExecutor();
+        var q = new OutboundQueue(session, exec, 16,
+                OutboundQueue.Policy.CONFLATE);
+        q.offer(body("1"));
+        q.offer(body("2"));
+        // One drain for messages offered before it runs.
+        Assert.assertEquals(1, exec.tasks.size());
+        session.failNext = true;
+        Assert.assertEquals(1, exec.runAll());
+        Assert.assertEquals(1, q.getFailedCount());
+        Assert.assertEquals(1, session.fixed);
+        Assert.assertEquals(1, session.sent.size());
+        // Drain is scheduled again after the last one ends.
+        q.offer(body("3"));
+        Assert.assertEquals(1, exec.tasks.size());
+        exec.runAll();
+        Assert.assertEquals("3", session.sent.get(1).Json);
+    }
+
+    @Test
+    public void batch() {
+        var slow = new StubSession();
+        var fast = new StubSession();
+        var exec = new ManualExecutor();
+        var qs = new OutboundQueue(slow, exec, 1024,
+                OutboundQueue.Policy.DROP);
+        var qf = new OutboundQueue(fast, exec, 1024,
+                OutboundQueue.Policy.DROP);
+        for (int i = 0; i < 2 * OutboundQueue.DRAIN_BATCH + 1; ++i)
+            qs.offer(body(String.valueOf(i)));
+        qf.offer(body("f"));
+        // One batch, then the drain goes behind the other session.
+        exec.tasks.remove(0).run();
+        Assert.assertEquals(OutboundQueue.DRAIN_BATCH, slow.sent.size());
+        Assert.assertEquals(2, exec.tasks.size());
+        exec.tasks.remove(0).run();
+        Assert.assertEquals(1, fast.sent.size());
+        Assert.assertEquals(2, exec.runAll());
+        Assert.assertEquals(2 * OutboundQueue.DRAIN_BATCH + 1,
+                slow.sent.size());
+        Assert.assertEquals(0, qs.size());
+    }
+
+    @Test
+    public void stalled() throws InterruptedException {
+        // Stalled client blocks in every send.
+        var slow = new StubSession() {
+            @Override
+            public void sendResponse(Body b) throws IOException {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException ignored) {
+                }
+                super.sendResponse(b);
+            }
+        };
+        var fast = new StubSession();
+        var pool = Executors.newSingleThreadExecutor();
+        var qs = new OutboundQueue(slow, pool, 1024,
+                OutboundQueue.Policy.DROP);
+        var qf = new OutboundQueue(fast, pool, 1024,
+                OutboundQueue.Policy.DROP);
+        int count = 1000;
+        for (int i = 0; i < count; ++i)
+            qs.offer(body(String.valueOf(i)));
+        for (int i = 0; i < 10; ++i)
+            qf.offer(body(String.valueOf(i)));
+        var deadline = System.currentTimeMillis() + 2000;
+        while (fast.sent.size() < 10 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        // Healthy session is served long before the stalled one catches up.
+        Assert.assertEquals(10, fast.sent.size());
+        Assert.assertTrue(slow.sent.size() < count);
+        qs.clear();
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void concurrent() throws InterruptedException {
+        var session = new StubSession();
+        var pool = Executors.newFixedThreadPool(2);
+        var q = new OutboundQueue(session, pool, 1 << 16,
+                OutboundQueue.Policy.DROP);
+        int producers = 4, count = 10000;
+        var latch = new CountDownLatch(producers);
+        for (int p = 0; p < producers; ++p)
+            new Thread(() -> {
+                for (int i = 0; i < count; ++i)
+                    q.offer(body(String.valueOf(i)));
+                latch.countDown();
+            }).start();
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        // No message is left behind by a drain that ends while offering.
+        var deadline = System.currentTimeMillis() + 5000;
+        while (q.getSentCount() < producers * count
+                && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        pool.shutdown();
+        Assert.assertEquals(producers * count, q.getSentCount());
+        Assert.assertEquals(0, q.size());
+    }
+}
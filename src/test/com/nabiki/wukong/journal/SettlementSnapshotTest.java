@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.journal;
+
+import com.nabiki.ctp4j.jni.struct.CThostFtdcInvestorPositionDetailField;
+import com.nabiki.ctp4j.jni.struct.CThostFtdcTradingAccountField;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedList;
+
+public class SettlementSnapshotTest {
+    CThostFtdcInvestorPositionDetailField position(String instrID, int volume) {
+        var p = new CThostFtdcInvestorPositionDetailField();
+        p.InstrumentID = instrID;
+        p.InvestorID = "0001";
+        p.Volume = volume;
+        p.OpenPrice = 3500.0D;
+        p.TradingDay = "20200612";
+        return p;
+    }
+
+    Path snapshot() throws IOException {
+        var account = new CThostFtdcTradingAccountField();
+        account.AccountID = "0001";
+        account.Balance = 1000000.0D;
+        var positions = new LinkedList<CThostFtdcInvestorPositionDetailField>();
+        positions.add(position("rb2010", 3));
+        positions.add(position("c2009", 10));
+        var file = Path.of(Files.createTempDirectory("stl").toString(),
+                SettlementSnapshot.FILE_NAME);
+        SettlementSnapshot.write(file, account, positions);
+        return file;
+    }
+
+    @Test
+    public void roundTrip() {
+        try {
+            var s = SettlementSnapshot.read(snapshot());
+            Assert.assertEquals("account ID should match",
+                    "0001", s.getAccount().AccountID);
+            Assert.assertEquals("balance should match",
+                    1000000.0D, s.getAccount().Balance, 0.0D);
+            Assert.assertEquals("should have 2 positions",
+                    2, s.getPositions().size());
+            Assert.assertEquals("first instrument should match",
+                    "rb2010", s.getPositions().get(0).InstrumentID);
+            Assert.assertEquals("second volume should match",
+                    10, s.getPositions().get(1).Volume);
+        } catch (IOException e) {
+            Assert.fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void corrupted() {
+        Path file = null;
+        try {
+            file = snapshot();
+            // Change one position line.
+            var text = Files.readString(file, StandardCharsets.UTF_8)
+                    .replace("rb2010", "rb2011");
+            Files.writeString(file, text, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            Assert.fail(e.getMessage());
+        }
+        try {
+            SettlementSnapshot.read(file);
+            Assert.fail("should detect checksum mismatch");
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+}
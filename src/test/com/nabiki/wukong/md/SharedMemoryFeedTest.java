@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.md;
+
+import com.nabiki.ctp4j.jni.struct.CThostFtdcDepthMarketDataField;
+import com.nabiki.wukong.ctp.MarketDataReceiver;
+import com.nabiki.wukong.ctp4j.jni.struct.CThostFtdcCandleField;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedList;
+import java.util.List;
+
+public class SharedMemoryFeedTest {
+    static class Collector implements MarketDataReceiver {
+        final List<String> depths = new LinkedList<>();
+        final List<String> candles = new LinkedList<>();
+        double lastPrice;
+
+        @Override
+        public void depthReceived(CThostFtdcDepthMarketDataField depth) {
+            this.depths.add(depth.InstrumentID);
+            this.lastPrice = depth.LastPrice;
+        }
+
+        @Override
+        public void candleReceived(CThostFtdcCandleField candle) {
+            this.candles.add(candle.InstrumentID);
+        }
+    }
+
+    CThostFtdcDepthMarketDataField depth(String instrID, double price) {
+        var d = new CThostFtdcDepthMarketDataField();
+        d.InstrumentID = instrID;
+        d.LastPrice = price;
+        d.UpdateTime = "09:00:01";
+        d.TradingDay = "20200612";
+        return d;
+    }
+
+    Path ringFile() throws IOException {
+        return Path.of(Files.createTempDirectory("shm").toString(),
+                SharedMemoryFeed.FILE_NAME);
+    }
+
+    @Test
+    public void readInOrder() {
+        try {
+            var file = ringFile();
+            try (var feed = new SharedMemoryFeed(file, 16);
+                 var reader = new SharedMemoryReader(file)) {
+                var collector = new Collector();
+                Assert.assertEquals("nothing to read", 0,
+                        reader.poll(collector, 10));
+                feed.depthReceived(depth("rb2010", 3500.0D));
+                var candle = new CThostFtdcCandleField();
+                candle.InstrumentID = "c2009";
+                feed.candleReceived(candle);
+                feed.depthReceived(depth("rb2010", 3501.0D));
+                Assert.assertEquals("should read 3 records", 3,
+                        reader.poll(collector, 10));
+                Assert.assertEquals("should have 2 depths", 2,
+                        collector.depths.size());
+                Assert.assertEquals("candle instrument should match", "c2009",
+                        collector.candles.get(0));
+                Assert.assertEquals("last price should match", 3501.0D,
+                        collector.lastPrice, 0.0D);
+            }
+        } catch (IOException e) {
+            Assert.fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void lapped() {
+        try {
+            var file = ringFile();
+            try (var feed = new SharedMemoryFeed(file, 4);
+                 var reader = new SharedMemoryReader(file)) {
+                for (int i = 0; i < 10; ++i)
+                    feed.depthReceived(depth("rb2010", 3500.0D + i));
+                var collector = new Collector();
+                var cnt = reader.poll(collector, 100);
+                Assert.assertTrue("should read at most a ring", cnt <= 4);
+                Assert.assertEquals("read and lost should cover all", 10,
+                        cnt + reader.getLostCount());
+                Assert.assertEquals("last price should be the newest",
+                        3509.0D, collector.lastPrice, 0.0D);
+            }
+        } catch (IOException e) {
+            Assert.fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void writerRestart() {
+        try {
+            var file = ringFile();
+            try (var reader = openAndWrite(file, 16, 5)) {
+                var collector = new Collector();
+                Assert.assertEquals("should read old records", 5,
+                        reader.poll(collector, 10));
+                var size = Files.size(file);
+                // Restarted writer with a smaller ring keeps the file.
+                try (var feed = new SharedMemoryFeed(file, 8)) {
+                    Assert.assertEquals("file should not shrink", size,
+                            Files.size(file));
+                    feed.depthReceived(depth("rb2010", 3600.0D));
+                    feed.depthReceived(depth("rb2010", 3601.0D));
+                    Assert.assertEquals("should read from new epoch", 2,
+                            reader.poll(collector, 10));
+                    Assert.assertEquals("last price should be new", 3601.0D,
+                            collector.lastPrice, 0.0D);
+                }
+                // Larger ring than the reader mapped.
+                try (var feed = new SharedMemoryFeed(file, 64)) {
+                    for (int i = 0; i < 40; ++i)
+                        feed.depthReceived(depth("c2009", 2000.0D + i));
+                    Assert.assertEquals("should read larger ring", 40,
+                            reader.poll(collector, 100));
+                    Assert.assertEquals("last price should match", 2039.0D,
+                            collector.lastPrice, 0.0D);
+                    Assert.assertEquals("nothing lost", 0,
+                            reader.getLostCount());
+                }
+            }
+        } catch (IOException e) {
+            Assert.fail(e.getMessage());
+        }
+    }
+
+    SharedMemoryReader openAndWrite(Path file, int slots, int count)
+            throws IOException {
+        try (var feed = new SharedMemoryFeed(file, slots)) {
+            var reader = new SharedMemoryReader(file);
+            for (int i = 0; i < count; ++i)
+                feed.depthReceived(depth("rb2010", 3500.0D + i));
+            return reader;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.metric;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+    @Test
+    public void bucket() {
+        for (long v : new long[] {0, 1, 63, 64, 65, 1000, 123456789L,
+                Long.MAX_VALUE}) {
+            var high = LatencyHistogram.valueOf(LatencyHistogram.index(v));
+            Assert.assertTrue("bucket should cover value " + v, high >= v);
+            Assert.assertTrue("bucket should be within 3% of value " + v,
+                    high - v <= v / 32);
+        }
+    }
+
+    @Test
+    public void percentile() {
+        var h = new LatencyHistogram();
+        for (long v = 1; v <= 10000; ++v)
+            h.record(v);
+        var s = h.summarize("test");
+        Assert.assertEquals("test", s.name);
+        Assert.assertEquals(10000, s.count);
+        Assert.assertEquals(10000, s.max);
+        Assert.assertEquals(5000, s.mean);
+        Assert.assertEquals(5000, s.p50, 5000 / 32);
+        Assert.assertEquals(9000, s.p90, 9000 / 32);
+        Assert.assertEquals(9900, s.p99, 9900 / 32);
+        Assert.assertEquals(9990, s.p999, 9990 / 32);
+    }
+
+    @Test
+    public void reset() {
+        var h = new LatencyHistogram();
+        h.record(100);
+        h.record(-1);
+        var s = h.summarizeAndReset("test");
+        Assert.assertEquals(2, s.count);
+        Assert.assertEquals(100, s.max);
+        Assert.assertEquals(0, h.summarize("test").count);
+        Assert.assertEquals(0, h.summarize("test").max);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.metric;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MetricsTest {
+    @Test
+    public void snapshot() {
+        var c = Metrics.counter("test.counter");
+        Assert.assertSame("same name should be same counter",
+                c, Metrics.counter("test.counter"));
+        c.add(3);
+        c.decrement();
+        var m = Metrics.meter("test.meter");
+        m.mark(5);
+        m.tick();
+        m.mark();
+        Metrics.gauge("test.gauge", () -> 42);
+
+        var s = Metrics.snapshot();
+        Assert.assertEquals(2L, (long) s.counters.get("test.counter"));
+        Assert.assertEquals(6L, (long) s.counters.get("test.meter"));
+        Assert.assertEquals(5L, (long) s.rates.get("test.meter"));
+        Assert.assertEquals(42L, (long) s.gauges.get("test.gauge"));
+        Assert.assertEquals(Stage.values().length, s.latencies.size());
+
+        Metrics.removeGauge("test.gauge");
+        Assert.assertNull(Metrics.snapshot().gauges.get("test.gauge"));
+    }
+
+    @Test
+    public void allocation() {
+        Metrics.watchAllocation("test");
+        var s = Metrics.snapshot();
+        // The gauge is absent if the JVM can't measure allocation.
+        if (s.gauges.containsKey("alloc.test"))
+            Assert.assertTrue("should have allocated",
+                    s.gauges.get("alloc.test") > 0);
+    }
+}
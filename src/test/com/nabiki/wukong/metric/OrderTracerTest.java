@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.metric;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.UUID;
+
+public class OrderTracerTest {
+    @Test
+    public void split() {
+        // Close order split into today and yesterday detail orders.
+        var uuid = UUID.randomUUID();
+        OrderTracer.accept(uuid);
+        OrderTracer.stamp(uuid, Hop.RISK_CHECKED);
+        OrderTracer.queue("tracer-1", 2, uuid);
+        OrderTracer.queue("tracer-2", 3, uuid);
+        OrderTracer.allQueued(uuid);
+        OrderTracer.stamp("tracer-1", Hop.SENT);
+        OrderTracer.stamp("tracer-1", Hop.ACKED);
+        OrderTracer.trade("tracer-1", 2);
+        var t = OrderTracer.getTrace(uuid);
+        Assert.assertEquals(uuid.toString(), t.uuid);
+        Assert.assertEquals(2, t.orderRefs.size());
+        Assert.assertTrue(t.hops.containsKey("FIRST_FILL"));
+        Assert.assertFalse("order with a live detail shouldn't be done",
+                t.hops.containsKey("DONE"));
+        // The other detail order is canceled.
+        OrderTracer.cancel("tracer-2");
+        t = OrderTracer.getTrace(uuid);
+        Assert.assertTrue("order should be done", t.hops.containsKey("DONE"));
+        Assert.assertEquals(0L, (long) t.hops.get("ACCEPTED"));
+        long prev = 0;
+        for (var v : t.hops.values()) {
+            Assert.assertTrue("hops should be in time order", v >= prev);
+            prev = v;
+        }
+    }
+
+    @Test
+    public void dropped() {
+        // The second detail order fails to be queued.
+        var uuid = UUID.randomUUID();
+        OrderTracer.accept(uuid);
+        OrderTracer.queue("tracer-3", 1, uuid);
+        OrderTracer.queue("tracer-4", 1, uuid);
+        OrderTracer.drop("tracer-4");
+        OrderTracer.allQueued(uuid);
+        var t = OrderTracer.getTrace(uuid);
+        Assert.assertEquals(1, t.orderRefs.size());
+        Assert.assertEquals("tracer-3", t.orderRefs.get(0));
+        Assert.assertFalse(t.hops.containsKey("DONE"));
+        // Dropped detail order doesn't affect the trace any more.
+        OrderTracer.trade("tracer-4", 1);
+        Assert.assertFalse(OrderTracer.getTrace(uuid).hops
+                .containsKey("FIRST_FILL"));
+        OrderTracer.trade("tracer-3", 1);
+        Assert.assertTrue(OrderTracer.getTrace(uuid).hops.containsKey("DONE"));
+    }
+
+    @Test
+    public void rejected() {
+        var uuid = UUID.randomUUID();
+        OrderTracer.accept(uuid);
+        OrderTracer.allQueued(uuid);
+        var t = OrderTracer.getTrace(uuid);
+        Assert.assertEquals(2, t.hops.size());
+        Assert.assertTrue(t.hops.containsKey("DONE"));
+        Assert.assertNull(OrderTracer.getTrace(UUID.randomUUID()));
+        Assert.assertEquals(Hop.values().length - 1,
+                OrderTracer.summarize().size());
+    }
+}
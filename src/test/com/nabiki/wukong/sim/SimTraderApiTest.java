@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.sim;
+
+import com.nabiki.ctp4j.jni.flag.TThostFtdcCombOffsetFlagType;
+import com.nabiki.ctp4j.jni.flag.TThostFtdcDirectionType;
+import com.nabiki.ctp4j.jni.flag.TThostFtdcOrderStatusType;
+import com.nabiki.ctp4j.jni.struct.*;
+import com.nabiki.ctp4j.trader.CThostFtdcTraderSpi;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+public class SimTraderApiTest {
+    static class Collector extends CThostFtdcTraderSpi {
+        final List<CThostFtdcOrderField> orders = new CopyOnWriteArrayList<>();
+        final List<CThostFtdcTradeField> trades = new CopyOnWriteArrayList<>();
+        final StringBuffer events = new StringBuffer();
+        volatile boolean login = false;
+
+        @Override
+        public void OnRspUserLogin(CThostFtdcRspUserLoginField rspUserLogin,
+                                   CThostFtdcRspInfoField rspInfo, int requestId,
+                                   boolean isLast) {
+            this.login = rspInfo.ErrorID == 0;
+        }
+
+        @Override
+        public void OnRtnOrder(CThostFtdcOrderField order) {
+            this.events.append('O');
+            this.orders.add(order);
+        }
+
+        @Override
+        public void OnRtnTrade(CThostFtdcTradeField trade) {
+            this.events.append('T');
+            this.trades.add(trade);
+        }
+
+        CThostFtdcOrderField last() {
+            return this.orders.get(this.orders.size() - 1);
+        }
+    }
+
+    SimExchange exchange() {
+        var instr = new CThostFtdcInstrumentField();
+        instr.InstrumentID = "c2101";
+        instr.ExchangeID = "DCE";
+        instr.PriceTick = 1.0D;
+        instr.VolumeMultiple = 10;
+        var ex = new SimExchange("20200612");
+        ex.addInstrument(instr, null, null, 2000.0D);
+        return ex;
+    }
+
+    CThostFtdcInputOrderField order(String ref, char direction, double price,
+                                    int volume) {
+        var o = new CThostFtdcInputOrderField();
+        o.InstrumentID = "c2101";
+        o.OrderRef = ref;
+        o.Direction = direction;
+        o.CombOffsetFlag = TThostFtdcCombOffsetFlagType.OFFSET_OPEN;
+        o.LimitPrice = price;
+        o.VolumeTotalOriginal = volume;
+        return o;
+    }
+
+    CThostFtdcDepthMarketDataField depth(double bid, double ask) {
+        var d = new CThostFtdcDepthMarketDataField();
+        d.InstrumentID = "c2101";
+        d.LastPrice = (bid + ask) / 2;
+        d.BidPrice1 = bid;
+        d.AskPrice1 = ask;
+        d.BidVolume1 = d.AskVolume1 = 10;
+        d.UpperLimitPrice = 2200.0D;
+        d.LowerLimitPrice = 1800.0D;
+        return d;
+    }
+
+    void await(Collector spi, int orderCount) throws InterruptedException {
+        await(spi, orderCount, 0);
+    }
+
+    void await(Collector spi, int orderCount, int tradeCount)
+            throws InterruptedException {
+        var until = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while ((spi.orders.size() < orderCount
+                || spi.trades.size() < tradeCount)
+                && System.currentTimeMillis() < until)
+            Thread.sleep(10);
+        Assert.assertEquals(orderCount, spi.orders.size());
+    }
+
+    SimTraderApi login(SimExchange ex, Collector spi) throws InterruptedException {
+        var api = new SimTraderApi(ex);
+        api.RegisterSpi(spi);
+        api.Init();
+        api.ReqUserLogin(new CThostFtdcReqUserLoginField(), 1);
+        var until = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (!spi.login && System.currentTimeMillis() < until)
+            Thread.sleep(10);
+        Assert.assertTrue("should login", spi.login);
+        return api;
+    }
+
+    @Test
+    public void fill() throws InterruptedException {
+        var ex = exchange();
+        var spi = new Collector();
+        var api = login(ex, spi);
+        // Ask is 2001 with 10 lots, buy 15 fills 10.
+        api.ReqOrderInsert(order("1", TThostFtdcDirectionType.DIRECTION_BUY,
+                2001.0D, 15), 2);
+        await(spi, 2, 1);
+        Assert.assertEquals(1, spi.trades.size());
+        Assert.assertEquals(10, spi.trades.get(0).Volume);
+        Assert.assertEquals(2001.0D, spi.trades.get(0).Price, 0.0D);
+        Assert.assertEquals(TThostFtdcOrderStatusType.PART_TRADED_QUEUEING,
+                spi.last().OrderStatus);
+        // New depth fills the rest.
+        ex.publish(depth(1999.0D, 2000.0D));
+        await(spi, 3, 2);
+        Assert.assertEquals(2, spi.trades.size());
+        Assert.assertEquals(5, spi.trades.get(1).Volume);
+        // Return order comes before its trade, like CTP.
+        Assert.assertEquals("OOTOT", spi.events.toString());
+        Assert.assertEquals(2000.0D, spi.trades.get(1).Price, 0.0D);
+        Assert.assertEquals(TThostFtdcOrderStatusType.ALL_TRADED,
+                spi.last().OrderStatus);
+        api.Release();
+        ex.close();
+    }
+
+    @Test
+    public void cancel() throws InterruptedException {
+        var ex = exchange();
+        var spi = new Collector();
+        var api = login(ex, spi);
+        api.ReqOrderInsert(order("1", TThostFtdcDirectionType.DIRECTION_SELL,
+                2005.0D, 1), 2);
+        await(spi, 1);
+        Assert.assertEquals(TThostFtdcOrderStatusType.NO_TRADE_QUEUEING,
+                spi.last().OrderStatus);
+        var action = new CThostFtdcInputOrderActionField();
+        action.OrderSysID = spi.last().OrderSysID;
+        api.ReqOrderAction(action, 3);
+        await(spi, 2);
+        Assert.assertEquals(TThostFtdcOrderStatusType.CANCELED,
+                spi.last().OrderStatus);
+        Assert.assertEquals(0, spi.trades.size());
+        // Canceled order doesn't trade.
+        ex.publish(depth(2010.0D, 2011.0D));
+        Thread.sleep(100);
+        Assert.assertEquals(0, spi.trades.size());
+        api.Release();
+        ex.close();
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.tools;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+public class AsyncLogTest {
+    static class Collector extends Handler {
+        final List<LogRecord> records = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void publish(LogRecord record) {
+            this.records.add(record);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    Logger logger(Collector collector) {
+        var logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.addHandler(collector);
+        return logger;
+    }
+
+    @Test
+    public void format() throws InterruptedException {
+        var c = new Collector();
+        var log = new AsyncLog(logger(c), 16);
+        log.warning("failed order insertion", "12", "no money", 31);
+        log.severe("active order not found", "13", null);
+        log.close();
+        Assert.assertEquals(2, c.records.size());
+        Assert.assertEquals(OP.formatLog("failed order insertion", "12",
+                "no money", 31), c.records.get(0).getMessage());
+        Assert.assertEquals(Level.WARNING, c.records.get(0).getLevel());
+        Assert.assertEquals(OP.formatLog("active order not found", "13",
+                null, null), c.records.get(1).getMessage());
+        Assert.assertEquals(Level.SEVERE, c.records.get(1).getLevel());
+    }
+
+    @Test
+    public void concurrent() throws InterruptedException {
+        var c = new Collector();
+        var log = new AsyncLog(logger(c), 64);
+        var threads = new Thread[4];
+        for (int i = 0; i < threads.length; ++i) {
+            var id = String.valueOf(i);
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 10000; ++j)
+                    log.info("burst", id, null, j);
+            });
+            threads[i].start();
+        }
+        for (var t : threads)
+            t.join();
+        log.close();
+        Assert.assertEquals("logs should be either written or dropped",
+                40000, c.records.size() + log.getDropped());
+    }
+
+    @Test
+    public void level() throws InterruptedException {
+        var c = new Collector();
+        var logger = logger(c);
+        logger.setLevel(Level.WARNING);
+        var log = new AsyncLog(logger, 16);
+        log.info("filtered", null, null);
+        log.warning("kept", null, null);
+        log.close();
+        Assert.assertEquals(1, c.records.size());
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.tools;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+public class CachedClockTest {
+    private static long epochSecond(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+
+    @Test
+    public void consistent() {
+        var time = LocalDateTime.of(2020, 10, 1, 9, 30, 1);
+        var t = CachedClock.at(epochSecond(time));
+        Assert.assertEquals("20201001", t.dayStr);
+        Assert.assertEquals("09:30:01", t.timeStr);
+        Assert.assertEquals("20201001_093001", t.stamp);
+        Assert.assertEquals(20201001, t.day);
+        Assert.assertEquals(time.toLocalTime().toSecondOfDay(), t.secondOfDay);
+        Assert.assertEquals(time.toLocalDate().toEpochDay(), t.epochDay);
+        Assert.assertEquals(t.day, OP.parseDayInt(t.dayStr));
+        Assert.assertEquals(t.secondOfDay, OP.parseSecondOfDay(t.timeStr));
+        // Same second returns the cached tick.
+        Assert.assertSame("same second should hit cache", t,
+                CachedClock.at(epochSecond(time)));
+    }
+
+    @Test
+    public void rollover() {
+        var last = LocalDateTime.of(LocalDate.of(2020, 12, 31),
+                LocalTime.of(23, 59, 59));
+        var t0 = CachedClock.at(epochSecond(last));
+        Assert.assertEquals("20201231", t0.dayStr);
+        Assert.assertEquals("23:59:59", t0.timeStr);
+        Assert.assertEquals(86399, t0.secondOfDay);
+        var t1 = CachedClock.at(epochSecond(last.plusSeconds(1)));
+        Assert.assertEquals("20210101", t1.dayStr);
+        Assert.assertEquals("00:00:00", t1.timeStr);
+        Assert.assertEquals("20210101_000000", t1.stamp);
+        Assert.assertEquals(20210101, t1.day);
+        Assert.assertEquals(0, t1.secondOfDay);
+        Assert.assertEquals(t0.epochDay + 1, t1.epochDay);
+        // Next second of the same day reuses the day string.
+        var t2 = CachedClock.at(epochSecond(last.plusSeconds(2)));
+        Assert.assertSame("day string should be reused", t1.dayStr,
+                t2.dayStr);
+        Assert.assertEquals(1, t2.secondOfDay);
+    }
+
+    @Test
+    public void now() {
+        var fmt = DateTimeFormatter.ofPattern("yyyyMMdd");
+        var before = LocalDate.now().format(fmt);
+        var day = CachedClock.getDay();
+        var after = LocalDate.now().format(fmt);
+        Assert.assertTrue(day.equals(before) || day.equals(after));
+        var sec = CachedClock.getSecondOfDay();
+        Assert.assertTrue(sec >= 0 && sec < 86400);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.tools;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OPTest {
+    @Test
+    public void parseDayInt() {
+        Assert.assertEquals(20201001, OP.parseDayInt("20201001"));
+        Assert.assertEquals(20201231,
+                OP.parseDayInt(new StringBuilder("20201231")));
+        Assert.assertEquals(-1, OP.parseDayInt(null));
+        Assert.assertEquals(-1, OP.parseDayInt(""));
+        Assert.assertEquals(-1, OP.parseDayInt("2020101"));
+        Assert.assertEquals(-1, OP.parseDayInt("202010011"));
+        Assert.assertEquals(-1, OP.parseDayInt("2020-10-"));
+        Assert.assertEquals(-1, OP.parseDayInt("2020100a"));
+        Assert.assertEquals(-1, OP.parseDayInt(" 2020100"));
+    }
+
+    @Test
+    public void parseSecondOfDay() {
+        Assert.assertEquals(0, OP.parseSecondOfDay("00:00:00"));
+        Assert.assertEquals(86399, OP.parseSecondOfDay("23:59:59"));
+        Assert.assertEquals(9 * 3600 + 30 * 60 + 1,
+                OP.parseSecondOfDay("09:30:01"));
+        Assert.assertEquals(-1, OP.parseSecondOfDay(null));
+        Assert.assertEquals(-1, OP.parseSecondOfDay(""));
+        Assert.assertEquals(-1, OP.parseSecondOfDay("9:30:01"));
+        Assert.assertEquals(-1, OP.parseSecondOfDay("09:30:011"));
+        Assert.assertEquals(-1, OP.parseSecondOfDay("09-30-01"));
+        Assert.assertEquals(-1, OP.parseSecondOfDay("0a:30:01"));
+        Assert.assertEquals(-1, OP.parseSecondOfDay("24:00:00"));
+        Assert.assertEquals(-1, OP.parseSecondOfDay("23:60:00"));
+        Assert.assertEquals(-1, OP.parseSecondOfDay("23:59:60"));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2020 Hongbao Chen <chenhongbao@outlook.com>
+ *
+ * Licensed under the  GNU Affero General Public License v3.0 and you may not use
+ * this file except in compliance with the  License. You may obtain a copy of the
+ * License at
+ *
+ *                    https://www.gnu.org/licenses/agpl-3.0.txt
+ *
+ * Permission is hereby  granted, free of charge, to any  person obtaining a copy
+ * of this software and associated  documentation files (the "Software"), to deal
+ * in the Software  without restriction, including without  limitation the rights
+ * to  use, copy,  modify, merge,  publish, distribute,  sublicense, and/or  sell
+ * copies  of  the Software,  and  to  permit persons  to  whom  the Software  is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE  IS PROVIDED "AS  IS", WITHOUT WARRANTY  OF ANY KIND,  EXPRESS OR
+ * IMPLIED,  INCLUDING BUT  NOT  LIMITED TO  THE  WARRANTIES OF  MERCHANTABILITY,
+ * FITNESS FOR  A PARTICULAR PURPOSE AND  NONINFRINGEMENT. IN NO EVENT  SHALL THE
+ * AUTHORS  OR COPYRIGHT  HOLDERS  BE  LIABLE FOR  ANY  CLAIM,  DAMAGES OR  OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF  CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE  OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.nabiki.wukong.tools;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class WorkersTest {
+    @Test
+    public void threads() throws InterruptedException {
+        var t = Workers.newCriticalThread("test-critical", () -> {});
+        Assert.assertTrue("critical thread should be daemon", t.isDaemon());
+        Assert.assertEquals("test-critical", t.getName());
+        var latch = new CountDownLatch(1);
+        var io = Workers.newIoThread("test-io", latch::countDown);
+        Assert.assertEquals("test-io", io.getName());
+        io.start();
+        Assert.assertTrue(latch.await(1, TimeUnit.SECONDS));
+        var exec = Workers.newIoExecutor("test-exec", 2);
+        var count = new CountDownLatch(100);
+        for (int i = 0; i < 100; ++i)
+            exec.execute(count::countDown);
+        Assert.assertTrue(count.await(1, TimeUnit.SECONDS));
+        exec.shutdown();
+    }
+
+    @Test
+    public void scheduleIo() throws InterruptedException {
+        var running = new AtomicInteger(0);
+        var max = new AtomicInteger(0);
+        var runs = new AtomicInteger(0);
+        var f = Workers.scheduleIo(() -> {
+            max.accumulateAndGet(running.incrementAndGet(), Math::max);
+            runs.incrementAndGet();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignored) {
+            }
+            running.decrementAndGet();
+        }, 0, 10);
+        Thread.sleep(300);
+        f.cancel(false);
+        Assert.assertEquals("runs shouldn't overlap", 1, max.get());
+        Assert.assertTrue("slow task should skip runs", runs.get() < 15);
+    }
+
+    @Test
+    public void schedule() throws InterruptedException {
+        var latch = new CountDownLatch(3);
+        var f = Workers.schedule(() -> {
+            latch.countDown();
+            throw new RuntimeException("should keep running");
+        }, 0, 10);
+        Assert.assertTrue(latch.await(1, TimeUnit.SECONDS));
+        f.cancel(false);
+    }
+}